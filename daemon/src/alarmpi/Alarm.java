@@ -1,21 +1,29 @@
 package alarmpi;
 
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.function.UnaryOperator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -25,6 +33,7 @@ import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonString;
+import javax.json.JsonValue;
 
 import alarmpi.Alarm.Sound.Type;
 
@@ -104,6 +113,30 @@ public class Alarm {
 		}
 	}
 	
+	/**
+	 * copy constructor. The copy is not part of the alarm list and can be modified
+	 * @param alarm alarm to copy
+	 */
+	private Alarm(Alarm alarm) {
+		id                   = alarm.id;
+		enabled              = alarm.enabled;
+		oneTimeOnly          = alarm.oneTimeOnly;
+		skipOnce             = alarm.skipOnce;
+		time                 = alarm.time;
+		weekDays             = EnumSet.copyOf(alarm.weekDays);
+		alarmSound           = alarm.alarmSound;
+		signalSoundList      = alarm.signalSoundList;
+		greeting             = alarm.greeting;
+		fadeInDuration       = alarm.fadeInDuration;
+		duration             = alarm.duration;
+		reminderInterval     = alarm.reminderInterval;
+		volumeFadeInStart    = alarm.volumeFadeInStart;
+		volumeFadeInEnd      = alarm.volumeFadeInEnd;
+		volumeAlarmEnd       = alarm.volumeAlarmEnd;
+		lightDimUpDuration   = alarm.lightDimUpDuration;
+		lightDimUpBrightness = alarm.lightDimUpBrightness;
+	}
+	
 	/**
 	 * Creates a JsonObject representation of the alarm
 	 * @return JsonObject representation of the alarm
@@ -134,6 +167,11 @@ public class Alarm {
 	void fromJsonObject(JsonObject jsonObject) {
 		log.finest("parsing Alarm from JsonObject: "+jsonObject.toString());
 		
+		if(published) {
+			log.severe("parsing Alarm from Json Object: alarm is part of the alarm list and cannot be modified");
+			return;
+		}
+		
 		try {
 			JsonString jsonStringId =jsonObject.getJsonString("id");
 			if(jsonStringId!=null) {
@@ -227,10 +265,7 @@ public class Alarm {
 	 * @param enabled
 	 */
 	void setEnabled(boolean enabled) {
-		this.enabled  = enabled;
-		this.modified = true;
-		
-		storeAlarmList();
+		modify(alarm -> alarm.enabled = enabled);
 	}
 	
 	/**
@@ -245,10 +280,7 @@ public class Alarm {
 	 * @param oneTimeOnly
 	 */
 	void setOneTimeOnly(boolean oneTimeOnly) {
-		this.oneTimeOnly = oneTimeOnly;
-		this.modified    = true;
-		
-		storeAlarmList();
+		modify(alarm -> alarm.oneTimeOnly = oneTimeOnly);
 	}
 	
 	/**
@@ -263,10 +295,7 @@ public class Alarm {
 	 * @param skipOnce
 	 */
 	void setSkipOnce(boolean skipOnce) {
-		this.skipOnce = skipOnce;
-		this.modified = true;
-		
-		storeAlarmList();
+		modify(alarm -> alarm.skipOnce = skipOnce);
 	}
 	
 	/**
@@ -281,28 +310,23 @@ public class Alarm {
 	 * @param time
 	 */
 	void setTime(LocalTime time) {
-		this.time     = time;
-		this.modified = true;
-		
-		storeAlarmList();
+		modify(alarm -> alarm.time = time);
 	}
 	
 	/**
-	 * @return weekdays at which this alarm is active
+	 * @return weekdays at which this alarm is active (read only)
 	 */
-	EnumSet<DayOfWeek> getWeekDays() {
-		return weekDays;
+	Set<DayOfWeek> getWeekDays() {
+		return Collections.unmodifiableSet(weekDays);
 	}
 	
 	/**
 	 * sets the weekdays for ths alarm
 	 * @param weekdays
 	 */
-	void setWeekDays(EnumSet<DayOfWeek> weekdays) {
-		this.weekDays = weekdays;
-		this.modified = true;
-		
-		storeAlarmList();
+	void setWeekDays(Set<DayOfWeek> weekdays) {
+		EnumSet<DayOfWeek> copy = weekdays.isEmpty() ? EnumSet.noneOf(DayOfWeek.class) : EnumSet.copyOf(weekdays);
+		modify(alarm -> alarm.weekDays = copy);
 	}
 	
 	/**
@@ -314,11 +338,13 @@ public class Alarm {
 	}
 	
 	void setAlarmSound(Alarm.Sound alarmSound) {
-		this.alarmSound = alarmSound;
 		if(alarmSound!=null && alarmSound.type!=Alarm.Sound.Type.STREAM) {
 			log.severe("Alarm.setAlarmSound: specified sound is not of type STREAM");
-			this.alarmSound = null;
+			alarmSound = null;
 		}
+		
+		final Alarm.Sound sound = alarmSound;
+		modify(alarm -> alarm.alarmSound = sound);
 	}
 	
 	/**
@@ -384,63 +410,148 @@ public class Alarm {
 	}
 	
 	/**
-	 * @return list of signal sounds
+	 * @return list of signal sounds (read only)
 	 */
 	List<Alarm.Sound> getSignalSoundList() {
-		return signalSoundList;
+		return Collections.unmodifiableList(signalSoundList);
+	}
+	
+	/**
+	 * Alarms are compared by their ID only, so an alarm stays equal to its modified versions
+	 */
+	@Override
+	public boolean equals(Object object) {
+		return object instanceof Alarm && ((Alarm)object).id.equals(id);
 	}
 	
+	@Override
+	public int hashCode() {
+		return id.hashCode();
+	}
 	
 	/**
-	 * applies the settings of the given alarm to the alarm in the list with the same ID
-	 * @param newAlarmSettings new alarm settings to apply
+	 * applies partial settings to this alarm, which must not be part of the alarm list.
+	 * Unlike fromJsonObject, invalid settings are rejected and properties not present stay unchanged
+	 * @param jsonObject partial settings
+	 * @throws IllegalArgumentException if a property is unknown or has an invalid value
 	 */
-	static void updateAlarmFromJsonObject(final JsonObject newAlarmSettings) {
-		final Alarm newAlarm = new Alarm();
-		newAlarm.fromJsonObject(newAlarmSettings);
-		
-		UnaryOperator<Alarm> copySettings = alarm -> {
-			if(alarm.id.equals(newAlarm.id)) {
-				newAlarm.modified = true;
-				return newAlarm;
+	private void patch(JsonObject jsonObject) {
+		try {
+			for(String property:jsonObject.keySet()) {
+				switch(property) {
+				case "id":
+					if(!jsonObject.getString(property).equals(id.toString())) {
+						throw new IllegalArgumentException("alarm ID cannot be changed");
+					}
+					break;
+				case "enabled":
+					enabled = jsonObject.getBoolean(property);
+					break;
+				case "oneTimeOnly":
+					oneTimeOnly = jsonObject.getBoolean(property);
+					break;
+				case "skipOnce":
+					skipOnce = jsonObject.getBoolean(property);
+					break;
+				case "time":
+					time = LocalTime.parse(jsonObject.getString(property));
+					break;
+				case "weekDays":
+					// string as created by toJsonObject or array of day names
+					String weekDaysString = jsonObject.get(property).getValueType()==JsonValue.ValueType.ARRAY
+							? jsonObject.getJsonArray(property).toString() : jsonObject.getString(property);
+					weekDays = EnumSet.noneOf(DayOfWeek.class);
+					for(DayOfWeek dayOfWeek:DayOfWeek.values()) {
+						if(weekDaysString.contains(dayOfWeek.toString())) {
+							weekDays.add(dayOfWeek);
+						}
+					}
+					break;
+				case "alarmSound":
+					Sound sound = soundMap.get(jsonObject.getString(property));
+					if(sound==null || sound.type!=Sound.Type.STREAM) {
+						throw new IllegalArgumentException("invalid alarm sound "+jsonObject.getString(property));
+					}
+					alarmSound = sound;
+					break;
+				default:
+					throw new IllegalArgumentException("unknown alarm property "+property);
+				}
 			}
-			else {
-				return alarm;
+		}
+		catch(ClassCastException | DateTimeParseException e) {
+			throw new IllegalArgumentException("invalid alarm property: "+e.getMessage());
+		}
+	}
+	
+	/**
+	 * applies a modification to this alarm. An alarm in the alarm list is never modified itself,
+	 * instead a modified copy replaces it in a new version of the alarm list
+	 * @param modification modification to apply
+	 */
+	private void modify(Consumer<Alarm> modification) {
+		if(published) {
+			modifyAlarms(alarm -> alarm.id.equals(id), modification);
+		}
+		else {
+			modification.accept(this);
+		}
+	}
+	
+	
+	/**
+	 * applies partial settings to alarms in the list. Only the properties present in a Json object get changed.
+	 * All alarms get modified in one new version of the alarm list, so the list is stored and the events are
+	 * rescheduled only once. If any settings are invalid, nothing gets modified
+	 * @param patches partial settings by alarm ID
+	 * @throws IllegalArgumentException if an alarm does not exist or a setting is invalid
+	 */
+	static synchronized void patchAlarms(Map<UUID,JsonObject> patches) {
+		AlarmList   current = alarmList.get();
+		List<Alarm> alarms  = new ArrayList<>(current.alarms);
+		for(Map.Entry<UUID,JsonObject> entry:patches.entrySet()) {
+			Alarm alarm = current.getAlarm(entry.getKey());
+			if(alarm==null) {
+				throw new IllegalArgumentException("alarm "+entry.getKey()+" does not exist");
 			}
-		};
-		
-		alarmList.replaceAll(copySettings);
+			Alarm copy = new Alarm(alarm);
+			copy.patch(entry.getValue());
+			alarms.set(alarms.indexOf(alarm), copy);
+		}
 		
-		storeAlarmList();
+		if(setAlarmList(alarms)) {
+			storeAlarmList();
+		}
 	}
 	
 	/**
-	 * @return the alarm list
+	 * applies the settings of the given alarm to the alarm in the list with the same ID
+	 * @param newAlarmSettings new alarm settings to apply
 	 */
-	static List<Alarm> getAlarmList() {
-		return alarmList;
+	static void updateAlarmFromJsonObject(final JsonObject newAlarmSettings) {
+		updateAlarmListFromJsonArray(Json.createArrayBuilder().add(newAlarmSettings).build());
 	}
 	
 	/**
-	 * return a list of all modified alarms and resets the modified flag for those alarms again
-	 * @return the list of modified alarms
+	 * @return the alarm list (read only)
 	 */
-	static List<Alarm> getModifiedAlarmList() {
-		return alarmList.stream()
-				.filter(alarm -> alarm.modified==true)
-				.peek(alarm -> alarm.modified=false)
-				.collect(Collectors.toList());
-		
-		
+	static List<Alarm> getAlarmList() {
+		return alarmList.get().getAlarms();
 	}
 	
+	/**
+	 * @return the current version of the alarm list. It never changes, so it can be read without locking
+	 */
+	static AlarmList getAlarmSnapshot() {
+		return alarmList.get();
+	}
 	
 	/**
 	 * @return the alarm list as Json array
 	 */
 	static JsonArray getAlarmListAsJsonArray() {
 		JsonArrayBuilder builder = Json.createBuilderFactory(null).createArrayBuilder();
-		alarmList.stream().forEach(alarm -> builder.add(alarm.toJsonObject()));
+		getAlarmList().stream().forEach(alarm -> builder.add(alarm.toJsonObject()));
 		
 		JsonArray jsonArray = builder.build();
 		log.finest("create Json array from alarm list: "+jsonArray.toString());
@@ -452,34 +563,45 @@ public class Alarm {
 	 * sets the alarm list from a Json array. All old content in the alarm list will be deleted and overwritten
 	 * @param jsonArray
 	 */
-	static void setAlarmListFromJsonArray(JsonArray jsonArray) {
-		alarmList.clear();
+	static synchronized void setAlarmListFromJsonArray(JsonArray jsonArray) {
+		List<Alarm> alarms = new LinkedList<>();
 		jsonArray.stream().forEach(jsonValue -> {
 			try {
 				Alarm alarm = new Alarm();
 				alarm.fromJsonObject(jsonValue.asJsonObject());
-				alarm.modified = true;
-				alarmList.add(alarm);
+				alarms.add(alarm);
 			}
 			catch(ClassCastException e) {
 				log.severe("ClassCastException when parsing JsonArray in setAlarmListFromJsonArray");
 			}
 		});
+		
+		setAlarmList(alarms);
 	}
 	
 	/**
 	 * updates the alarm list with the content of the Json array
 	 * @param jsonArray
 	 */
-	static void updateAlarmListFromJsonArray(JsonArray jsonArray) {
+	static synchronized void updateAlarmListFromJsonArray(JsonArray jsonArray) {
+		Map<UUID,Alarm> newAlarmMap = new HashMap<>();
 		jsonArray.stream().forEach(jsonValue -> {
 			try {
-				updateAlarmFromJsonObject(jsonValue.asJsonObject());
+				Alarm newAlarm = new Alarm();
+				newAlarm.fromJsonObject(jsonValue.asJsonObject());
+				newAlarmMap.put(newAlarm.id, newAlarm);
 			}
 			catch(ClassCastException e) {
 				log.severe("ClassCastException when parsing JsonArray in setAlarmListFromJsonArray");
 			}
 		});
+		
+		List<Alarm> alarms = getAlarmList().stream()
+				.map(alarm -> newAlarmMap.getOrDefault(alarm.id, alarm))
+				.collect(Collectors.toList());
+		if(setAlarmList(alarms)) {
+			storeAlarmList();
+		}
 	}
 	
 	/**
@@ -487,83 +609,142 @@ public class Alarm {
 	 * @param storageDirectory
 	 */
 	static void setStorageDirectory(String storageDirectory) {
+		flushAlarmList();
 		storagePath = Paths.get(storageDirectory, storageFile);
+		persistence = new AlarmPersistence(storagePath, storageDelay);
 	}
 	
 	/**
-	 * stores the alarm list as Json object to a file
-	 * @param path filename
+	 * writes pending changes of the alarm list to the file immediately
 	 */
-	private static void storeAlarmList() {
-		log.fine("storing alarm list to file "+storagePath);
+	static void flushAlarmList() {
+		persistence.flush();
+	}
+	
+	/**
+	 * publishes the alarms on MQTT. Each alarm gets published as retained topic alarm/&lt;id&gt;, but only
+	 * if it changed since its last publication. Retained topics of deleted alarms get cleared.
+	 * Topic alarmversion carries the version of the alarm list. It is outside of the alarm/ prefix, so
+	 * subscribers to alarm/+ only get alarm objects.
+	 * The complete list (topic alarmlist) is only published if enabled in the configuration
+	 */
+	static void publishAlarms() {
+		publishAlarms(getAlarmList().stream().map(Alarm::toJsonObject).collect(Collectors.toList()));
+	}
+	
+	/**
+	 * @return version of the alarm list, gets incremented whenever an alarm changed
+	 */
+	static long getAlarmListVersion() {
+		return alarmList.get().getVersion();
+	}
+	
+	/**
+	 * publishes the changed alarms on MQTT
+	 * @param alarms all alarms as Json objects
+	 */
+	private static synchronized void publishAlarms(List<JsonObject> alarms) {
+		MqttClient  mqttClient = MqttClient.getMqttClient();
+		Set<String> ids        = new HashSet<>();
+		boolean     changed    = false;
 		
-		JsonArray jsonArray = getAlarmListAsJsonArray();
-		log.fine("storing alarm list as Json array: "+jsonArray.toString());
+		for(JsonObject alarm:alarms) {
+			String id   = alarm.getString("id");
+			String json = alarm.toString();
+			
+			ids.add(id);
+			if(!json.equals(publishedAlarmMap.put(id, json))) {
+				log.fine("publishing modified alarm "+id);
+				changed = true;
+				if(mqttClient!=null) {
+					mqttClient.publish(MQTT_TOPIC_ALARM+id, json, true);
+				}
+			}
+		}
 		
-		// publish modified alarm status on MQTT broker
-		JsonObjectBuilder builder = Json.createBuilderFactory(null).createObjectBuilder();
-		builder.add("name", Configuration.getConfiguration().getName())
-		       .add("alarms", Alarm.getAlarmListAsJsonArray());
-		MqttClient mqttClient = MqttClient.getMqttClient();
-		if(mqttClient!=null) {
-			mqttClient.publish(MQTT_TOPIC_ALARMLIST, builder.build().toString());
+		Iterator<String> iterator = publishedAlarmMap.keySet().iterator();
+		while(iterator.hasNext()) {
+			String id = iterator.next();
+			if(!ids.contains(id)) {
+				log.fine("clearing deleted alarm "+id);
+				iterator.remove();
+				changed = true;
+				if(mqttClient!=null) {
+					mqttClient.publish(MQTT_TOPIC_ALARM+id, null, true);
+				}
+			}
 		}
 		
-		try {
-			FileWriter writer = new FileWriter(storagePath.toFile());
-			writer.write(jsonArray.toString());
-			writer.flush();
-			writer.close();
-		} catch (IOException e) {
-			log.severe("Unable to store alarm list as file: "+e.getMessage());
+		if(changed) {
+			if(mqttClient!=null) {
+				mqttClient.publish(MQTT_TOPIC_ALARM_VERSION, Long.toString(getAlarmListVersion()), true);
+				
+				if(Configuration.getConfiguration().getMqttPublishAlarmList()) {
+					JsonArrayBuilder arrayBuilder = Json.createBuilderFactory(null).createArrayBuilder();
+					alarms.forEach(arrayBuilder::add);
+					JsonObjectBuilder builder = Json.createBuilderFactory(null).createObjectBuilder();
+					builder.add("name", Configuration.getConfiguration().getName())
+					       .add("alarms", arrayBuilder);
+					mqttClient.publish(MQTT_TOPIC_ALARMLIST, builder.build().toString());
+				}
+			}
 		}
 	}
 	
+	/**
+	 * stores the alarm list. Changes get journaled immediately, the file itself gets written
+	 * in the background once changes stopped coming in for a moment
+	 */
+	private static synchronized void storeAlarmList() {
+		log.fine("storing alarm list to file "+storagePath);
+		
+		persistence.store(getAlarmList().stream().map(Alarm::toJsonObject).collect(Collectors.toList()));
+	}
+	
 	/**
 	 * reads the alarm list in Json format from file
 	 */
-	static void restoreAlarmList() {
+	static synchronized void restoreAlarmList() {
 		log.info("restoring alarm list from file "+storagePath);
-		alarmList.clear();
 		
 		// read sound list from configuration file
-		soundMap.clear();
-		Configuration.getConfiguration().getSoundList().stream().forEach(sound -> soundMap.put(sound.name, sound));
+		updateSoundMap(Configuration.getConfiguration());
 		
 		
-		try {
-			FileReader reader = new FileReader(storagePath.toFile());
-			JsonArray jsonArray = Json.createReaderFactory(null).createReader(reader).readArray();
+		JsonArray jsonArray = persistence.restore();
+		if(jsonArray!=null) {
 			setAlarmListFromJsonArray(jsonArray);
-			
-			alarmList.stream().forEach(alarm -> alarm.modified=true);
-		} catch (IOException e) {
-			log.severe("Unable to restore alarm list from file: "+e.getMessage());
+		}
+		else {
+			log.severe("Unable to restore alarm list from file "+storagePath);
 			
 			// create default alarms
 			log.info("Creating default alarms");
+			List<Alarm> alarms = new LinkedList<>();
 			for(int i=0 ; i<defaultAlarmCount ; i++) {
 				Alarm alarm = new Alarm();
 				alarm.setAlarmSound(Configuration.getConfiguration().getSoundList().get(0));
-				alarmList.add(alarm);
+				alarms.add(alarm);
 			}
+			setAlarmList(alarms);
 		}
-		
-		// publish modified alarm status on MQTT broker
-		JsonObjectBuilder builder = Json.createBuilderFactory(null).createObjectBuilder();
-		builder.add("name", Configuration.getConfiguration().getName())
-		       .add("alarms", Alarm.getAlarmListAsJsonArray());
-		MqttClient mqttClient = MqttClient.getMqttClient();
-		if(mqttClient!=null) {
-			mqttClient.publish(MQTT_TOPIC_ALARMLIST, builder.build().toString());
-		}
+	}
+	
+	/**
+	 * replaces the map of sounds by name with the sounds of a configuration
+	 * @param configuration configuration
+	 */
+	private static void updateSoundMap(Configuration configuration) {
+		Map<String,Sound> sounds = new HashMap<>();
+		configuration.getSoundList().stream().forEach(sound -> sounds.put(sound.name, sound));
+		soundMap = sounds;
 	}
 	
 	/**
 	 * @return the next active alarm for today or null
 	 */
 	static Alarm getNextAlarmToday() {
-		return alarmList.stream()
+		return getAlarmList().stream()
 			.filter(alarm -> alarm.getEnabled()==true && alarm.getSkipOnce()==false && alarm.getWeekDays().contains(LocalDate.now().getDayOfWeek()))
 			.filter(alarm -> alarm.getTime().isAfter(LocalTime.now()))
 			.min( (alarm1,alarm2) -> alarm1.time.compareTo(alarm2.time))
@@ -574,7 +755,7 @@ public class Alarm {
 	 * @return the next active alarm for tomorrow or null
 	 */
 	static Alarm getNextAlarmTomorrow() {
-		return alarmList.stream()
+		return getAlarmList().stream()
 			.filter(alarm -> alarm.getEnabled()==true && alarm.getSkipOnce()==false && alarm.getWeekDays().contains(LocalDate.now().getDayOfWeek().plus(1)))
 			.min( (alarm1,alarm2) -> alarm1.time.compareTo(alarm2.time))
 			.orElse(null);
@@ -584,60 +765,210 @@ public class Alarm {
 	 * skips all alarms today
 	 */
 	static void skipAllAlarmsToday() {
-		alarmList.stream()
-		.filter(alarm -> alarm.getEnabled()==true && alarm.getSkipOnce()==false && alarm.getWeekDays().contains(LocalDate.now().getDayOfWeek()))
-		.forEach(alarm -> alarm.setSkipOnce(true));
-		
-		storeAlarmList();
+		DayOfWeek today = LocalDate.now().getDayOfWeek();
+		modifyAlarms(alarm -> alarm.enabled && !alarm.skipOnce && alarm.weekDays.contains(today), alarm -> alarm.skipOnce = true);
 	}
 
 	/**
 	 * set a single alarm for today
 	 */
-	static void setAlarmToday(LocalTime time) {
+	static synchronized void setAlarmToday(LocalTime time) {
 		skipAllAlarmsToday();
-		Alarm alarm = alarmList.get(alarmList.size()-1);
-		
-		alarm.enabled     = true;
-		alarm.skipOnce    = false;
-		alarm.oneTimeOnly = true;
-		alarm.time        = time;
-		alarm.weekDays.clear();
-		alarm.weekDays.add(LocalDate.now().getDayOfWeek());
-		alarm.modified    = true;
-		
-		storeAlarmList();
+		setSingleAlarm(time, LocalDate.now().getDayOfWeek());
 	}
 	
 	/**
 	 * skips all alarms tomorrow
 	 */
 	static void skipAllAlarmsTomorrow() {
-		alarmList.stream()
-		.filter(alarm -> alarm.getEnabled()==true && alarm.getSkipOnce()==false && alarm.getWeekDays().contains(LocalDate.now().getDayOfWeek().plus(1)))
-		.forEach(alarm -> alarm.setSkipOnce(true));
-		
-		storeAlarmList();
+		DayOfWeek tomorrow = LocalDate.now().getDayOfWeek().plus(1);
+		modifyAlarms(alarm -> alarm.enabled && !alarm.skipOnce && alarm.weekDays.contains(tomorrow), alarm -> alarm.skipOnce = true);
 	}
 	
 	/**
 	 * set a single alarm for the next day
 	 */
-	static void setAlarmTomorrow(LocalTime time) {
+	static synchronized void setAlarmTomorrow(LocalTime time) {
 		skipAllAlarmsTomorrow();
-		Alarm alarm = alarmList.get(alarmList.size()-1);
+		setSingleAlarm(time, LocalDate.now().getDayOfWeek().plus(1));
+	}
+	
+	/**
+	 * immutable version of the alarm list. Readers get a consistent view of all alarms without locking,
+	 * writers publish a new version with a higher version number
+	 */
+	static final class AlarmList {
+		private AlarmList(List<Alarm> alarms,long version) {
+			this.alarms  = Collections.unmodifiableList(alarms);
+			this.version = version;
+			alarms.forEach(alarm -> alarmMap.put(alarm.id, alarm));
+		}
+		
+		/**
+		 * @return the alarms (read only)
+		 */
+		List<Alarm> getAlarms() {
+			return alarms;
+		}
+		
+		/**
+		 * @return version of this alarm list
+		 */
+		long getVersion() {
+			return version;
+		}
+		
+		/**
+		 * @param id alarm ID
+		 * @return alarm with this ID or null
+		 */
+		Alarm getAlarm(UUID id) {
+			return alarmMap.get(id);
+		}
+		
+		/**
+		 * @param previous older version of the alarm list
+		 * @return all alarms which got added or modified since the older version
+		 */
+		List<Alarm> getModifiedAlarms(AlarmList previous) {
+			return alarms.stream()
+					.filter(alarm -> previous.getAlarm(alarm.id)!=alarm)
+					.collect(Collectors.toList());
+		}
+		
+		/**
+		 * @param previous older version of the alarm list
+		 * @return all alarms which got removed since the older version
+		 */
+		List<Alarm> getRemovedAlarms(AlarmList previous) {
+			return previous.alarms.stream()
+					.filter(alarm -> getAlarm(alarm.id)==null)
+					.collect(Collectors.toList());
+		}
+		
+		private final List<Alarm>     alarms;                       // alarms in list order
+		private final Map<UUID,Alarm> alarmMap = new HashMap<>();   // alarms by ID
+		private final long            version;                      // version of this alarm list
+	}
+	
+	/**
+	 * listener for changes of the alarm list
+	 */
+	interface Listener {
+		/**
+		 * called for each new version of the alarm list, in the order of the versions
+		 * @param previous previous version of the alarm list
+		 * @param current  new version of the alarm list
+		 */
+		void alarmListChanged(AlarmList previous,AlarmList current);
+	}
+	
+	/**
+	 * registers a listener for changes of the alarm list. Each listener gets called on its own thread,
+	 * so a slow listener neither delays the others nor the thread modifying the alarms
+	 * @param name     listener name, used for thread name and metrics
+	 * @param listener listener to register
+	 */
+	static void addListener(String name,Listener listener) {
+		log.config("adding alarm listener "+name);
 		
-		alarm.enabled     = true;
-		alarm.skipOnce    = false;
-		alarm.oneTimeOnly = true;
-		alarm.time        = time;
-		alarm.weekDays.clear();
-		alarm.weekDays.add(DayOfWeek.from(LocalDate.now().getDayOfWeek().plus(1)));
-		alarm.modified    = true;
+		ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "AlarmListener "+name);
+			thread.setDaemon(true);
+			return thread;
+		});
+		Metrics.Timer timer = Metrics.timer("alarm.listener."+name);
 		
-		storeAlarmList();
+		listenerList.add((previous,current) -> executor.execute(() -> {
+			long start = System.nanoTime();
+			try {
+				listener.alarmListChanged(previous, current);
+			}
+			catch(Exception e) {
+				log.severe("Exception in alarm listener "+name+": "+e.getMessage());
+			}
+			timer.record(System.nanoTime()-start);
+		}));
 	}
 	
+	/**
+	 * applies a modification to all alarms matching the filter and publishes the modified
+	 * copies as new version of the alarm list
+	 * @param filter       selects the alarms to modify
+	 * @param modification modification to apply
+	 */
+	private static synchronized void modifyAlarms(Predicate<Alarm> filter,Consumer<Alarm> modification) {
+		List<Alarm> alarms = getAlarmList().stream()
+				.map(alarm -> {
+					if(!filter.test(alarm)) {
+						return alarm;
+					}
+					Alarm copy = new Alarm(alarm);
+					modification.accept(copy);
+					return copy;
+				})
+				.collect(Collectors.toList());
+		
+		if(setAlarmList(alarms)) {
+			storeAlarmList();
+		}
+	}
+	
+	/**
+	 * turns the last alarm of the list into a one time alarm
+	 * @param time      alarm time
+	 * @param dayOfWeek alarm day
+	 */
+	private static void setSingleAlarm(LocalTime time,DayOfWeek dayOfWeek) {
+		List<Alarm> alarms = getAlarmList();
+		if(alarms.isEmpty()) {
+			log.severe("unable to set single alarm: alarm list is empty");
+			return;
+		}
+		
+		UUID id = alarms.get(alarms.size()-1).id;
+		modifyAlarms(alarm -> alarm.id.equals(id), alarm -> {
+			alarm.enabled     = true;
+			alarm.skipOnce    = false;
+			alarm.oneTimeOnly = true;
+			alarm.time        = time;
+			alarm.weekDays    = EnumSet.of(dayOfWeek);
+		});
+	}
+	
+	/**
+	 * publishes a new version of the alarm list. Alarms with unchanged settings keep their previous instance,
+	 * so readers can detect modified alarms by comparing instances
+	 * @param alarms new alarm list
+	 * @return true if the alarm list changed and a new version got published
+	 */
+	private static synchronized boolean setAlarmList(List<Alarm> alarms) {
+		AlarmList   current   = alarmList.get();
+		List<Alarm> newAlarms = new ArrayList<>(alarms.size());
+		boolean     changed   = alarms.size()!=current.alarms.size();
+		
+		for(Alarm alarm:alarms) {
+			Alarm previous = current.getAlarm(alarm.id);
+			if(previous!=null && previous!=alarm && previous.toJsonObject().equals(alarm.toJsonObject())) {
+				alarm = previous;
+			}
+			changed = changed || current.alarms.get(newAlarms.size())!=alarm;
+			
+			alarm.published = true;
+			newAlarms.add(alarm);
+		}
+		
+		if(changed) {
+			AlarmList next = new AlarmList(newAlarms, current.version+1);
+			alarmList.set(next);
+			log.fine("alarm list version "+next.version+" published");
+			
+			// still holding the lock, so all listeners see the versions in order
+			listenerList.forEach(listener -> listener.alarmListChanged(current, next));
+		}
+		
+		return changed;
+	}
 	
 	
 	
@@ -647,7 +978,10 @@ public class Alarm {
 	private static final String storageDirectory  = "/var/lib/alarmpi";  // default directory to store alarm list
 	private static final String storageFile       = "alarmlist.json";    // filename for alarm list
 	
+	private static final int    storageDelay      = 2000;                // time in milliseconds to collect changes before writing the alarm list file
+	
 	private static       Path   storagePath       = Paths.get(storageDirectory, storageFile);
+	private static       AlarmPersistence persistence = new AlarmPersistence(storagePath, storageDelay);
 	
 	private static final Logger log               = Logger.getLogger( Alarm.class.getName() );
 		
@@ -672,15 +1006,34 @@ public class Alarm {
 	private int                 lightDimUpBrightness = 100;              // brightness of light at end of dim up phase in percent
 	
 	
-	// list with all alarms
-	private static List<Alarm> alarmList          = new LinkedList<>();
+	// current version of the alarm list
+	private static final AtomicReference<AlarmList> alarmList = new AtomicReference<>(new AlarmList(new LinkedList<>(), 0));
+	
+	// listeners for alarm list changes, each dispatching to its own thread
+	private static final List<Listener> listenerList = new CopyOnWriteArrayList<>();
+	
+	// modified alarms get published on the MQTT broker, sounds modified in the configuration file are available for new alarm settings
+	static {
+		addListener("mqtt", (previous,current) -> publishAlarms());
+		Configuration.addListener("alarm sounds", (previous,current,changedSections) -> {
+			if(changedSections.stream().anyMatch(section -> section.startsWith("sound"))) {
+				updateSoundMap(current);
+			}
+		});
+	}
 	
-	// map with all sounds (from configuration file)
-	private static Map<String,Sound> soundMap     = new HashMap<>();
+	// map with all sounds (from configuration file), replaced as a whole when the configuration changes
+	private static volatile Map<String,Sound> soundMap = new HashMap<>();
+	
+	// last published Json string of each alarm, key is the alarm ID
+	private static Map<String,String> publishedAlarmMap = new HashMap<>();
+
 	
 	//
-	private boolean             modified         = false;               // flag to indicate if alarm got modified and changes need to be processed
+	private boolean             published        = false;               // alarm is part of the alarm list and must not be modified anymore
 	
-	final static String MQTT_TOPIC_ALARMLIST   = "alarmlist";   // published topic, contains alarm list in JSON format
+	final static String MQTT_TOPIC_ALARMLIST     = "alarmlist";       // published topic, contains alarm list in JSON format
+	final static String MQTT_TOPIC_ALARM         = "alarm/";          // published topic prefix, followed by alarm ID. Contains the alarm in JSON format
+	final static String MQTT_TOPIC_ALARM_VERSION = "alarmversion";    // published topic, contains a counter incremented with each alarm change
 }
 
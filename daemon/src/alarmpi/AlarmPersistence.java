@@ -0,0 +1,245 @@
+package alarmpi;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+
+/**
+ * Write-behind storage of the alarm list.
+ * Each change gets appended to a journal file right away, which is small and cheap. The complete list
+ * gets written at most once per write delay: into a temporary file first, which then replaces the
+ * alarm list file in one atomic move. After that, the journal gets truncated. A power cut therefore
+ * never leaves a partially written alarm list behind, and changes not yet in the alarm list file
+ * get recovered from the journal. A failed write gets retried with an increasing delay.
+ */
+class AlarmPersistence {
+
+	/**
+	 * constructor
+	 * @param file       alarm list file
+	 * @param writeDelay time in milliseconds to collect changes before writing the alarm list file
+	 */
+	AlarmPersistence(Path file,int writeDelay) {
+		this.file        = file;
+		this.tempFile    = file.resolveSibling(file.getFileName()+".tmp");
+		this.journalFile = file.resolveSibling(file.getFileName()+".journal");
+		this.writeDelay  = writeDelay;
+	}
+
+	/**
+	 * stores the alarm list. Alarms which changed since the last call get added to the journal immediately,
+	 * the alarm list file gets written after the write delay
+	 * @param alarms complete alarm list
+	 */
+	synchronized void store(List<JsonObject> alarms) {
+		JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
+		StringBuilder    journal      = new StringBuilder();
+		Set<String>      ids          = new HashSet<>();
+
+		for(JsonObject alarm:alarms) {
+			String id   = alarm.getString("id","");
+			String json = alarm.toString();
+
+			arrayBuilder.add(alarm);
+			ids.add(id);
+			if(!json.equals(storedAlarmMap.put(id, json))) {
+				journal.append(json).append('\n');
+			}
+		}
+
+		Iterator<String> iterator = storedAlarmMap.keySet().iterator();
+		while(iterator.hasNext()) {
+			String id = iterator.next();
+			if(!ids.contains(id)) {
+				iterator.remove();
+				journal.append(Json.createObjectBuilder().add("id", id).add(DELETED, true).build().toString()).append('\n');
+			}
+		}
+
+		pendingList = arrayBuilder.build();
+		if(journal.length()>0) {
+			appendJournal(journal.toString());
+		}
+
+		if(scheduledWrite==null) {
+			scheduledWrite = writer.schedule(this::flush, writeDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * writes a pending alarm list to the file immediately
+	 */
+	synchronized void flush() {
+		// a direct call replaces a scheduled write or retry
+		if(scheduledWrite!=null) {
+			scheduledWrite.cancel(false);
+			scheduledWrite = null;
+		}
+		if(pendingList==null) {
+			return;
+		}
+
+		log.fine("writing alarm list to file "+file);
+		try {
+			// write into temporary file and make sure the data is on the disk before replacing the alarm list file
+			try(FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				channel.write(ByteBuffer.wrap(pendingList.toString().getBytes(StandardCharsets.UTF_8)));
+				channel.force(true);
+			}
+			Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+			// all changes are in the alarm list file now
+			Files.deleteIfExists(journalFile);
+			pendingList = null;
+			writeCount++;
+			retryDelay  = 0;
+		}
+		catch(IOException e) {
+			// the changes are in the journal, retry later with doubled delay
+			retryDelay     = Math.min(Math.max(2*retryDelay, Math.max(writeDelay, MIN_RETRY_DELAY)), MAX_RETRY_DELAY);
+			scheduledWrite = writer.schedule(this::flush, retryDelay, TimeUnit.MILLISECONDS);
+			log.severe("Unable to store alarm list as file, retrying in "+retryDelay+"ms: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * reads the alarm list from file and applies the changes recorded in the journal
+	 * @return alarm list or null if neither alarm list file nor journal exist
+	 */
+	synchronized JsonArray restore() {
+		// a pending write is the most recent state
+		flush();
+
+		Map<String,JsonObject> alarmMap = new LinkedHashMap<>();
+		boolean found = false;
+		storedAlarmMap.clear();
+
+		try {
+			String content = Files.readString(file, StandardCharsets.UTF_8);
+			Json.createReader(new StringReader(content)).readArray().stream()
+				.map(value -> value.asJsonObject())
+				.forEach(alarm -> alarmMap.put(alarm.getString("id",""), alarm));
+			found = true;
+		}
+		catch(IOException | JsonException | ClassCastException e) {
+			log.severe("Unable to read alarm list file "+file+": "+e.getMessage());
+		}
+
+		// replay journal, a torn last line (power cut during append) gets ignored
+		if(Files.exists(journalFile)) {
+			int count = 0;
+			try(BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+				String line;
+				while((line=reader.readLine())!=null) {
+					try {
+						JsonObject alarm = Json.createReader(new StringReader(line)).readObject();
+						if(alarm.getBoolean(DELETED, false)) {
+							alarmMap.remove(alarm.getString("id",""));
+						}
+						else {
+							alarmMap.put(alarm.getString("id",""), alarm);
+						}
+						count++;
+					}
+					catch(JsonException e) {
+						log.warning("ignoring invalid journal entry: "+line);
+					}
+				}
+			}
+			catch(IOException e) {
+				log.severe("Unable to read alarm journal "+journalFile+": "+e.getMessage());
+			}
+			log.info("applied "+count+" changes from alarm journal");
+			found = found || count>0;
+		}
+
+		if(!found) {
+			return null;
+		}
+
+		// this is the state on disk now, following calls to store only journal differences to it
+		alarmMap.values().forEach(alarm -> storedAlarmMap.put(alarm.getString("id",""), alarm.toString()));
+
+		JsonArrayBuilder builder = Json.createArrayBuilder();
+		alarmMap.values().forEach(builder::add);
+		return builder.build();
+	}
+
+	/**
+	 * @return number of times the alarm list file got written
+	 */
+	synchronized int getWriteCount() {
+		return writeCount;
+	}
+
+	//
+	// private methods
+	//
+
+	/**
+	 * appends changes to the journal and makes sure they are on the disk
+	 * @param lines changed alarms, one Json object per line
+	 */
+	private void appendJournal(String lines) {
+		try(FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			channel.write(ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8)));
+			channel.force(false);
+		}
+		catch(IOException e) {
+			log.severe("Unable to write alarm journal: "+e.getMessage());
+		}
+	}
+
+	//
+	// private members
+	//
+	private static final Logger log = Logger.getLogger( AlarmPersistence.class.getName() );
+
+	private static final String DELETED         = "deleted";   // journal entry property marking a deleted alarm
+	private static final int    MIN_RETRY_DELAY = 100;         // min. delay in milliseconds before retrying a failed write
+	private static final int    MAX_RETRY_DELAY = 60000;       // max. delay in milliseconds before retrying a failed write
+
+	// thread writing the alarm list files
+	private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "AlarmPersistence");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Path          file;                    // alarm list file
+	private final Path          tempFile;                // temporary file, replaces alarm list file once written
+	private final Path          journalFile;             // journal with changes since the alarm list file got written
+	private final int           writeDelay;              // time in milliseconds to collect changes
+	private JsonArray           pendingList    = null;   // alarm list waiting to be written
+	private ScheduledFuture<?>  scheduledWrite = null;   // scheduled write or retry of the alarm list file, null if none
+	private int                 retryDelay     = 0;      // delay in milliseconds of the last retry, 0 after a successful write
+	private int                 writeCount     = 0;      // number of alarm list file writes
+
+	// Json string of each alarm as stored in file and journal, key is the alarm ID
+	private final Map<String,String> storedAlarmMap = new HashMap<>();
+}
@@ -3,15 +3,15 @@ package alarmpi;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
-
 import com.pi4j.Pi4J;
 import com.pi4j.context.Context;
 import com.pi4j.exception.Pi4JException;
@@ -29,6 +29,36 @@ import com.pi4j.plugin.pigpio.provider.spi.PiGpioSpiProviderImpl;
  */
 public class AlarmPi {
 
+	/**
+	 * creates and starts the HTTP server with all handlers of the JSON interface and the web interface
+	 * @param configuration configuration
+	 * @param controller    controller
+	 * @param address       address to bind to
+	 * @return started server
+	 * @throws IOException if the server socket cannot be created or the web interface cannot be read
+	 */
+	static JsonServer startJsonServer(Configuration configuration,Controller controller,InetSocketAddress address) throws IOException {
+		JsonServer.setConnectionLimits(configuration.getHttpRequestTimeout(), configuration.getHttpIdleTimeout(), configuration.getHttpMaxConnections());
+		JsonServer jsonServer = new JsonServer(address,
+				configuration.getHttpThreadCount(), configuration.getHttpQueueSize(), configuration.getHttpMaxActive());
+		jsonServer.createContext("/", new JsonRequestHandler(controller));
+		jsonServer.createContext("/events", EventBroadcaster.getBroadcaster());
+		JsonResourceHandler resourceHandler = new JsonResourceHandler(controller);
+		for(String resource:new String[] {"/alarms", "/lights", "/sound", "/batch"}) {
+			jsonServer.createContext(resource, resourceHandler);
+		}
+		Path wwwDirectory = Paths.get(configuration.getWwwDirectory());
+		if(Files.isDirectory(wwwDirectory)) {
+			jsonServer.createContext(StaticContentHandler.CONTEXT, new StaticContentHandler(wwwDirectory));
+		}
+		else {
+			log.warning("web interface directory "+wwwDirectory+" does not exist - web interface is not served");
+		}
+		jsonServer.start();
+		
+		return jsonServer;
+	}
+	
 	public static void main(String[] args) {
 		try {
 			// first check for a local conf directory (as it exists in the development environment)
@@ -71,6 +101,7 @@ public class AlarmPi {
 			Configuration configuration = Configuration.getConfiguration();
 			
 			log.info("configuration read successfully");
+			Configuration.startWatcher();
 			// touch (create) watchdog file
 			if(configuration.getRunningOnRaspberry()) {
 				try {
@@ -154,32 +185,18 @@ public class AlarmPi {
 			controllerThread.setUncaughtExceptionHandler(handler);
 			controllerThread.start();
 			
-			// prepare threads for TCP servers
-			final ExecutorService threadPool = Executors.newCachedThreadPool();
-			
 			if(configuration.getJsonServerPort()==null) {
 				// no port specified (or set to 0)
 				log.severe("No HTTP JSON server port specified - no server is started");
 			}
 			else {
 			    try {
-			    	final ServerSocket jsonServerSocket = new ServerSocket(configuration.getJsonServerPort());
-					
-					Thread jsonServerThread = new Thread(new TcpServer(TcpServer.Type.JSON,controller,jsonServerSocket,threadPool));
-					jsonServerThread.setDaemon(true);
-					jsonServerThread.setUncaughtExceptionHandler(handler);
-					jsonServerThread.start();
+			    	final JsonServer jsonServer = startJsonServer(configuration, controller, new InetSocketAddress(configuration.getJsonServerPort()));
 					
 				    Runtime.getRuntime().addShutdownHook( new Thread() {
 						public void run() {
 							log.info("shutdown hook started to shut down json server");
-							try {
-								jsonServerSocket.close();
-								log.info("json server socket closed");
-							}
-							catch (IOException  e) {
-								log.severe("Exception during shutdown: "+e);
-							}
+							jsonServer.stop();
 						}
 					});
 				} catch (IOException e) {
@@ -208,7 +225,9 @@ public class AlarmPi {
 					// switch all lights and alarms off
 					controller.allOff(false);
 					controllerThread.interrupt();
-					threadPool.shutdownNow();
+					
+					// write alarm changes still waiting for the background write
+					Alarm.flushAlarmList();
 					
 					if (pi4j != null) {
 			            pi4j.shutdown();
@@ -0,0 +1,19 @@
+package alarmpi;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Interface for all classes providing an announcement (weather, calendar, next alarm, ...).
+ * The call() method creates the mp3 file with the announcement and returns its filename
+ * (or null/an empty string if nothing is to be announced).
+ * Providers get executed in parallel by the AnnouncementService
+ */
+interface AnnouncementProvider extends Callable<String> {
+
+	/**
+	 * returns the provider name. The name is used as key to cache the last result
+	 * of this provider, so providers returning different content must use different names
+	 * @return provider name
+	 */
+	String getName();
+}
@@ -0,0 +1,177 @@
+package alarmpi;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Executes announcement providers in parallel. Each request gets a deadline: if the
+ * provider has not finished by then, the last result of the same provider created today
+ * is used as fallback (or null if no such result exists). A provider that finishes after its
+ * deadline still updates the fallback cache for later requests.
+ * Cached results get copied to a file of their own, since providers re-use their output filename
+ * and a provider running late must not overwrite the file while the fallback gets played.
+ */
+class AnnouncementService {
+
+	/**
+	 * constructor
+	 * @param threadCount number of providers that can run in parallel
+	 */
+	AnnouncementService(int threadCount) {
+		executorService = Executors.newFixedThreadPool(threadCount);
+
+		log.fine("announcement service created with "+threadCount+" threads");
+	}
+
+	/**
+	 * starts the specified provider
+	 * @param provider provider to start
+	 * @param deadline point in time at which the announcement is needed
+	 * @return future which completes latest at the deadline with the filename of the
+	 *         announcement, the cached fallback or null
+	 */
+	CompletableFuture<String> request(AnnouncementProvider provider,LocalDateTime deadline) {
+		final String name = provider.getName();
+		long timeout = Duration.between(LocalDateTime.now(), deadline).toMillis();
+		if(timeout<0) {
+			log.warning("deadline for announcement "+name+" already passed");
+			timeout = 0;
+		}
+		log.fine("starting announcement provider "+name+", timeout="+timeout+"ms");
+
+		final long start = System.nanoTime();
+		CompletableFuture<String> task = CompletableFuture.supplyAsync(() -> callProvider(provider), executorService);
+
+		// remember valid results as fallback, even if they arrive after the deadline
+		task.thenAccept(file -> {
+			log.fine("announcement provider "+name+" finished after "+TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start)+"ms");
+			if(isValid(file)) {
+				String cachedFile = copyToCache(file);
+				if(cachedFile!=null) {
+					cache.put(name, new CachedResult(cachedFile));
+				}
+			}
+		});
+
+		return task.thenApply(file -> file)
+				.completeOnTimeout(null, timeout, TimeUnit.MILLISECONDS)
+				.thenApply(file -> isValid(file) ? file : getFallback(name));
+	}
+
+	/**
+	 * starts the specified provider with a deadline relative to now
+	 * @param provider provider to start
+	 * @param timeout  maximum time to wait for the provider
+	 * @return future which completes latest after the timeout with the filename of the
+	 *         announcement, the cached fallback or null
+	 */
+	CompletableFuture<String> request(AnnouncementProvider provider,Duration timeout) {
+		return request(provider,LocalDateTime.now().plus(timeout));
+	}
+
+	/**
+	 * stops all running providers
+	 */
+	void shutdown() {
+		executorService.shutdownNow();
+	}
+
+	//
+	// private methods
+	//
+
+	/**
+	 * calls the provider and converts exceptions into null results
+	 * @param provider provider to call
+	 * @return provider result or null
+	 */
+	private String callProvider(AnnouncementProvider provider) {
+		try {
+			return provider.call();
+		}
+		catch(Exception e) {
+			log.severe("Exception in announcement provider "+provider.getName()+": "+e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * copies a provider result to the cache file belonging to its filename. The copy replaces the
+	 * previous one atomically, so a cached file which is just being played stays intact
+	 * @param file filename of the provider result, relative to the mpd file directory
+	 * @return filename of the copy, relative to the mpd file directory, or null in case of an error
+	 */
+	private String copyToCache(String file) {
+		int    extension = file.lastIndexOf('.');
+		String cacheFile = extension>file.lastIndexOf('/') ? file.substring(0, extension)+".cached"+file.substring(extension) : file+".cached";
+
+		String directory = Configuration.getConfiguration().getMpdFileDirectory();
+		Path   target    = Paths.get(directory, cacheFile);
+		Path   tmp       = Paths.get(directory, cacheFile+".tmp");
+		try {
+			Files.copy(Paths.get(directory, file), tmp, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException e) {
+			log.severe("Unable to copy announcement "+file+" to cache file "+cacheFile+": "+e.getMessage());
+			return null;
+		}
+
+		// new files must be known to mpd before they can be played
+		SoundControl.getSoundControl().update();
+
+		return cacheFile;
+	}
+
+	/**
+	 * returns the cached result of a provider if it got created today
+	 * @param name provider name
+	 * @return cached filename or null
+	 */
+	private String getFallback(String name) {
+		CachedResult cachedResult = cache.get(name);
+		if(cachedResult!=null && cachedResult.date.equals(LocalDate.now())) {
+			log.warning("announcement "+name+" not available in time, using cached result "+cachedResult.file);
+			return cachedResult.file;
+		}
+
+		log.warning("announcement "+name+" not available in time and no cached result");
+		return null;
+	}
+
+	private static boolean isValid(String file) {
+		return file!=null && !file.isEmpty();
+	}
+
+	//
+	// private members
+	//
+	private static final Logger log = Logger.getLogger( AnnouncementService.class.getName() );
+
+	// private class to store a provider result together with its creation date
+	private static class CachedResult {
+		CachedResult(String file) {
+			this.file = file;
+			this.date = LocalDate.now();
+		}
+
+		final String    file;   // filename of the announcement
+		final LocalDate date;   // date at which the announcement got created
+	}
+
+	private final ExecutorService            executorService;                     // executes the providers
+	private final Map<String,CachedResult>   cache = new ConcurrentHashMap<>();    // last valid result of each provider
+}
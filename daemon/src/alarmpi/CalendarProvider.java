@@ -1,21 +1,25 @@
 package alarmpi;
 
 import java.util.List;
-import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 
 /**
- * implements Callable to read calendar entries for today from the Google calendar specified
+ * implements AnnouncementProvider to read calendar entries for today from the Google calendar specified
  * in the configuration file in a separate thread. The entries get converted into a mp3 file
  * and the filename is returned by the call() method
  *
  */
-public class CalendarProvider implements Callable<String> {
+public class CalendarProvider implements AnnouncementProvider {
 	
 	public CalendarProvider(GoogleCalendar.Mode mode) {
 		this.mode = mode;
 	}
+	
+	@Override
+	public String getName() {
+		return "calendar"+mode.toString();
+	}
 
 	@Override
 	public String call() throws Exception {
@@ -0,0 +1,173 @@
+package alarmpi;
+
+/**
+ * Light effect setting all LEDs to the same colour, fading from a start colour temperature and brightness
+ * to a target colour temperature and brightness.
+ * All colours of the transition get precomputed when the effect is created
+ */
+class ColourTemperatureEffect implements LightEffect {
+
+	/**
+	 * constructor
+	 * @param fromKelvin   start colour temperature in Kelvin
+	 * @param toKelvin     target colour temperature in Kelvin
+	 * @param fromPercent  start brightness in percent
+	 * @param toPercent    target brightness in percent
+	 * @param whiteBalance scale factors for red, green and blue to get a neutral white on the LEDs
+	 */
+	ColourTemperatureEffect(int fromKelvin,int toKelvin,double fromPercent,double toPercent,double[] whiteBalance) {
+		this.fromPercent = fromPercent;
+		this.toPercent   = toPercent;
+
+		for(int step=0 ; step<STEP_COUNT ; step++) {
+			double x       = (double)step/(double)(STEP_COUNT-1);
+			double kelvin  = fromKelvin+(toKelvin-fromKelvin)*x;
+			double percent = fromPercent+(toPercent-fromPercent)*x;
+
+			double intensity = getIntensity(percent);
+			double rgb[]     = getRgb(kelvin);
+			for(int colour=0 ; colour<3 ; colour++) {
+				colours[step*3+colour] = (byte)Math.round(255.0*rgb[colour]*whiteBalance[colour]*intensity);
+			}
+		}
+	}
+
+	@Override
+	public void render(double progress,byte[] frame,int offset,int ledCount) {
+		final int index = getIndex(progress);
+
+		for(int led=0 ; led<ledCount ; led++) {
+			frame[offset+led*3+0] = colours[index+0];
+			frame[offset+led*3+1] = colours[index+1];
+			frame[offset+led*3+2] = colours[index+2];
+		}
+	}
+
+	@Override
+	public double getBrightness(double progress) {
+		return fromPercent+(toPercent-fromPercent)*progress;
+	}
+
+	/**
+	 * copies the colour for the specified progress into a frame buffer
+	 * @param progress progress of the effect, 0...1
+	 * @param frame    frame buffer
+	 * @param offset   offset of the LED in the frame buffer
+	 */
+	final void copyColour(double progress,byte[] frame,int offset) {
+		final int index = getIndex(progress);
+
+		frame[offset+0] = colours[index+0];
+		frame[offset+1] = colours[index+1];
+		frame[offset+2] = colours[index+2];
+	}
+
+	/**
+	 * returns the normalized RGB values of a colour temperature
+	 * @param kelvin colour temperature in Kelvin, gets clipped to 1000K...12000K
+	 * @return array with red, green and blue, each 0...1
+	 */
+	static double[] getRgb(double kelvin) {
+		int index = (int)Math.round((kelvin-KELVIN_MIN)/KELVIN_STEP);
+		index = Integer.max(index, 0);
+		index = Integer.min(index, KELVIN_TABLE.length-1);
+
+		return KELVIN_TABLE[index];
+	}
+
+	/**
+	 * returns the linear LED intensity for a perceived brightness
+	 * @param percent brightness in percent
+	 * @return intensity 0...1
+	 */
+	static double getIntensity(double percent) {
+		if(percent<=0.0) {
+			return 0.0;
+		}
+		if(percent>=100.0) {
+			return 1.0;
+		}
+
+		return (double)LightnessTable.calculatePwm(percent, 0, INTENSITY_SCALE)/(double)INTENSITY_SCALE;
+	}
+
+	//
+	// private methods
+	//
+
+	/**
+	 * returns the index into the colour table for the specified progress
+	 * @param progress progress of the effect, 0...1
+	 * @return index of the red value
+	 */
+	private static int getIndex(double progress) {
+		if(progress<=0.0) {
+			return 0;
+		}
+		if(progress>=1.0) {
+			return (STEP_COUNT-1)*3;
+		}
+
+		return (int)(progress*(STEP_COUNT-1))*3;
+	}
+
+	/**
+	 * creates the table with RGB values for all colour temperatures, using the approximation
+	 * of the black body radiation by Tanner Helland
+	 * @return table with red, green and blue (each 0...1) for each colour temperature step
+	 */
+	private static double[][] createKelvinTable() {
+		double table[][] = new double[(int)((KELVIN_MAX-KELVIN_MIN)/KELVIN_STEP)+1][];
+
+		for(int index=0 ; index<table.length ; index++) {
+			double t = (KELVIN_MIN+index*KELVIN_STEP)/100.0;
+			double red, green, blue;
+
+			if(t<=66.0) {
+				red   = 255.0;
+				green = 99.4708025861*Math.log(t)-161.1195681661;
+			}
+			else {
+				red   = 329.698727446*Math.pow(t-60.0, -0.1332047592);
+				green = 288.1221695283*Math.pow(t-60.0, -0.0755148492);
+			}
+
+			if(t>=66.0) {
+				blue = 255.0;
+			}
+			else if(t<=19.0) {
+				blue = 0.0;
+			}
+			else {
+				blue = 138.5177312231*Math.log(t-10.0)-305.0447927307;
+			}
+
+			table[index] = new double[] { clip(red), clip(green), clip(blue) };
+		}
+
+		return table;
+	}
+
+	/**
+	 * clips a colour value to 0...255 and normalizes it to 0...1
+	 * @param value colour value
+	 * @return normalized colour value
+	 */
+	private static double clip(double value) {
+		return Double.min(Double.max(value, 0.0), 255.0)/255.0;
+	}
+
+	//
+	// private members
+	//
+	static final double             KELVIN_MIN      = 1000.0;               // lowest colour temperature in table
+	static final double             KELVIN_MAX      = 12000.0;              // highest colour temperature in table
+	private static final double     KELVIN_STEP     = 100.0;                // colour temperature resolution of table
+	private static final double[][] KELVIN_TABLE    = createKelvinTable();  // RGB values for each colour temperature
+	private static final int        INTENSITY_SCALE = 65535;                // resolution of the intensity calculation
+	private static final int        STEP_COUNT      = 1024;                 // number of precomputed colours per effect
+
+	private final double fromPercent;                          // start brightness in percent
+	private final double toPercent;                            // target brightness in percent
+	private final byte[] colours = new byte[STEP_COUNT*3];     // precomputed RGB values for each progress step
+}
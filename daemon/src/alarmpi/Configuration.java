@@ -4,11 +4,24 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import javax.json.Json;
@@ -21,9 +34,10 @@ import org.ini4j.InvalidFileFormatException;
 
 /**
  * Implements the configuration database for AlarmPi
- * Stores all parameters read initially from the configuration file,
- * but also parameters created at runtime.
- * Implemented as singleton
+ * Each Configuration object is an immutable snapshot of the configuration file, all values get parsed once.
+ * getConfiguration returns the current snapshot. When the file changes, a new snapshot gets created and
+ * replaces the current one, listeners get notified about the sections which changed.
+ * Values read with getValue get parsed on first access and are cached in the snapshot.
  */
 public class Configuration {
 	
@@ -56,6 +70,9 @@ public class Configuration {
 		int     skipFarEnd;            // # of LEDs to skip on far end of LED strip (WS2801 only)
 		int     skipNearEnd;           // # of LEDs to skip on near end of LED strip (WS2801 only)
 		int     count;                 // # of activeLEDs to control (WS2801 only)
+		String  dimUpEffect;           // effect used for dim up or null (WS2801 only)
+		int     repeatCount;           // # of transmissions of each command (nRF24LO1 only)
+		int     repeatInterval;        // time between two transmissions in milliseconds (nRF24LO1 only)
 	}
 	
 	/**
@@ -81,8 +98,22 @@ public class Configuration {
 
 	
 	/**
-	 * returns the singleton object with configuration data
-	 * @return the Configuration singleton object
+	 * listener for changes of the configuration file
+	 */
+	interface Listener {
+		/**
+		 * called after the configuration file got reloaded with modifications
+		 * @param previous        previous configuration
+		 * @param current         new configuration
+		 * @param changedSections names of all sections which got added, removed or modified
+		 */
+		void configurationChanged(Configuration previous,Configuration current,Set<String> changedSections);
+	}
+	
+	/**
+	 * returns the current configuration snapshot. Callers should not keep it for long, it gets replaced
+	 * when the configuration file changes
+	 * @return the current Configuration object
 	 */
 	static Configuration getConfiguration() {
 		if(object==null) {
@@ -110,10 +141,14 @@ public class Configuration {
 		}
 		else {
 			runningOnRaspberry = false;
-			Alarm.setStorageDirectory("data");
 		}
 		
 		log.info("parsing configuration file");
+		
+		// raw content to find the modified sections when the file gets reloaded
+		Map<String,Map<String,String>> sections = new HashMap<>();
+		ini.forEach((sectionName,section) -> sections.put(sectionName, Collections.unmodifiableMap(new HashMap<>(section))));
+		sectionMap = Collections.unmodifiableMap(sections);
 
 		// instantiate member objects
 		lightControlSettingsList = new ArrayList<>();;
@@ -136,6 +171,16 @@ public class Configuration {
         // network access (thru TCP clients)
         port = ini.get("network", "port", Integer.class);
         jsonServerPort = ini.get("network", "jsonServerPort", Integer.class);
+        Ini.Section sectionNetwork = ini.get("network");
+        if(sectionNetwork!=null) {
+        	httpThreadCount    = sectionNetwork.get("httpThreads", Integer.class, httpThreadCount);
+        	httpQueueSize      = sectionNetwork.get("httpQueueSize", Integer.class, httpQueueSize);
+        	httpMaxActive      = sectionNetwork.get("httpMaxActive", Integer.class, httpMaxActive);
+        	httpMaxConnections = sectionNetwork.get("httpMaxConnections", Integer.class, httpMaxConnections);
+        	httpRequestTimeout = sectionNetwork.get("httpRequestTimeout", Integer.class, httpRequestTimeout);
+        	httpIdleTimeout    = sectionNetwork.get("httpIdleTimeout", Integer.class, httpIdleTimeout);
+        	wwwDirectory       = sectionNetwork.get("wwwDirectory", String.class, wwwDirectory);
+        }
         
        
         // light control. Search for sections [light1], [light2], ...
@@ -180,6 +225,9 @@ public class Configuration {
 				lightControlSettingItem.skipFarEnd    = sectionLightControl.get("skipFarEnd", Integer.class, 0);
 				lightControlSettingItem.skipNearEnd   = sectionLightControl.get("skipNearEnd", Integer.class, 0);
 				lightControlSettingItem.count         = sectionLightControl.get("count", Integer.class, 0);
+				lightControlSettingItem.dimUpEffect   = sectionLightControl.get("dimUpEffect", String.class, null);
+				lightControlSettingItem.repeatCount   = sectionLightControl.get("repeatCount", Integer.class, 100);
+				lightControlSettingItem.repeatInterval = sectionLightControl.get("repeatInterval", Integer.class, 100);
 	    	}
 	    	else {
 	    		lightControlSettingItem.type = LightControlSettings.Type.NONE;
@@ -240,6 +288,14 @@ public class Configuration {
 			index++;
         }
         
+        // settings common to all lights
+        Ini.Section sectionLights = ini.get("lights");
+        if(sectionLights!=null) {
+        	lightFrameRate = sectionLights.get("frameRate", Integer.class, lightFrameRate);
+        	lightTimeout   = sectionLights.get("timeout", Integer.class, lightTimeout);
+        	lightPublishInterval = sectionLights.get("publishInterval", Integer.class, lightPublishInterval);
+        }
+        
         // external alarms
         externalAlarms = ini.get("externalAlarms");
         
@@ -256,6 +312,18 @@ public class Configuration {
 		    mqttKeepAlive          = sectionMqtt.get("keepalive", Integer.class, 60);
 		    mqttTopicPrefix        = sectionMqtt.get("topicPrefix", String.class, "alarmpi");
 		    mqttDisplayTopicPrefix = sectionMqtt.get("topicPrefixDisplay", String.class, null);
+		    mqttQueueSize          = sectionMqtt.get("queueSize", Integer.class, mqttQueueSize);
+		    mqttPublishAlarmList   = sectionMqtt.get("publishAlarmList", Boolean.class, mqttPublishAlarmList);
+		    
+		    // QoS and retain flag per topic: qos.<topic> and retain.<topic>
+		    for(String key:sectionMqtt.keySet()) {
+		    	if(key.startsWith("qos.")) {
+		    		mqttQosMap.put(key.substring(4), sectionMqtt.get(key, Integer.class, 0));
+		    	}
+		    	if(key.startsWith("retain.")) {
+		    		mqttRetainMap.put(key.substring(7), sectionMqtt.get(key, Boolean.class, false));
+		    	}
+		    }
 		}
         
 		Ini.Section sectionSpeechControl = ini.get("speechcontrol");
@@ -270,6 +338,15 @@ public class Configuration {
         	googleCalendarSummary = sectionCalendar.get("summary", String.class, "");
         }
         
+        // sounds
+        soundList = Collections.unmodifiableList(readSoundList(ini));
+        JsonArrayBuilder builder = Json.createBuilderFactory(null).createArrayBuilder();
+        soundList.stream().forEach(sound -> builder.add(sound.toJsonObject()));
+        soundListJson = builder.build();
+        
+        lightControlSettingsList = Collections.unmodifiableList(lightControlSettingsList);
+        buttonSettingsList       = Collections.unmodifiableList(buttonSettingsList);
+        
 		// dump the content into logfile
 		dump();
 	}
@@ -282,36 +359,148 @@ public class Configuration {
 	 * @return true if ini file could be loaded, otherwise false 
 	 */
 	static synchronized boolean read(String filename) {
+		if(object!=null) {
+			log.severe("Configuration.read() can only be called once");
+			return false;
+		}
+		
+		Configuration configuration = load(filename);
+		if(configuration==null) {
+			return false;
+		}
+		if(!configuration.runningOnRaspberry) {
+			Alarm.setStorageDirectory("data");
+		}
+		
+		fileName = filename;
+		object   = configuration;
+		
+		return true;
+	}
+	
+	/**
+	 * reads the ini file again. If it was modified, the new configuration replaces the current one
+	 * and all listeners get notified. If it cannot be read, the current configuration stays active
+	 * @return true if the ini file could be loaded, otherwise false
+	 */
+	static synchronized boolean reload() {
+		if(object==null) {
+			log.severe("Configuration.read must be called before reload can be used");
+			return false;
+		}
+		
+		Configuration current = load(fileName);
+		if(current==null) {
+			log.severe("keeping current configuration");
+			return false;
+		}
+		
+		Configuration previous        = object;
+		Set<String>   changedSections = getChangedSections(previous, current);
+		if(changedSections.isEmpty()) {
+			log.info("configuration file "+fileName+" reloaded without modifications");
+			return true;
+		}
+		
+		object = current;
+		log.info("configuration file "+fileName+" reloaded, modified sections: "+changedSections);
+		listenerList.forEach(listener -> listener.configurationChanged(previous, current, changedSections));
+		
+		return true;
+	}
+	
+	/**
+	 * reads and parses the ini file, without making it the current configuration
+	 * @param  filename full filename of ini file
+	 * @return configuration or null if the ini file could not be loaded
+	 */
+	static Configuration load(String filename) {
 		Ini iniFile = new Ini();
 		
-		try {
-			log.info("reading configuration file "+filename);
-			iniFile.load(new FileReader(filename));
+		log.info("reading configuration file "+filename);
+		try(FileReader reader = new FileReader(filename)) {
+			iniFile.load(reader);
 			
-			if(object==null) {
-				object = new Configuration(iniFile);
-			}
-			else {
-				log.severe("Configuration.read() can only be called once");
-				return false;
-			}
-			
-			return true;
+			return new Configuration(iniFile);
 		} catch (InvalidFileFormatException e) {
 			log.severe("Invalid format of ini file "+filename);
 			log.severe(e.getMessage());
-			return false;
+			return null;
 		} catch (FileNotFoundException e) {
 			log.severe("Unable to find ini file "+filename);
 			log.severe(e.getMessage());
-			return false;
+			return null;
 		} catch (IOException e) {
 			log.severe("IO Exception during reading of ini file "+filename);
 			log.severe(e.getMessage());
-			return false;
+			return null;
+		} catch (RuntimeException e) {
+			log.severe("Invalid content of ini file "+filename+": "+e.getMessage());
+			return null;
+		}
+	}
+	
+	/**
+	 * starts a thread which reloads the configuration file whenever it gets modified
+	 */
+	static synchronized void startWatcher() {
+		if(object==null || watcherStarted) {
+			return;
+		}
+		
+		Path path = Paths.get(fileName).toAbsolutePath();
+		try {
+			WatchService watchService = path.getFileSystem().newWatchService();
+			path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			
+			Thread thread = new Thread(() -> watch(watchService, path.getFileName()), "ConfigurationWatcher");
+			thread.setDaemon(true);
+			thread.start();
+			watcherStarted = true;
+			
+			log.info("watching configuration file "+path+" for modifications");
+		} catch (IOException e) {
+			log.severe("Unable to watch configuration file "+path+": "+e.getMessage());
 		}
 	}
 	
+	/**
+	 * registers a listener for modifications of the configuration file. Listeners get called one after the other
+	 * on the thread reloading the configuration, so they should return quickly
+	 * @param name     listener name, used for logging
+	 * @param listener listener to register
+	 */
+	static void addListener(String name,Listener listener) {
+		log.config("adding configuration listener "+name);
+		
+		listenerList.add((previous,current,changedSections) -> {
+			try {
+				listener.configurationChanged(previous, current, changedSections);
+			}
+			catch(Exception e) {
+				log.severe("Exception in configuration listener "+name+": "+e.getMessage());
+			}
+		});
+	}
+	
+	/**
+	 * compares two configurations
+	 * @param previous previous configuration
+	 * @param current  new configuration
+	 * @return names of all sections which got added, removed or modified, sorted by name
+	 */
+	static Set<String> getChangedSections(Configuration previous,Configuration current) {
+		Set<String> changedSections = new TreeSet<>();
+		previous.sectionMap.keySet().stream().filter(section -> !current.sectionMap.containsKey(section)).forEach(changedSections::add);
+		current.sectionMap.forEach((section,values) -> {
+			if(!Objects.equals(values, previous.sectionMap.get(section))) {
+				changedSections.add(section);
+			}
+		});
+		
+		return Collections.unmodifiableSet(changedSections);
+	}
+	
 	/**
 	 * returns a boolean value from the ini file
 	 * @param section          section name
@@ -320,15 +509,7 @@ public class Configuration {
 	 * @return                 value read from ini file or default if not found
 	 */
 	boolean getValue(String section,String key,boolean defaultValue) {
-		Ini.Section iniSection= iniFile.get(section);
-		
-		if(iniSection!=null) {
-			return iniSection.get(key,Boolean.class,defaultValue);
-		}
-		else {
-			log.warning("Section "+section+" not found");
-			return defaultValue;
-		}
+		return getCachedValue(section, key, Boolean.class, defaultValue);
 	}
 	
 	/**
@@ -339,15 +520,7 @@ public class Configuration {
 	 * @return                 value read from ini file or default if not found
 	 */
 	int getValue(String section,String key,int defaultValue) {
-		Ini.Section iniSection= iniFile.get(section);
-		
-		if(iniSection!=null) {
-			return iniSection.get(key,Integer.class,defaultValue);
-		}
-		else {
-			log.warning("Section "+section+" not found");
-			return defaultValue;
-		}
+		return getCachedValue(section, key, Integer.class, defaultValue);
 	}
 	
 	/**
@@ -358,15 +531,7 @@ public class Configuration {
 	 * @return                 value read from ini file or default if not found
 	 */
 	double getValue(String section,String key,double defaultValue) {
-		Ini.Section iniSection= iniFile.get(section);
-		
-		if(iniSection!=null) {
-			return iniSection.get(key,Double.class,defaultValue);
-		}
-		else {
-			log.warning("Section "+section+" not found");
-			return defaultValue;
-		}
+		return getCachedValue(section, key, Double.class, defaultValue);
 	}
 	
 	/**
@@ -377,26 +542,34 @@ public class Configuration {
 	 * @return                 value read from ini file or default if not found
 	 */
 	String getValue(String section,String key,String defaultValue) {
-		Ini.Section iniSection= iniFile.get(section);
-		
-		if(iniSection!=null) {
-			return iniSection.get(key,String.class,defaultValue);
-		}
-		else {
-			log.warning("Section "+section+" not found");
-			return defaultValue;
-		}
+		return getCachedValue(section, key, String.class, defaultValue);
 	}
 	
 	/**
 	 * @return list with all sounds defined in configuration file
 	 */
 	List<Alarm.Sound> getSoundList() {
-        List<Alarm.Sound>soundList = new LinkedList<>(); 
+		return soundList;
+	}
+	
+	/**
+	 * @return the sound list as Json array
+	 */
+	JsonArray getSoundListAsJsonArray() {
+		return soundListJson;
+	}
+	
+	/**
+	 * reads all sounds from the ini file
+	 * @param ini ini file
+	 * @return list with all sounds defined in configuration file
+	 */
+	private static List<Alarm.Sound> readSoundList(Ini ini) {
+        List<Alarm.Sound>soundList = new ArrayList<>(); 
         Ini.Section sectionSound;
         
         int index=1;
-        while((sectionSound=iniFile.get("sound"+index)) != null) {
+        while((sectionSound=ini.get("sound"+index)) != null) {
         	log.finest("found sound "+index);
         	
         	String soundType=sectionSound.get("type");
@@ -433,19 +606,6 @@ public class Configuration {
 	    return soundList;
 	}
 	
-	/**
-	 * @return the sound list as Json array
-	 */
-	JsonArray getSoundListAsJsonArray() {
-		JsonArrayBuilder builder = Json.createBuilderFactory(null).createArrayBuilder();
-		getSoundList().stream().forEach(sound -> builder.add(sound.toJsonObject()));
-		
-		JsonArray jsonArray = builder.build();
-		log.fine("create Json array from sound list: "+jsonArray.toString());
-		
-		return jsonArray;
-	}
-	
 
 	/**
 	 * @return if running on raspberry
@@ -475,6 +635,55 @@ public class Configuration {
 		return jsonServerPort;
 	}
 	
+	/**
+	 * @return number of HTTP request handler threads
+	 */
+	int getHttpThreadCount() {
+		return httpThreadCount;
+	}
+	
+	/**
+	 * @return max. number of HTTP requests waiting for a handler thread
+	 */
+	int getHttpQueueSize() {
+		return httpQueueSize;
+	}
+	
+	/**
+	 * @return max. number of HTTP requests in progress, more get rejected with 503
+	 */
+	int getHttpMaxActive() {
+		return httpMaxActive;
+	}
+	
+	/**
+	 * @return max. number of open HTTP connections, including idle ones and event streams
+	 */
+	int getHttpMaxConnections() {
+		return httpMaxConnections;
+	}
+	
+	/**
+	 * @return max. time in seconds to receive a HTTP request
+	 */
+	int getHttpRequestTimeout() {
+		return httpRequestTimeout;
+	}
+	
+	/**
+	 * @return time in seconds after which idle HTTP connections get closed
+	 */
+	int getHttpIdleTimeout() {
+		return httpIdleTimeout;
+	}
+	
+	/**
+	 * @return directory with the web interface served by the HTTP server
+	 */
+	String getWwwDirectory() {
+		return wwwDirectory;
+	}
+	
 	/**
 	 * @return the MPD network Address
 	 */
@@ -531,6 +740,27 @@ public class Configuration {
 		return buttonSettingsList;
 	}
 	
+	/**
+	 * @return number of frames per second for light transitions (dim up, dim down, ...)
+	 */
+	final int getLightFrameRate() {
+		return lightFrameRate;
+	}
+	
+	/**
+	 * @return time in milliseconds after which a command to a single light is reported as timed out
+	 */
+	final int getLightTimeout() {
+		return lightTimeout;
+	}
+	
+	/**
+	 * @return minimum time in milliseconds between two MQTT publications of the light brightness
+	 */
+	final int getLightPublishInterval() {
+		return lightPublishInterval;
+	}
+	
 	/**
 	 * @return a map of external alarms (key: alarm ID, value: alarm text)
 	 */
@@ -573,6 +803,38 @@ public class Configuration {
 		return mqttDisplayTopicPrefix;
 	}
 	
+	/**
+	 * @return true if the complete alarm list gets published as topic alarmlist in addition to the topics of the single alarms
+	 */
+	final boolean getMqttPublishAlarmList() {
+		return mqttPublishAlarmList;
+	}
+	
+	/**
+	 * @return maximum number of topics waiting in the MQTT outbound queue
+	 */
+	final int getMqttQueueSize() {
+		return mqttQueueSize;
+	}
+	
+	/**
+	 * returns the MQTT quality of service to use for a topic
+	 * @param topic topic without prefix
+	 * @return configured QoS or 0 if not configured
+	 */
+	final int getMqttQos(String topic) {
+		return mqttQosMap.getOrDefault(topic, 0);
+	}
+	
+	/**
+	 * returns the MQTT retain flag to use for a topic
+	 * @param topic topic without prefix
+	 * @return configured retain flag or null if not configured
+	 */
+	final Boolean getMqttRetain(String topic) {
+		return mqttRetainMap.get(topic);
+	}
+	
 	final String getSpeechControlDevice() {
 		return speechControlDevice;
 	}
@@ -594,6 +856,59 @@ public class Configuration {
 	//
 	// private methods
 	//
+	/**
+	 * watcher thread: reloads the configuration file after it got modified. Editors often write a file in
+	 * several steps, so the reload waits until there were no further modifications for the reload delay
+	 * @param watchService watch service for the directory of the configuration file
+	 * @param file         name of the configuration file within the directory
+	 */
+	private static void watch(WatchService watchService,Path file) {
+		try {
+			while(true) {
+				boolean  modified = false;
+				WatchKey key      = watchService.take();
+				while(key!=null) {
+					modified |= key.pollEvents().stream()
+							.anyMatch(event -> event.kind()==StandardWatchEventKinds.OVERFLOW || file.equals(event.context()));
+					key.reset();
+					key = watchService.poll(RELOAD_DELAY, TimeUnit.MILLISECONDS);
+				}
+				
+				if(modified) {
+					reload();
+				}
+			}
+		}
+		catch(InterruptedException | ClosedWatchServiceException e) {
+			log.info("configuration watcher stopped");
+		}
+	}
+	
+	/**
+	 * returns a value from the ini file, parsing it only on first access
+	 * @param section      section name
+	 * @param key          key name
+	 * @param type         value type
+	 * @param defaultValue default value that will be returned if the value cannot be found
+	 * @return value read from ini file or default if not found
+	 */
+	private <T> T getCachedValue(String section,String key,Class<T> type,T defaultValue) {
+		Object value = valueCache.computeIfAbsent(section+"/"+key+"/"+type.getSimpleName(), cacheKey -> {
+			Ini.Section iniSection = iniFile.get(section);
+			if(iniSection==null) {
+				if(missingSectionSet.add(section)) {
+					log.warning("Section "+section+" not found");
+				}
+				return NOT_FOUND;
+			}
+			T parsedValue = iniSection.get(key, type, null);
+			
+			return parsedValue==null ? NOT_FOUND : parsedValue;
+		});
+		
+		return value==NOT_FOUND ? defaultValue : type.cast(value);
+	}
+	
 	/**
 	 * dumps all settings into logfile
 	 */
@@ -606,6 +921,8 @@ public class Configuration {
 		dump += "  mpdFiles="+mpdFiles+" mpdTmpSubDir="+mpdTmpSubDir+"\n";
 		dump += "  cmdServerPort="+port+"\n";
 		dump += "  jsonServerPort="+jsonServerPort+"\n";
+		dump += "  HTTP threads="+httpThreadCount+" queueSize="+httpQueueSize+" maxActive="+httpMaxActive+" maxConnections="+httpMaxConnections+" requestTimeout="+httpRequestTimeout+"s idleTimeout="+httpIdleTimeout+"s\n";
+		dump += "  web interface directory="+wwwDirectory+"\n";
 		dump += "  weather location longitude="+weatherLocationLongitude+" latitude="+weatherLocationLatitude+"\n";
 		
 		dump += "  lights\n";
@@ -614,8 +931,11 @@ public class Configuration {
 			dump += "    pwmInversion="+lightControlSettings.pwmInversion+" pwmOffset="+lightControlSettings.pwmOffset+" pwmFullScale="+lightControlSettings.pwmFullScale + "\n";
 			dump += "    ledId: "+lightControlSettings.ledId+"\n";
 			dump += "    skipFarEnd="+lightControlSettings.skipFarEnd+" skipNearEnd="+lightControlSettings.skipNearEnd+" count="+lightControlSettings.count+"\n";
+			dump += "    dimUpEffect="+lightControlSettings.dimUpEffect+" repeatCount="+lightControlSettings.repeatCount+" repeatInterval="+lightControlSettings.repeatInterval+"\n";
 		}
 		
+		dump += "  light frame rate="+lightFrameRate+" timeout="+lightTimeout+"ms publish interval="+lightPublishInterval+"ms\n";
+		
 		dump += "  button settings:\n";
 		for(ButtonSettings pushButtonSettings:buttonSettingsList) {
 			dump += "    id="+pushButtonSettings.id+" speechControl="+pushButtonSettings.triggerSpeechControl+"\n";
@@ -630,6 +950,8 @@ public class Configuration {
 			dump += "  MQTT broker: address="+mqttAddress+" port="+mqttPort+"\n";
 			dump += "  MQTT topic prefix="+mqttTopicPrefix+"\n";
 			dump += "  MQTT topic prefix display="+mqttDisplayTopicPrefix+"\n";
+			dump += "  MQTT queue size="+mqttQueueSize+" QoS="+mqttQosMap+" retain="+mqttRetainMap+"\n";
+			dump += "  MQTT publish alarm list="+mqttPublishAlarmList+"\n";
 		}
 		
 		if(externalAlarms==null) {
@@ -657,9 +979,23 @@ public class Configuration {
 
 	// private members
 	private static final Logger   log    = Logger.getLogger( MethodHandles.lookup().lookupClass().getName() );
-	private static Configuration  object = null;             // singleton object
 	
-	private Ini                              iniFile;
+	private static final int      RELOAD_DELAY = 500;              // time in milliseconds without further modifications before a reload
+	private static final Object   NOT_FOUND    = new Object();     // cached for values not found in the ini file
+	
+	private static volatile Configuration object         = null;   // current configuration
+	private static String                 fileName       = null;   // configuration file
+	private static boolean                watcherStarted = false;  // true if the watcher thread is running
+	
+	// listeners for configuration changes
+	private static final List<Listener> listenerList = new CopyOnWriteArrayList<>();
+	
+	private final Ini                              iniFile;
+	private final Map<String,Map<String,String>>   sectionMap;                                          // raw values by section
+	private final Map<String,Object>               valueCache        = new ConcurrentHashMap<>();       // values parsed by getValue
+	private final Set<String>                      missingSectionSet = ConcurrentHashMap.newKeySet();   // missing sections already reported
+	private final List<Alarm.Sound>                soundList;                                           // all sounds
+	private final JsonArray                        soundListJson;                                       // all sounds as Json array
 	
 	// settings in configuration file
 	private final boolean                    runningOnRaspberry;
@@ -667,6 +1003,13 @@ public class Configuration {
 	private int                              volumeDefault;             // default sound volume
 	private Integer                          port;                      // AlarmPi networt port for remote control
 	private Integer                          jsonServerPort;            // tcp port for HTTP JSON based control
+	private int                              httpThreadCount    = 4;    // number of HTTP request handler threads
+	private int                              httpQueueSize      = 16;   // max. number of HTTP requests waiting for a handler thread
+	private int                              httpMaxActive      = 32;   // max. number of HTTP requests in progress
+	private int                              httpMaxConnections = 64;   // max. number of open HTTP connections
+	private int                              httpRequestTimeout = 10;   // max. time in seconds to receive a HTTP request
+	private int                              httpIdleTimeout    = 30;   // time in seconds after which idle HTTP connections get closed
+	private String                           wwwDirectory       = "/opt/alarmpi/www";   // directory with the web interface
 	private String                           mpdAddress;                // mpd network address
 	private int                              mpdPort;                   // mpd network port
 	private String                           mpdFiles;                  // directory for MPD sound files
@@ -674,6 +1017,9 @@ public class Configuration {
 	private Double                           weatherLocationLongitude;  // Open Weather Map location for weather forecast: longiture
 	private Double                           weatherLocationLatitude;   // Open Weather Map location for weather forecast: latitude
 	private List<LightControlSettings>       lightControlSettingsList;  // list of light control settings
+	private int                              lightFrameRate = 25;       // frames per second for light transitions
+	private int                              lightTimeout   = 2000;     // timeout for commands to a single light in milliseconds
+	private int                              lightPublishInterval = 500; // min. time between MQTT publications of light brightness in milliseconds
 	private List<ButtonSettings>             buttonSettingsList;        // list of button settings
 	private String                           googleCalendarSummary;     // summary name of google calendar (or null)
 	private String                           mqttAddress;               // MQTT Broker address
@@ -681,6 +1027,10 @@ public class Configuration {
 	private Integer                          mqttKeepAlive;             // MQTT keepalive interval in seconds
 	private String                           mqttTopicPrefix;           // MQTT topic prefix
 	private String                           mqttDisplayTopicPrefix;    // MQTT topic prefix of display or null
+	private int                              mqttQueueSize = 100;       // max. number of topics in the MQTT outbound queue
+	private boolean                          mqttPublishAlarmList = true; // publish complete alarm list in addition to single alarms
+	private final Map<String,Integer>        mqttQosMap    = new HashMap<>();  // MQTT QoS per topic
+	private final Map<String,Boolean>        mqttRetainMap = new HashMap<>();  // MQTT retain flag per topic
 	private String                           speechControlDevice;
 	private Integer                          speechControlSound;
 	private Map<String,String>               externalAlarms;            // a map with external alarms
@@ -2,6 +2,7 @@ package alarmpi;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -10,11 +11,9 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
@@ -24,7 +23,6 @@ import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 
-import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 
 import com.pi4j.context.Context;
@@ -41,7 +39,7 @@ import alarmpi.GoogleCalendar.Mode;
  * This class implements the main endless control loop that gets started
  * out of main in its own thread
  */
-class Controller implements Runnable, IMqttMessageListener{
+class Controller implements Runnable {
 
 	/**
 	 * Constructor
@@ -49,7 +47,7 @@ class Controller implements Runnable, IMqttMessageListener{
 	public Controller(final Context pi4j) {
 		configuration       = Configuration.getConfiguration();
 		eventList           = new LinkedList<Event>();
-		dataExecutorService = Executors.newSingleThreadExecutor();
+		announcementService = new AnnouncementService(ANNOUNCEMENT_THREAD_COUNT);
 		
 		log.info("initializing MQTT client");
 		mqttClient = MqttClient.getMqttClient();
@@ -65,11 +63,11 @@ class Controller implements Runnable, IMqttMessageListener{
 					break;
 				case WS2801:
 					log.config("creating light control for WS2801");
-					lightControlList.add(new LightControlWS2801(setting.id,setting.name,setting.skipFarEnd,setting.skipNearEnd,setting.count,pi4j));
+					lightControlList.add(new LightControlWS2801(setting.id,setting.name,setting.skipFarEnd,setting.skipNearEnd,setting.count,"sunrise".equalsIgnoreCase(setting.dimUpEffect),pi4j));
 					break;
 				case NRF24LO1:
 					log.config("creating light control for nRF24LO1 remote control");
-					lightControlList.add(new LightControlNRF24LO1(setting.id,setting.name,pi4j));
+					lightControlList.add(new LightControlNRF24LO1(setting.id,setting.name,setting.repeatCount,setting.repeatInterval,pi4j));
 					break;
 				case MQTT:
 					log.config("creating light control for MQTT controlled light");
@@ -81,7 +79,8 @@ class Controller implements Runnable, IMqttMessageListener{
 		});
 		
 		log.info("initializing of light control done. Switching all off now");
-		lightControlList.stream().forEach(control -> control.setOff());
+		lightGroup = new LightGroup(lightControlList, configuration.getLightTimeout());
+		lightGroup.setOff();
 		
 		// configure input key pins as input pins
 		// default: key1=GPIO06 (BRCM GPIO 25)
@@ -119,6 +118,15 @@ class Controller implements Runnable, IMqttMessageListener{
 
 		log.info("initializing push buttons done");
 		
+		// lights and buttons get bound to the hardware once, only the click actions of buttons follow the configuration file
+		Configuration.addListener("controller", (previous,current,changedSections) -> {
+			changedSections.stream().filter(section -> section.matches("light\\d+|button\\d+|speechcontrol|externalAlarms"))
+				.forEach(section -> log.warning("modified section "+section+" takes effect after a restart"+(section.startsWith("button") ? ", except for the click actions" : "")));
+			if(previous.getLightFrameRate()!=current.getLightFrameRate() || previous.getLightTimeout()!=current.getLightTimeout()) {
+				log.warning("modified light frame rate or timeout takes effect after a restart");
+			}
+		});
+		
 		log.info("preparing external alarms");
 		
 		int externalAlarmCount = 0;
@@ -150,39 +158,58 @@ class Controller implements Runnable, IMqttMessageListener{
 		mqttSendAliveInterval = Configuration.getConfiguration().getValue("mqtt", "sendAliveInterval", 30);
 
 		// subscribe to MQTT topics
-		MqttClient.getMqttClient().subscribe(MQTT_TOPIC_SUB_LIGHT, this);
-		MqttClient.getMqttClient().subscribe(MQTT_TOPIC_SUB_RADIO, this);
-		MqttClient.getMqttClient().subscribe(MQTT_TOPIC_SUB_TEMPERATURE, this);
-		MqttClient.getMqttClient().subscribe(MQTT_TOPIC_SUB_ALL_OFF, this);
-		MqttClient.getMqttClient().subscribe(MQTT_TOPIC_SUB_SET_ALARM, this);
-		
-		if(externalAlarmCount>0) {
-			MqttClient.getMqttClient().subscribe(MQTT_TOPIC_SUB_EXTERNAL_ALARM, this);
+		if(mqttClient!=null) {
+			mqttClient.subscribe(MQTT_TOPIC_SUB_LIGHT, this::lightMessageArrived);
+			mqttClient.subscribe(MQTT_TOPIC_SUB_RADIO, this::radioMessageArrived);
+			mqttClient.subscribe(MQTT_TOPIC_SUB_TEMPERATURE, this::temperatureMessageArrived);
+			mqttClient.subscribe(MQTT_TOPIC_SUB_ALL_OFF, this::allOffMessageArrived);
+			mqttClient.subscribe(MQTT_TOPIC_SUB_SET_ALARM, this::setAlarmMessageArrived);
+			
+			if(externalAlarmCount>0) {
+				mqttClient.subscribe(MQTT_TOPIC_SUB_EXTERNAL_ALARM, this::externalAlarmMessageArrived);
+			}
 		}
+		else {
+			log.warning("no MQTT broker configured");
+		}
+		
+		// alarm changes get pushed to the scheduler and to the display
+		Alarm.addListener("scheduler", this::alarmListChanged);
+		Alarm.addListener("display", (previous,current) -> publishNextAlarm());
 		
 		// send initial MQTT alive message
-		log.fine("publishing sign of life to MQTT");;
-		MqttClient.getMqttClient().publish(MQTT_TOPIC_PUB_ALIVE, LocalDateTime.now().toString());
+		if(mqttClient!=null) {
+			log.fine("publishing sign of life to MQTT");
+			mqttClient.publish(MQTT_TOPIC_PUB_ALIVE, LocalDateTime.now().toString());
+		}
 		
 		log.info("initialization done");
 	}
 	
+	/**
+	 * constructor for a controller of the given lights only, without sound, buttons and MQTT. Used by tests
+	 * @param lights       lights to control
+	 * @param lightTimeout timeout of a command to a single light in milliseconds
+	 */
+	Controller(List<LightControl> lights,int lightTimeout) {
+		configuration = Configuration.getConfiguration();
+		eventList     = new LinkedList<Event>();
+		lightControlList.addAll(lights);
+		lightGroup    = new LightGroup(lightControlList, lightTimeout);
+	}
+	
 	/**
 	 * turns all lights on
 	 */
 	void lightsOn() {
-		if(lightControlList!=null) {
-			lightControlList.stream().forEach(light -> light.setBrightness(30));
-		}
+		lightGroup.setBrightness(30);
 	}
 	
 	/**
 	 * turns all lights off
 	 */
 	void lightsOff() {
-		if(lightControlList!=null) {
-			lightControlList.stream().forEach(light -> light.setOff());
-		}
+		lightGroup.setOff();
 	}
 	
 	/**
@@ -190,79 +217,55 @@ class Controller implements Runnable, IMqttMessageListener{
 	 */
 	void allOff(boolean announceNextAlarm) {
 		stopActiveAlarm();
-		lightControlList.stream().forEach(control -> control.setOff());
+		lightGroup.setOff();
 		soundControl.stop();
 		
 		if(announceNextAlarm) {
-			// announce next alarms before switching off
-			Future<String> calendarAnnouncementFile = null;
-			boolean appendCalendar = false;
+			// announce next alarm and calendar entries before switching off.
+			// Both announcements get prepared in parallel
+			final LocalDateTime deadline = LocalDateTime.now().plus(ANNOUNCEMENT_TIMEOUT);
+			CompletableFuture<String> nextAlarmAnnouncementFile = null;
+			CompletableFuture<String> calendarAnnouncementFile  = null;
 			
 			Alarm alarm = Alarm.getNextAlarmToday();
 			if(alarm!=null) {
-				calendarAnnouncementFile = dataExecutorService.submit(new CalendarProvider(GoogleCalendar.Mode.TODAY));
-				
-				String text = "Der nächste Alarm ist heute um "+alarm.getTime().getHour()+" Uhr ";
-				if(alarm.getTime().getMinute()!=0) {
-					text += alarm.getTime().getMinute();
-				}
-				String filename = new TextToSpeech().createTempFile(text, "nextAlarmToday.mp3");
-				soundControl.on();
-				soundControl.setVolume(Configuration.getConfiguration().getDefaultVolume());
-				soundControl.playFile(filename, null, false);
-				appendCalendar = true;
+				nextAlarmAnnouncementFile = announcementService.request(new NextAlarmProvider(alarm, GoogleCalendar.Mode.TODAY), deadline);
+				calendarAnnouncementFile  = announcementService.request(new CalendarProvider(GoogleCalendar.Mode.TODAY), deadline);
 			}
 			else {
-				calendarAnnouncementFile = dataExecutorService.submit(new CalendarProvider(GoogleCalendar.Mode.TOMORROW));
+				calendarAnnouncementFile  = announcementService.request(new CalendarProvider(GoogleCalendar.Mode.TOMORROW), deadline);
 				
 				alarm = Alarm.getNextAlarmTomorrow();
 				if(alarm!=null) {
-					String text = "Der nächste Alarm ist morgen um "+alarm.getTime().getHour()+" Uhr ";
-					if(alarm.getTime().getMinute()!=0) {
-						text += alarm.getTime().getMinute();
-					}
-					String filename = new TextToSpeech().createTempFile(text, "nextAlarmTomorrow.mp3");
+					nextAlarmAnnouncementFile = announcementService.request(new NextAlarmProvider(alarm, GoogleCalendar.Mode.TOMORROW), deadline);
+				}
+			}
+			
+			boolean appendCalendar = false;
+			if(nextAlarmAnnouncementFile!=null) {
+				String file = nextAlarmAnnouncementFile.join();
+				if(file!=null) {
 					soundControl.on();
 					soundControl.setVolume(Configuration.getConfiguration().getDefaultVolume());
-					soundControl.playFile(filename, null, false);
+					soundControl.playFile(file, null, false);
 					appendCalendar = true;
 				}
+				else {
+					log.warning("next alarm announcement not available");
+				}
 			}
 			
-			if(calendarAnnouncementFile!=null) {
-				log.fine("waiting for calendar announcement file to be created");
-				int retries = 0;
-				while(!calendarAnnouncementFile.isDone() && retries<5) {
-					// wait 1 s
-					try {
-						Thread.sleep(1000);
-					} catch (InterruptedException e) {}
-					retries++;
-				}
-				if(calendarAnnouncementFile.isDone()) {
-					log.fine("calendar announcement file created, retries="+retries);
-					try {
-						String file = calendarAnnouncementFile.get();
-						if(file!=null && !file.isEmpty()) {
-							soundControl.on();
-							soundControl.setVolume(Configuration.getConfiguration().getDefaultVolume());
-							soundControl.playFile(file, null, appendCalendar);
-						}
-						else {
-							// can be null in case no calendar entry exists
-							log.fine("calendar announcement file does not exist");
-							String filename = new TextToSpeech().createPermanentFile("Kein Kalendereintrag");
-							soundControl.on();
-							soundControl.setVolume(Configuration.getConfiguration().getDefaultVolume());
-							soundControl.playFile(filename, null, appendCalendar);
-						}
-					} catch (InterruptedException | ExecutionException exception) {
-						log.severe("Unable to play calendar announcement");
-						log.severe(exception.getMessage());
-					}
-					calendarAnnouncementFile = null;
-				}
+			log.fine("waiting for calendar announcement file to be created");
+			String file = calendarAnnouncementFile.join();
+			if(file==null) {
+				// can be null in case no calendar entry exists
+				log.fine("calendar announcement file does not exist");
+				file = new TextToSpeech().createPermanentFile("Kein Kalendereintrag");
 			}
+			soundControl.on();
+			soundControl.setVolume(Configuration.getConfiguration().getDefaultVolume());
+			soundControl.playFile(file, null, appendCalendar);
+			
 			try {
 				Thread.sleep(10000);
 			} catch (InterruptedException e) {}
@@ -291,7 +294,7 @@ class Controller implements Runnable, IMqttMessageListener{
 		}
 		
 		log.info("raising external alarm: "+message);
-		lightControlList.stream().forEach(light -> light.setBrightness(30));
+		lightGroup.setBrightness(30);
 		
 		soundControl.stop();
 		soundControl.on();
@@ -356,7 +359,7 @@ class Controller implements Runnable, IMqttMessageListener{
 					}
 					
 					// send sign of life to MQTT broker
-					if(LocalTime.now().minusMinutes(mqttSendAliveInterval).isAfter(time)) {
+					if(mqttClient!=null && LocalTime.now().minusMinutes(mqttSendAliveInterval).isAfter(time)) {
 						log.fine("publishing sign of life to MQTT");;
 						
 						MqttClient.getMqttClient().publish(MQTT_TOPIC_PUB_ALIVE, LocalDateTime.now().toString());
@@ -368,37 +371,42 @@ class Controller implements Runnable, IMqttMessageListener{
 				if(LocalTime.now().getHour()!=lastHour) {
 					log.fine("New hour detected");
 					lastHour = LocalTime.now().getHour();
+					
+					// dump runtime metrics once per hour
+					Metrics.dump();
 
-					// publish waste collection
-					GoogleCalendar calendar = new GoogleCalendar();
-					calendar.connect();
-					List<String> calendarEntries = calendar.getCalendarEntries(lastHour>=12 ? Mode.TOMORROW : Mode.TODAY);
-					String textToPublish = new String();
-					for(String entry:calendarEntries) {
-						// strip of 'müll' to save characters
-						int pos = entry.indexOf("müll");
-						if(pos!=-1) {
-							textToPublish += entry.substring(pos) + " ";
+					// publish waste collection and next alarm to AlarmPi Display
+					if(mqttClient!=null) {
+						GoogleCalendar calendar = new GoogleCalendar();
+						calendar.connect();
+						List<String> calendarEntries = calendar.getCalendarEntries(lastHour>=12 ? Mode.TOMORROW : Mode.TODAY);
+						String textToPublish = new String();
+						for(String entry:calendarEntries) {
+							// strip of 'müll' to save characters
+							int pos = entry.indexOf("müll");
+							if(pos!=-1) {
+								textToPublish += entry.substring(pos) + " ";
+							}
+							else {
+								textToPublish += entry + " ";
+							}
+						}
+						log.fine("publishing waste collection to display: "+textToPublish);
+						mqttClient.publishToDisplay(MQTT_TOPIC_PUB_DISPLAY_WASTE_COLLECTION, textToPublish);
+					
+						// publish next alarm
+						Alarm alarm = lastHour>=12 ? Alarm.getNextAlarmTomorrow() : Alarm.getNextAlarmToday();
+						if(alarm!=null) {
+							// AlarmPi Display expects next alarm time as second of day
+							int nextAlarm = alarm.getTime().getHour()*3600 + alarm.getTime().getMinute()*60;
+							log.fine(String.format("publishing nextAlarm to Display. Time=%s, seconds of day: %d", alarm.getTime().toString(),nextAlarm));
+							mqttClient.publishToDisplay(MQTT_TOPIC_PUB_DISPLAY_NEXT_ALARM, Integer.toString(nextAlarm));
 						}
 						else {
-							textToPublish += entry + " ";
+							log.fine("publishing nextAlarm to Display: Clearing");
+							mqttClient.publishToDisplay(MQTT_TOPIC_PUB_DISPLAY_NEXT_ALARM, null);
 						}
 					}
-					log.fine("publishing waste collection to display: "+textToPublish);
-					MqttClient.getMqttClient().publishToDisplay(MQTT_TOPIC_PUB_DISPLAY_WASTE_COLLECTION, textToPublish);
-					
-					// publish next alarm
-					Alarm alarm = lastHour>=12 ? Alarm.getNextAlarmTomorrow() : Alarm.getNextAlarmToday();
-					if(alarm!=null) {
-						// AlarmPi Display expects next alarm time as second of day
-						int nextAlarm = alarm.getTime().getHour()*3600 + alarm.getTime().getMinute()*60;
-						log.fine(String.format("publishing nextAlarm to Display. Time=%s, seconds of day: %d", alarm.getTime().toString(),nextAlarm));
-						MqttClient.getMqttClient().publishToDisplay(MQTT_TOPIC_PUB_DISPLAY_NEXT_ALARM, Integer.toString(nextAlarm));
-					}
-					else {
-						log.fine("publishing nextAlarm to Display: Clearing");
-						MqttClient.getMqttClient().publishToDisplay(MQTT_TOPIC_PUB_DISPLAY_NEXT_ALARM, null);
-					}
 				}
 				
 				// check for a new day
@@ -410,21 +418,10 @@ class Controller implements Runnable, IMqttMessageListener{
 					deleteAlarmEvents();
 					Alarm.getAlarmList().stream().forEach(alarm -> addAlarmEvents(alarm));
 					
-					// publish modified alarm status on MQTT broker
-					JsonObjectBuilder builder = Json.createBuilderFactory(null).createObjectBuilder();
-					
-					// build final object
-					builder.add("name", Configuration.getConfiguration().getName());
-					builder.add("alarms", Alarm.getAlarmListAsJsonArray());
-					JsonObject jsonObject = builder.build();
-					log.finest("created JSON object:\n"+jsonObject.toString());
-					
-					MqttClient.getMqttClient().publish(MQTT_TOPIC_PUB_ALARMLIST, jsonObject.toString());
+					// publish modified alarms on MQTT broker
+					Alarm.publishAlarms();
 				}
 				
-				// check if an alarm was modified and its events need to be processed
-				updateAlarmEvents();
-				
 				// check if an event needs to be processed
 				checkForEventsToProcess();
 				
@@ -443,29 +440,37 @@ class Controller implements Runnable, IMqttMessageListener{
 	}
 
 	/**
-	 * update alarm events if needed
+	 * updates the events of all alarms that changed. Called by the alarm list on its listener thread
+	 * @param previous previous version of the alarm list
+	 * @param current  new version of the alarm list
 	 */
-	synchronized private void updateAlarmEvents() {
-		Alarm.getModifiedAlarmList().stream().forEach(alarm -> {
-			updateAlarmEvents(alarm);
-			
-			// ensure that AlarmPi Display gets updated if needed
-			Alarm nextAlarm = Alarm.getNextAlarmToday();
-			if(nextAlarm==null) {
-				nextAlarm = Alarm.getNextAlarmTomorrow();
-			}
-			if(nextAlarm!=null) {
-				int nextAlarmAsSecondsOfDay = alarm.getTime().getHour()*3600 + alarm.getTime().getMinute()*60;
-				log.fine(String.format("Publishing nextAlarm to Display. Time= %02d:%02d, secondsOfDay=%d",
-						nextAlarm.getTime().getHour(),nextAlarm.getTime().getMinute(),nextAlarmAsSecondsOfDay));
-				MqttClient.getMqttClient().publishToDisplay(MQTT_TOPIC_PUB_DISPLAY_NEXT_ALARM, Integer.toString(nextAlarmAsSecondsOfDay));
-				
-			}
-			else {
-				log.fine("publishing nextAlarm to Display: Clearing");
-				MqttClient.getMqttClient().publishToDisplay(MQTT_TOPIC_PUB_DISPLAY_NEXT_ALARM, null);
-			}
-		});
+	synchronized private void alarmListChanged(Alarm.AlarmList previous,Alarm.AlarmList current) {
+		current.getRemovedAlarms(previous).stream().forEach(alarm -> deleteAlarmEvents(alarm));
+		current.getModifiedAlarms(previous).stream().forEach(alarm -> updateAlarmEvents(alarm));
+	}
+	
+	/**
+	 * ensures that AlarmPi Display shows the next alarm. Called by the alarm list on its listener thread
+	 */
+	private void publishNextAlarm() {
+		if(mqttClient==null) {
+			return;
+		}
+		
+		Alarm nextAlarm = Alarm.getNextAlarmToday();
+		if(nextAlarm==null) {
+			nextAlarm = Alarm.getNextAlarmTomorrow();
+		}
+		if(nextAlarm!=null) {
+			int nextAlarmAsSecondsOfDay = nextAlarm.getTime().getHour()*3600 + nextAlarm.getTime().getMinute()*60;
+			log.fine(String.format("Publishing nextAlarm to Display. Time= %02d:%02d, secondsOfDay=%d",
+					nextAlarm.getTime().getHour(),nextAlarm.getTime().getMinute(),nextAlarmAsSecondsOfDay));
+			MqttClient.getMqttClient().publishToDisplay(MQTT_TOPIC_PUB_DISPLAY_NEXT_ALARM, Integer.toString(nextAlarmAsSecondsOfDay));
+		}
+		else {
+			log.fine("publishing nextAlarm to Display: Clearing");
+			MqttClient.getMqttClient().publishToDisplay(MQTT_TOPIC_PUB_DISPLAY_NEXT_ALARM, null);
+		}
 	}
 	
 	
@@ -508,7 +513,7 @@ class Controller implements Runnable, IMqttMessageListener{
 			}
 			
 			deleteAlarmEvents(activeAlarm);
-			activeAlarm = null;
+			setActiveAlarm(null);
 		}
 		else {
 			log.fine("stopActiveAlarm: no alarm active");
@@ -522,9 +527,9 @@ class Controller implements Runnable, IMqttMessageListener{
 		log.fine("deleting all alarm events");
 		eventList.clear();
 		
-		lightControlList.stream().forEach(control -> control.setOff());
+		lightGroup.setOff();
 		soundControl.off();
-		activeAlarm = null;
+		setActiveAlarm(null);
 	}
 	
 	/**
@@ -547,16 +552,16 @@ class Controller implements Runnable, IMqttMessageListener{
 		Iterator<Event> it = eventList.iterator();
 		while(it.hasNext()) {
 			Event e = it.next();
-			if(e.alarm != null && e.alarm == alarm) {
+			if(e.alarm != null && e.alarm.equals(alarm)) {
 				// delete this event
 				it.remove();
 			}
 		}
 		
-		if(activeAlarm!=null && alarm==activeAlarm) {
-			lightControlList.stream().forEach(control -> control.setOff());
+		if(activeAlarm!=null && alarm.equals(activeAlarm)) {
+			lightGroup.setOff();
 			soundControl.off();
-			activeAlarm = null;
+			setActiveAlarm(null);
 		}
 	}
 	
@@ -781,6 +786,7 @@ class Controller implements Runnable, IMqttMessageListener{
 		
 		// sort events in order of execution time again
 		Collections.sort(eventList);
+		publishSoundTimer(secondsFromNow);
 	}
 	
 	/**
@@ -798,6 +804,7 @@ class Controller implements Runnable, IMqttMessageListener{
 			}
 			
 			soundTimerEvent = null;
+			publishSoundTimer(0);
 		}
 	}
 	
@@ -816,6 +823,23 @@ class Controller implements Runnable, IMqttMessageListener{
 		return secondsFromNow;
 	}
 	
+	/**
+	 * publishes the sound timer as event to HTTP clients
+	 * @param secondsFromNow time in seconds from now when the sound gets switched off, 0 if timer is not active
+	 */
+	private void publishSoundTimer(int secondsFromNow) {
+		EventBroadcaster.getBroadcaster().publish("timer", "", "{\"secondsFromNow\":"+secondsFromNow+"}");
+	}
+	
+	/**
+	 * sets the active alarm and publishes it as event to HTTP clients
+	 * @param alarm active alarm or null
+	 */
+	private void setActiveAlarm(Alarm alarm) {
+		activeAlarm = alarm;
+		EventBroadcaster.getBroadcaster().publish("activeAlarm", "", alarm==null ? "{\"id\":null}" : "{\"id\":\""+alarm.getId()+"\"}");
+	}
+	
 	
 	synchronized List<LightControl> getLightControlList() {
 		return lightControlList;
@@ -877,6 +901,7 @@ class Controller implements Runnable, IMqttMessageListener{
 		// if this is timer event, set timer to off
 		if(e==soundTimerEvent) {
 			soundTimerEvent = null;
+			publishSoundTimer(0);
 		}
 		
 		if(e.alarm != null && e.alarm.getSkipOnce()) {
@@ -906,51 +931,42 @@ class Controller implements Runnable, IMqttMessageListener{
 			soundControl.off();
 			break;
 		case PLAY_WEATHER:
-			if(weatherAnnouncementFile!=null && weatherAnnouncementFile.isDone()) {
-				try {
-					String file = weatherAnnouncementFile.get();
-					if(file!=null && !file.isEmpty()) {
-						soundControl.playFile(file, null, true);
-					}
-					else {
-						log.warning("weather announcement file does not exist");
-					}
-				} catch (InterruptedException | ExecutionException exception) {
-					log.severe("Unable to play weather announcement");
-					log.severe(exception.getMessage());
+			if(weatherAnnouncementFile!=null) {
+				// the future completes latest at its deadline (the time of this event)
+				String file = weatherAnnouncementFile.join();
+				if(file!=null) {
+					soundControl.playFile(file, null, true);
+				}
+				else {
+					log.warning("weather announcement file does not exist");
 				}
 				weatherAnnouncementFile = null;
 			}
 			break;
 		case PLAY_CALENDAR:
-			if(calendarAnnouncementFile!=null && calendarAnnouncementFile.isDone()) {
-				try {
-					String file = calendarAnnouncementFile.get();
-					if(file!=null && !file.isEmpty()) {
-						soundControl.playFile(file, null, true);
-					}
-					else {
-						// can be null in case no calendar entry exists
-						log.fine("calendar announcement file does not exist");
-					}
-				} catch (InterruptedException | ExecutionException exception) {
-					log.severe("Unable to play calendar announcement");
-					log.severe(exception.getMessage());
+			if(calendarAnnouncementFile!=null) {
+				String file = calendarAnnouncementFile.join();
+				if(file!=null) {
+					soundControl.playFile(file, null, true);
+				}
+				else {
+					// can be null in case no calendar entry exists
+					log.fine("calendar announcement file does not exist");
 				}
 				calendarAnnouncementFile = null;
 			}
 			break;
 		case LED_OFF:
-			lightControlList.stream().forEach(control -> control.setOff());
+			lightGroup.setOff();
 			break;
 		case ALARM_START:
 			log.fine("start of alarm with id="+e.alarm.getId());
-			activeAlarm = e.alarm;;
+			setActiveAlarm(e.alarm);
 			soundControl.stop();
 			soundControl.on();
 			
-			// start thread to dim up the light
-			lightControlList.stream().forEach(control -> control.dimUp(e.alarm.getLightDimUpBrightness(), e.alarm.getLightDimUpDuration()));
+			// dim up all lights in parallel
+			lightGroup.dimUp(e.alarm.getLightDimUpBrightness(), e.alarm.getLightDimUpDuration());
 			
 			// trigger weather data and calendar retrieval in an extra thread
 			if( temperatureLastUpdate==null || LocalDateTime.now().minusHours(2).isAfter(temperatureLastUpdate) ) {
@@ -958,21 +974,16 @@ class Controller implements Runnable, IMqttMessageListener{
 				temperature = null;
 			}
 			
-			weatherAnnouncementFile  = dataExecutorService.submit(new WeatherProvider(temperature));
+			// announcements are needed when their events fire
+			weatherAnnouncementFile  = announcementService.request(new WeatherProvider(temperature),
+					getAnnouncementDeadline(e.alarm, Event.EventType.PLAY_WEATHER));
 			if(Configuration.getConfiguration().getCalendarSummary()!=null) {
-				calendarAnnouncementFile = dataExecutorService.submit(new CalendarProvider(GoogleCalendar.Mode.TODAY));
+				calendarAnnouncementFile = announcementService.request(new CalendarProvider(GoogleCalendar.Mode.TODAY),
+						getAnnouncementDeadline(e.alarm, Event.EventType.PLAY_CALENDAR));
 			}
 			
-			// publish modified alarm status on MQTT broker
-			JsonObjectBuilder builder = Json.createBuilderFactory(null).createObjectBuilder();
-			
-			// build final object
-			builder.add("name", Configuration.getConfiguration().getName());
-			builder.add("alarms", Alarm.getAlarmListAsJsonArray());
-			JsonObject jsonObject = builder.build();
-			log.finest("created JSON object:\n"+jsonObject.toString());
-			
-			MqttClient.getMqttClient().publish(MQTT_TOPIC_PUB_ALARMLIST,jsonObject.toString());
+			// publish modified alarms on MQTT broker
+			Alarm.publishAlarms();
 			
 			break;
 		case ALARM_END:
@@ -985,6 +996,37 @@ class Controller implements Runnable, IMqttMessageListener{
 	}
 	
 	
+	/**
+	 * returns the point in time at which an announcement is needed: the time of the next scheduled event of the
+	 * specified type for this alarm, but at least the minimum announcement timeout from now
+	 * @param alarm alarm
+	 * @param type  event type playing the announcement
+	 * @return deadline for the announcement
+	 */
+	private LocalDateTime getAnnouncementDeadline(Alarm alarm,Event.EventType type) {
+		LocalDateTime now      = LocalDateTime.now();
+		LocalDateTime deadline = null;
+		for(Event event:eventList) {
+			if(event.type==type && alarm.equals(event.alarm)) {
+				// event times are times of day, an event time before now is after midnight
+				LocalDateTime eventTime = LocalDateTime.of(now.toLocalDate(), event.time);
+				if(eventTime.isBefore(now)) {
+					eventTime = eventTime.plusDays(1);
+				}
+				if(deadline==null || eventTime.isBefore(deadline)) {
+					deadline = eventTime;
+				}
+			}
+		}
+		
+		LocalDateTime minDeadline = now.plus(ANNOUNCEMENT_MIN_TIMEOUT);
+		if(deadline==null || deadline.isBefore(minDeadline)) {
+			deadline = minDeadline;
+		}
+		log.fine("deadline for announcement event "+type+": "+deadline);
+		
+		return deadline;
+	}
 
 	/**
 	 * prepares the mp3 file to announce the time and an optional greeting before
@@ -1021,6 +1063,27 @@ class Controller implements Runnable, IMqttMessageListener{
 		return array;
 	}
 
+	/**
+	 * modifies some lights, all in one command to the light group
+	 * @param patchMap validated light properties (brightness, colourTemperature, transitionTime) by light ID
+	 */
+	final void patchLights(Map<Integer,JsonObject> patchMap) {
+		log.fine("patching lights "+patchMap.keySet());
+		lightGroup.apply("patchLights", light -> {
+			JsonObject patch = patchMap.get(light.getId());
+			if(patch==null) {
+				return;
+			}
+			if(patch.containsKey("colourTemperature")) {
+				double brightness = patch.containsKey("brightness") ? patch.getInt("brightness") : light.getBrightness();
+				light.setColourTemperature(patch.getInt("colourTemperature"), brightness, patch.getInt("transitionTime", 0));
+			}
+			else {
+				light.setBrightness(patch.getInt("brightness"));
+			}
+		});
+	}
+	
 	/**
 	 * parses the light status from a JSON object that contains the array "lights"
 	 * @param jsonObject
@@ -1029,7 +1092,7 @@ class Controller implements Runnable, IMqttMessageListener{
 		log.fine("parsing light status from JSON array");
 		JsonArray jsonArray = jsonObject.getJsonArray("lights");
 		if(jsonArray!=null) {
-			lightControlList.stream().forEach(light -> light.parseFromJsonArray(jsonArray));
+			lightGroup.apply("parseFromJsonArray", light -> light.parseFromJsonArray(jsonArray));
 		}
 		else {
 			log.fine("parseLightStatusFromJsonObject: JSON object has no array \"lights\"");
@@ -1132,9 +1195,7 @@ class Controller implements Runnable, IMqttMessageListener{
 	    					}
 	    					else {
 	    						// turn on light
-	    						if(lightControlList!=null) {
-	    							lightControlList.stream().forEach(light -> light.setBrightness(30));
-	    						}
+	    						lightGroup.setBrightness(30);
 	    						
 		            			// publish to MQTT broker (if configured)
 		            			if(mqttClient!=null) {
@@ -1151,11 +1212,12 @@ class Controller implements Runnable, IMqttMessageListener{
 	    						soundControl.off();
 	    					}
 	    					else {
+	    						Configuration.ButtonSettings setting = getSetting();
 	    						soundControl.on();
-	    						Alarm.Sound sound = Configuration.getConfiguration().getSoundList().get(pushButtonSetting.soundId);
-	    						soundControl.playSound(sound, pushButtonSetting.soundVolume, false);
-	    						if(pushButtonSetting.soundTimer>0) {
-	    							setSoundTimer(pushButtonSetting.soundTimer*60);
+	    						Alarm.Sound sound = Configuration.getConfiguration().getSoundList().get(setting.soundId);
+	    						soundControl.playSound(sound, setting.soundVolume, false);
+	    						if(setting.soundTimer>0) {
+	    							setSoundTimer(setting.soundTimer*60);
 	    						}
 	    					}
 	        			}
@@ -1173,6 +1235,15 @@ class Controller implements Runnable, IMqttMessageListener{
         	}
 		}
 		
+		/**
+		 * @return settings of this button in the current configuration, the click actions may have been modified since startup
+		 */
+		private Configuration.ButtonSettings getSetting() {
+			return Configuration.getConfiguration().getButtonSettings().stream()
+					.filter(setting -> setting.id==pushButtonSetting.id)
+					.findAny().orElse(pushButtonSetting);
+		}
+		
         
         private long                             start = System.currentTimeMillis();
         private Configuration.ButtonSettings pushButtonSetting;
@@ -1183,116 +1254,137 @@ class Controller implements Runnable, IMqttMessageListener{
  
 	}
 	
-	@Override
-	public void messageArrived(String topic, MqttMessage message) throws Exception {
-		log.fine("MQTT message arrived: topic="+topic+" content="+message);
-
-		if(topic.endsWith(MQTT_TOPIC_SUB_LIGHT)) {
-			log.fine("MQTT light control message arrived. content="+message);
-			try {
-				int brightness = Integer.parseInt(message.toString());
-				if(lightControlList!=null) {
-					lightControlList.stream().forEach(light -> light.setBrightness(brightness));
-				}
-			}
-			catch (Throwable t) {
-				log.warning("Unable to parse MQTT brightness: "+t.getMessage());
-			}
+	/**
+	 * MQTT handler: sets the brightness of all lights
+	 * @param topic   topic
+	 * @param message brightness in percent
+	 */
+	private void lightMessageArrived(String topic, MqttMessage message) {
+		log.fine("MQTT light control message arrived. content="+MqttClient.getText(message));
+		try {
+			int brightness = Integer.parseInt(MqttClient.getText(message));
+			lightGroup.setBrightness(brightness);
 		}
-
-		if(topic.endsWith(MQTT_TOPIC_SUB_RADIO)) {
-			log.fine("MQTT radio control message arrived. content="+message);
-			try {
-				int volume = Integer.parseInt(message.toString());
-				if(volume>0) {
-					String soundName = Configuration.getConfiguration().getValue("radio", "sound", null);
-					if(soundName!=null) {
-						Alarm.Sound sound = Configuration.getConfiguration().getSoundList().stream().filter(s -> s.name.equals(soundName)).findAny().get();
-						if(sound!=null) {
-							soundControl.on();
-							soundControl.playSound(sound, volume, false);
-							
-							// set timer to switch off sound
-							setSoundTimer(Configuration.getConfiguration().getValue("radio", "timer", 1800));
-						}
-					}
-					else {
-						log.warning("MQTT radio control: no sound name configured");
+		catch (Throwable t) {
+			log.warning("Unable to parse MQTT brightness: "+t.getMessage());
+		}
+	}
+	
+	/**
+	 * MQTT handler: switches the radio on or off
+	 * @param topic   topic
+	 * @param message volume or 0 to switch off
+	 */
+	private void radioMessageArrived(String topic, MqttMessage message) {
+		log.fine("MQTT radio control message arrived. content="+MqttClient.getText(message));
+		try {
+			int volume = Integer.parseInt(MqttClient.getText(message));
+			if(volume>0) {
+				String soundName = Configuration.getConfiguration().getValue("radio", "sound", null);
+				if(soundName!=null) {
+					Alarm.Sound sound = Configuration.getConfiguration().getSoundList().stream().filter(s -> s.name.equals(soundName)).findAny().get();
+					if(sound!=null) {
+						soundControl.on();
+						soundControl.playSound(sound, volume, false);
+						
+						// set timer to switch off sound
+						setSoundTimer(Configuration.getConfiguration().getValue("radio", "timer", 1800));
 					}
 				}
 				else {
-					soundControl.off();
+					log.warning("MQTT radio control: no sound name configured");
 				}
 			}
-			catch (Throwable t) {
-				log.warning("Unable to parse MQTT radio volume: "+t.getMessage());
+			else {
+				soundControl.off();
 			}
 		}
+		catch (Throwable t) {
+			log.warning("Unable to parse MQTT radio volume: "+t.getMessage());
+		}
+	}
+	
+	/**
+	 * MQTT handler: updates the locally measured temperature
+	 * @param topic   topic
+	 * @param message temperature or empty if unknown
+	 */
+	private void temperatureMessageArrived(String topic, MqttMessage message) {
+		log.fine("MQTT temperature update message arrived. content="+MqttClient.getText(message));
 		
-		if(topic.endsWith(MQTT_TOPIC_SUB_TEMPERATURE)) {
-			log.fine("MQTT temperature update message arrived. content="+message);
-			
-			if(message.getPayload().length>0) {
-				try {
-					temperature = (int)Double.parseDouble(message.toString());
-				}
-				catch(Throwable t) {
-					log.warning("Unable to parse MQTT temperature: "+t.getMessage());
-					temperatureLastUpdate = null;
-					temperature           = null;
-				}
-				temperatureLastUpdate = LocalDateTime.now();
+		if(message.getPayload().length>0) {
+			try {
+				temperature = (int)Double.parseDouble(MqttClient.getText(message));
 			}
-			else {
-				temperature           = null;
+			catch(Throwable t) {
+				log.warning("Unable to parse MQTT temperature: "+t.getMessage());
 				temperatureLastUpdate = null;
+				temperature           = null;
 			}
+			temperatureLastUpdate = LocalDateTime.now();
 		}
-
-		if(topic.endsWith(MQTT_TOPIC_SUB_SET_ALARM)) {
-			log.fine("MQTT setAlarm message arrived. content="+message);
-			// parse content string in "hh:mm" format into LocalTime object
-			String[] time = message.toString().split(":");
-			if(time.length==2) {
-				try {
-					int hour   = Integer.parseInt(time[0]);
-					int minute = Integer.parseInt(time[1]);
-					
-					// check if time is valid
-					if(hour>=0 && hour<24 && minute>=0 && minute<60) {
-						// set alarm for today or tomorrow
-						LocalTime alarmTime = LocalTime.of(hour,minute);
-						if(alarmTime.isBefore(LocalTime.now())) {
-							// set alarm for tomorrow
-							Alarm.setAlarmTomorrow(alarmTime);
-						}
-						else {
-							// set alarm for today
-							Alarm.setAlarmToday(alarmTime);
-						}
-
-						updateAlarmEvents();
+		else {
+			temperature           = null;
+			temperatureLastUpdate = null;
+		}
+	}
+	
+	/**
+	 * MQTT handler: sets an alarm for today or tomorrow
+	 * @param topic   topic
+	 * @param message alarm time in hh:mm format
+	 */
+	private void setAlarmMessageArrived(String topic, MqttMessage message) {
+		log.fine("MQTT setAlarm message arrived. content="+MqttClient.getText(message));
+		// parse content string in "hh:mm" format into LocalTime object
+		String[] time = MqttClient.getText(message).split(":");
+		if(time.length==2) {
+			try {
+				int hour   = Integer.parseInt(time[0]);
+				int minute = Integer.parseInt(time[1]);
+				
+				// check if time is valid
+				if(hour>=0 && hour<24 && minute>=0 && minute<60) {
+					// set alarm for today or tomorrow
+					LocalTime alarmTime = LocalTime.of(hour,minute);
+					if(alarmTime.isBefore(LocalTime.now())) {
+						// set alarm for tomorrow
+						Alarm.setAlarmTomorrow(alarmTime);
 					}
 					else {
-						log.warning("Unable to parse MQTT setAlarm: invalid time format "+message.toString());
+						// set alarm for today
+						Alarm.setAlarmToday(alarmTime);
 					}
 				}
-				catch(Throwable t) {
-					log.warning("Unable to parse MQTT setAlarm: "+t.getMessage());
+				else {
+					log.warning("Unable to parse MQTT setAlarm: invalid time format "+MqttClient.getText(message));
 				}
 			}
+			catch(Throwable t) {
+				log.warning("Unable to parse MQTT setAlarm: "+t.getMessage());
+			}
 		}
+	}
+	
+	/**
+	 * MQTT handler: switches lights and sound off. Takes several seconds, runs on its own worker thread
+	 * @param topic   topic
+	 * @param message not used
+	 */
+	private void allOffMessageArrived(String topic, MqttMessage message) {
+		log.fine("MQTT allOff message arrived");
+		allOff(true);
+	}
+	
+	/**
+	 * MQTT handler: raises an external alarm
+	 * @param topic   topic
+	 * @param message alarm ID
+	 */
+	private void externalAlarmMessageArrived(String topic, MqttMessage message) {
+		log.fine("MQTT externalAlarm message arrived, alarm ID="+MqttClient.getText(message));
 		
-		if(topic.endsWith(MQTT_TOPIC_SUB_ALL_OFF)) {
-			log.fine("MQTT allOff message arrived");
-			allOff(true);
-		}
-		
-		if(topic.endsWith(MQTT_TOPIC_SUB_EXTERNAL_ALARM)) {
-			log.fine("MQTT externalAlarm message arrived, alarm ID="+message.toString());
-			
-			raiseExternalAlarm(message.toString());
-		}
+		raiseExternalAlarm(MqttClient.getText(message));
 	}
 	
 	final static String watchDogFile       = "/var/log/alarmpi/watchdog";
@@ -1307,21 +1399,23 @@ class Controller implements Runnable, IMqttMessageListener{
 	Event                soundTimerEvent;       // event to switch off sound or null if no timer is active
 	
 	final List<LightControl>   lightControlList = new LinkedList<>();    // list of light control objects
+	final LightGroup           lightGroup;                               // applies commands to all lights in parallel
 	
 	private long         lastClick;             // time in milliseconds since last push button click
 	
-	ExecutorService      dataExecutorService;      // thread executor service to retrieve data like weather or calendar
-	Future<String>       weatherAnnouncementFile;  // future with filename of mp3 weather announcement
-	Future<String>       calendarAnnouncementFile; // future with filename of mp3 calendar announcement
+	AnnouncementService       announcementService;      // executes announcement providers like weather or calendar
+	CompletableFuture<String> weatherAnnouncementFile;  // future with filename of mp3 weather announcement
+	CompletableFuture<String> calendarAnnouncementFile; // future with filename of mp3 calendar announcement
 	
-	// locally measured temperature (retrieved thru MQTT)
-	private Integer temperature                 = null;
-	private LocalDateTime temperatureLastUpdate = null;
+	private static final int      ANNOUNCEMENT_THREAD_COUNT = 3;                     // number of announcement providers running in parallel
+	private static final Duration ANNOUNCEMENT_TIMEOUT      = Duration.ofSeconds(5); // max. time to prepare announcements when switching off
+	private static final Duration ANNOUNCEMENT_MIN_TIMEOUT  = Duration.ofSeconds(10); // min. time to prepare alarm announcements
 	
-	// MQTT topics
-	// gets published whenever an alarm got modified, contains alarmlist in JSON format
-	private final static String MQTT_TOPIC_PUB_ALARMLIST         = "alarmlist";
+	// locally measured temperature (retrieved thru MQTT, updated on a MQTT handler thread)
+	private volatile Integer temperature                 = null;
+	private volatile LocalDateTime temperatureLastUpdate = null;
 	
+	// MQTT topics
 	// gets published after a long button click
 	private final static String MQTT_TOPIC_PUB_BUTTON_CLICK_LONG = "buttonClickLong";
 	
@@ -0,0 +1,292 @@
+package alarmpi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.json.Json;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Pushes state changes to HTTP clients as Server-Sent Events (text/event-stream).
+ * Events get coalesced per event type and key (last value wins) and are handed to all clients by one
+ * broadcaster thread, so publishing never blocks. Events with unchanged data are not sent again.
+ * Each client has a bounded queue and its own writer thread, so a stalled client cannot delay the others.
+ * A client whose queue overflows or whose write blocks longer than the write timeout gets dropped.
+ * Clients should connect first and then get the complete status document, so they do not miss a change.
+ * Event types:
+ *   alarm        - alarm in Json format, key is the alarm ID
+ *   alarmRemoved - {"id":...} of a deleted alarm
+ *   light        - {"id":...,"brightness":...,"colourTemperature":...}, colourTemperature for lights supporting effects only
+ *   sound        - {"activeSound":...,"activeVolume":...}
+ *   activeAlarm  - {"id":...} of the active alarm, id is null if no alarm is active
+ *   timer        - {"secondsFromNow":...}, 0 if no timer is active
+ */
+class EventBroadcaster implements HttpHandler {
+
+	/**
+	 * @return the singleton broadcaster object
+	 */
+	static synchronized EventBroadcaster getBroadcaster() {
+		if(object==null) {
+			object = new EventBroadcaster(MAX_CLIENTS, HEARTBEAT_INTERVAL, WRITE_TIMEOUT);
+		}
+
+		return object;
+	}
+
+	/**
+	 * constructor
+	 * @param maxClients        max. number of connected clients
+	 * @param heartbeatInterval interval in milliseconds to send a comment to idle clients, detects closed connections
+	 * @param writeTimeout      max. time in milliseconds a write to a client may block before the client gets dropped
+	 */
+	EventBroadcaster(int maxClients,int heartbeatInterval,int writeTimeout) {
+		this.maxClients        = maxClients;
+		this.heartbeatInterval = heartbeatInterval;
+		this.writeTimeout      = writeTimeout;
+
+		Metrics.gauge("events.clients", () -> clientList.size());
+
+		// alarm changes
+		Alarm.addListener("events", (previous,current) -> {
+			current.getModifiedAlarms(previous).forEach(alarm -> publish("alarm", alarm.getId().toString(), alarm.toJsonObject().toString()));
+			current.getRemovedAlarms(previous).forEach(alarm -> publish("alarmRemoved", alarm.getId().toString(),
+					Json.createObjectBuilder().add("id", alarm.getId().toString()).build().toString()));
+		});
+
+		Thread thread = new Thread(this::run, "EventBroadcaster");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * publishes an event. Returns immediately, the event gets sent by the broadcaster thread
+	 * @param event event type
+	 * @param key   key within the event type, a pending event with the same type and key gets replaced
+	 * @param data  event data, typically a Json object. Must not contain line breaks
+	 */
+	void publish(String event,String key,String data) {
+		synchronized(pendingMap) {
+			pendingMap.put(event+"/"+key, new String[] {event, data});
+			pendingMap.notify();
+		}
+	}
+
+	/**
+	 * registers a client. The response stays open until the client disconnects
+	 */
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		Headers headers = exchange.getResponseHeaders();
+		headers.set("Server", "AlarmPi");
+		headers.set("Access-Control-Allow-Origin", "*");
+
+		if(!exchange.getRequestMethod().equals("GET")) {
+			headers.set("Allow", "GET");
+			exchange.sendResponseHeaders(405, -1);
+			exchange.close();
+			return;
+		}
+		if(clientList.size()>=maxClients) {
+			log.warning("max. number of event clients reached, rejecting "+exchange.getRemoteAddress());
+			headers.set("Retry-After", "10");
+			exchange.sendResponseHeaders(503, -1);
+			exchange.close();
+			return;
+		}
+
+		headers.set("Content-Type", "text/event-stream; charset=utf-8");
+		headers.set("Cache-Control", "no-cache");
+		exchange.sendResponseHeaders(200, 0);
+
+		Client client = new Client(exchange);
+		clientList.add(client);
+
+		// reconnect delay for the client
+		client.offer(("retry: "+RECONNECT_DELAY+"\n\n").getBytes(StandardCharsets.UTF_8));
+		client.start();
+		log.info("event client connected from "+exchange.getRemoteAddress()+", "+clientList.size()+" clients");
+	}
+
+	/**
+	 * @return number of connected clients
+	 */
+	int getClientCount() {
+		return clientList.size();
+	}
+
+	//
+	// private methods
+	//
+
+	/**
+	 * broadcaster thread: sends pending events, or a heartbeat if there were none for the heartbeat interval
+	 */
+	private void run() {
+		long lastWrite = System.nanoTime();
+		while(!Thread.interrupted()) {
+			Map<String,String[]> events;
+			synchronized(pendingMap) {
+				try {
+					// wake up at least once per write timeout to detect stalled clients
+					long wait = Math.min(heartbeatInterval-TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-lastWrite), writeTimeout);
+					if(pendingMap.isEmpty() && wait>0) {
+						pendingMap.wait(wait);
+					}
+				}
+				catch(InterruptedException e) {
+					return;
+				}
+				events = new LinkedHashMap<>(pendingMap);
+				pendingMap.clear();
+			}
+
+			dropStalledClients();
+
+			StringBuilder message = new StringBuilder();
+			for(Map.Entry<String,String[]> entry:events.entrySet()) {
+				String[] event = entry.getValue();
+				if(!event[1].equals(sentMap.put(entry.getKey(), event[1]))) {
+					message.append("event: ").append(event[0]).append('\n')
+					       .append("data: ").append(event[1]).append("\n\n");
+					sentCount.increment();
+				}
+			}
+
+			if(message.length()==0) {
+				if(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-lastWrite)<heartbeatInterval) {
+					continue;
+				}
+				message.append(":\n\n");
+			}
+
+			write(message.toString().getBytes(StandardCharsets.UTF_8));
+			lastWrite = System.nanoTime();
+		}
+	}
+
+	/**
+	 * queues data for all clients, dropping clients which fell behind
+	 * @param data data to write
+	 */
+	private void write(byte[] data) {
+		for(Client client:clientList) {
+			if(!client.offer(data)) {
+				drop(client, "queue full");
+			}
+		}
+	}
+
+	/**
+	 * drops all clients with a write blocking longer than the write timeout
+	 */
+	private void dropStalledClients() {
+		long now = System.nanoTime();
+		for(Client client:clientList) {
+			long writeStart = client.writeStart;
+			if(writeStart!=0 && TimeUnit.NANOSECONDS.toMillis(now-writeStart)>writeTimeout) {
+				drop(client, "write timeout");
+			}
+		}
+	}
+
+	/**
+	 * drops a client which fell behind. Interrupting the writer thread aborts a blocked write and closes the connection
+	 * @param client client to drop
+	 * @param reason reason for logging
+	 */
+	private void drop(Client client,String reason) {
+		if(clientList.remove(client)) {
+			log.warning("dropping event client "+client.exchange.getRemoteAddress()+": "+reason);
+			dropCount.increment();
+			client.thread.interrupt();
+		}
+	}
+
+	//
+	// private members
+	//
+	private static final Logger log = Logger.getLogger( EventBroadcaster.class.getName() );
+
+	private static final int MAX_CLIENTS        = 16;      // max. number of connected clients
+	private static final int HEARTBEAT_INTERVAL = 15000;   // heartbeat interval in milliseconds
+	private static final int RECONNECT_DELAY    = 3000;    // reconnect delay for clients in milliseconds
+	private static final int WRITE_TIMEOUT      = 10000;   // max. time in milliseconds a write to a client may block
+	private static final int CLIENT_QUEUE_SIZE  = 64;      // max. number of messages queued per client
+
+	private static EventBroadcaster object = null;         // singleton object
+
+	// private class holding one connected client with its queue and writer thread
+	private class Client implements Runnable {
+		Client(HttpExchange exchange) {
+			this.exchange = exchange;
+			this.stream   = exchange.getResponseBody();
+			this.thread   = new Thread(this, "EventClient "+exchange.getRemoteAddress());
+			thread.setDaemon(true);
+		}
+
+		void start() {
+			thread.start();
+		}
+
+		boolean offer(byte[] data) {
+			return queue.offer(data);
+		}
+
+		/**
+		 * writer thread: writes queued messages until the client disconnects or gets dropped
+		 */
+		@Override
+		public void run() {
+			try {
+				while(true) {
+					byte[] data = queue.take();
+					writeStart = System.nanoTime();
+					stream.write(data);
+					stream.flush();
+					writeStart = 0;
+				}
+			}
+			catch(IOException e) {
+				if(clientList.remove(this)) {
+					log.info("event client "+exchange.getRemoteAddress()+" disconnected");
+				}
+			}
+			catch(InterruptedException e) {
+				// dropped
+			}
+			finally {
+				exchange.close();
+			}
+		}
+
+		private final HttpExchange          exchange;                                                // open exchange
+		private final OutputStream          stream;                                                  // response body
+		private final Thread                thread;                                                  // writer thread
+		private final BlockingQueue<byte[]> queue      = new ArrayBlockingQueue<>(CLIENT_QUEUE_SIZE);   // messages to write
+		private volatile long               writeStart = 0;                                          // System.nanoTime of the running write, 0 if none
+	}
+
+	private final int                  maxClients;                                         // max. number of connected clients
+	private final int                  heartbeatInterval;                                  // heartbeat interval in milliseconds
+	private final int                  writeTimeout;                                       // max. blocking time of a client write in milliseconds
+	private final List<Client>         clientList = new CopyOnWriteArrayList<>();          // connected clients
+	private final Map<String,String[]> pendingMap = new LinkedHashMap<>();                 // pending events (type and data) by type/key
+	private final Map<String,String>   sentMap    = new HashMap<>();                       // last sent data by type/key, broadcaster thread only
+	private final LongAdder            sentCount  = Metrics.counter("events.sent");        // number of sent events
+	private final LongAdder            dropCount  = Metrics.counter("events.dropped");     // number of clients dropped for falling behind
+}
@@ -1,196 +1,307 @@
 package alarmpi;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.lang.invoke.MethodHandles;
-import java.net.Socket;
-import java.util.Date;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import javax.json.Json;
 import javax.json.JsonArray;
+import javax.json.JsonException;
 import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
+import javax.json.JsonValue;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
 
 
 
 /**
- * handler class for TCP client connections
+ * handler for the HTTP JSON interface, running inside the JDK HTTP server which takes care of
+ * HTTP/1.1 parsing, persistent connections and response framing.
+ * GET returns the status document, gzip compressed if the client accepts it. POST applies the Json object in the request body.
+ * Older clients send the Json object URL encoded as request path, this is still accepted if the body is empty
  */
-public class JsonRequestHandler implements Runnable {
+public class JsonRequestHandler implements HttpHandler {
+
+	public JsonRequestHandler(Controller controller) {
+		this(controller, null);
+	}
 
-	public JsonRequestHandler(Controller controller,Socket socket) {
+	/**
+	 * constructor with an own status document cache. Used by tests
+	 * @param controller  controller
+	 * @param statusCache status document cache, null to use the cache of the controller
+	 */
+	JsonRequestHandler(Controller controller,JsonStatusCache statusCache) {
 		this.controller    = controller;
-		this.clientSocket  = socket;
-		
+		this.documentCache = statusCache;
 	}
 
 	@Override
-	public void run() {
-		final int BUFFER_SIZE = 10000; // size of read buffer
-		log.info("client connected from "+clientSocket.getRemoteSocketAddress());
-		
+	public void handle(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		log.fine("received HTTP "+method+" request from "+exchange.getRemoteAddress());
 
 		try {
-			boolean exit = false;
-			BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-			char[] buffer = new char[BUFFER_SIZE];
-			clientStream  = new PrintWriter(clientSocket.getOutputStream(), true);
-			
-			// read and process client commands until 'exit' command is received
-			while (!exit) {
-				int length = bufferedReader.read(buffer, 0, BUFFER_SIZE);
-				if (length <= 0) {
-					log.info("client connection terminated");
-					exit = true;
-				} else if (length == BUFFER_SIZE) {
-					log.severe("message from client exceeds max. length of "
-							+ BUFFER_SIZE + ". Ignoring...");
-				} else {
-					String message = new String(buffer, 0, length).trim();
-					log.fine("received HTTP request from client");
-					log.finest("message details: " + message);
-					
-					Date today = new Date();
-					String httpResponse = "HTTP/1.1 100 ERROR\r\n" + 
-							"Date: "+today+"\r\n" + 
-							"Server: AlarmPi\r\n" + 
-							"\r\n";
-					
-					int pos = message.indexOf(' ');
-					if(pos>0) {
-						String httpMethod = message.substring(0, message.indexOf(' '));
-						String jsonString = java.net.URLDecoder.decode(message.substring(pos+2),"UTF-8");
-						
-						boolean processed = false;
-						
-						String origin = clientSocket.getLocalAddress().toString();//+":50261";//+clientSocket.getLocalPort();
-						log.fine("origin="+origin);
-						
-						origin="127.0.0.1";
-						String cors="*";
-						// http:/"+origin
-						
-						if(httpMethod.equals("OPTIONS")) {
-							httpResponse = "HTTP/1.1 200 OK\r\n" + 
-									"Date: "+today+"\r\n" + 
-									"Server: AlarmPi\r\n" + 
-									"Allow: GET,HEAD,POST,OPTIONS,TRACE\r\n" +
-									"Access-Control-Allow-Origin: "+cors+"\r\n";
-							
-							processed = true;
-						}
-						if(httpMethod.equals("GET")) {
-							httpResponse = "HTTP/1.1 200 OK\r\n" + 
-									"Date: "+today+"\r\n" + 
-									"Server: AlarmPi\r\n" + 
-									"Access-Control-Allow-Origin: "+cors+"\r\n" +
-									"\r\n" +
-									buildJsonObject().toString()+"\r\n";
-							
-							processed = true;
-						}
-						if(httpMethod.equals("POST")) {
-							JsonObject jsonObject = buildJasonObjectFromString(jsonString);
-							
-							JsonArray jsonArray = jsonObject.getJsonArray("alarms");
-							if(jsonArray!=null) {
-								Alarm.updateAlarmListFromJsonArray(jsonArray);
-							}
-							
-							jsonArray = jsonObject.getJsonArray("lights");
-							if(jsonArray!=null) {
-								controller.parseLightStatusFromJsonObject(jsonObject);
-							}
-							
-							jsonArray = jsonObject.getJsonArray("actions");
-							if(jsonArray!=null) {
-								jsonArray.stream().filter(action -> action.toString().equals("\"stopActiveAlarm\"")).forEach(action -> controller.stopActiveAlarm());
-							}
-							
-							JsonObject jsonObjectSoundStatus = jsonObject.getJsonObject("soundStatus");
-							if(jsonObjectSoundStatus!=null) {
-								controller.parseSoundStatusFromJsonObject(jsonObjectSoundStatus);
-							}
-							
-							httpResponse = "HTTP/1.1 200 OK\r\n" + 
-									"Date: "+today+"\r\n" + 
-									"Server: AlarmPi\r\n" + 
-									"Access-Control-Allow-Origin: "+cors+"\r\n" +
-									"\r\n";
-							
-							processed = true;
-						}
-						
-						if(!processed) {
-							log.severe("Unable to process HTTP request. Method="+httpMethod);
-						}
-					}
-					else {
-						log.severe("Unable to process HTTP request. Message=="+message);
-					}
-					log.fine("sending HTTP response to client: "+clientSocket.getRemoteSocketAddress());
-					log.finest("message details: "+httpResponse);
-					
-					clientStream.print(httpResponse);
-					clientStream.flush();
-					clientStream.close();
-				}
+			Headers headers = exchange.getResponseHeaders();
+			headers.set("Server", "AlarmPi");
+			headers.set("Access-Control-Allow-Origin", "*");
+
+			switch(method) {
+				case "OPTIONS":
+					headers.set("Allow", ALLOWED_METHODS);
+					headers.set("Access-Control-Allow-Methods", ALLOWED_METHODS);
+					headers.set("Access-Control-Allow-Headers", "Content-Type, If-None-Match");
+					headers.set("Access-Control-Max-Age", "86400");
+					exchange.sendResponseHeaders(204, -1);
+					break;
+				case "GET":
+				case "HEAD":
+					handleGet(exchange);
+					break;
+				case "POST":
+					handlePost(exchange);
+					break;
+				default:
+					log.warning("Unable to process HTTP request. Method="+method);
+					headers.set("Allow", ALLOWED_METHODS);
+					exchange.sendResponseHeaders(405, -1);
 			}
-		} catch (IOException e) {
-			log.info(e.getMessage());
+		}
+		catch(IOException e) {
+			log.info("HTTP connection to "+exchange.getRemoteAddress()+" failed: "+e.getMessage());
+		}
+		catch(RuntimeException e) {
+			log.severe("Exception during processing of HTTP request: "+e.getMessage());
+			try {
+				exchange.sendResponseHeaders(500, -1);
+			}
+			catch(IOException e2) {
+				// response already started
+			}
+		}
+		finally {
+			exchange.close();
 		}
 	}
-	
-	private JsonObject buildJsonObject() {
-		JsonObjectBuilder builder = Json.createBuilderFactory(null).createObjectBuilder();
-		
-		// build final object
-		builder.add("name", Configuration.getConfiguration().getName());
-		builder.add("alarms", Alarm.getAlarmListAsJsonArray());
-		builder.add("sounds", Configuration.getConfiguration().getSoundListAsJsonArray());
-		builder.add("soundStatus", controller.getSoundStatusAsJsonObject());
-		builder.add("lights", controller.getLightStatusAsJsonArray());
-		JsonObject jsonObject = builder.build();
-		
-		String logString = jsonObject.toString();
-		if(logString.length()>50) {
-			logString = logString.substring(0,49);
+
+	/**
+	 * sends the status document or 304 if the client already has it
+	 * @param exchange HTTP exchange
+	 * @throws IOException
+	 */
+	private void handleGet(HttpExchange exchange) throws IOException {
+		// browsers opening the server address get the web interface. Their page requests accept XHTML,
+		// unlike scripts and apps which often accept text/html as well
+		String accept = exchange.getRequestHeaders().getFirst("Accept");
+		if(exchange.getRequestURI().getPath().equals("/") && accept!=null && accept.contains("application/xhtml+xml")) {
+			exchange.getResponseHeaders().set("Location", StaticContentHandler.CONTEXT);
+			exchange.sendResponseHeaders(302, -1);
+			return;
 		}
-		log.fine("created JSON object: "+logString+"...");
-		log.finest("full JSON Object: "+jsonObject.toString());
-		
-		return jsonObject;
+
+		JsonStatusCache.Document document = (documentCache!=null ? documentCache : getStatusCache(controller)).getDocument();
+		boolean gzip = document.getGzipBytes()!=null && JsonServer.acceptsGzip(exchange.getRequestHeaders());
+
+		Headers headers = exchange.getResponseHeaders();
+		headers.set("Access-Control-Expose-Headers", "ETag");
+		headers.set("ETag", gzip ? document.getGzipEntityTag() : document.getEntityTag());
+		headers.set("Cache-Control", "no-cache");
+		headers.set("Vary", "Accept-Encoding");
+
+		if(JsonStatusCache.matches(exchange.getRequestHeaders().getFirst("If-None-Match"), document)) {
+			log.fine("client has current status document, sending 304");
+			notModifiedCount.increment();
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+
+		headers.set("Content-Type", CONTENT_TYPE_JSON);
+		if(gzip) {
+			headers.set("Content-Encoding", "gzip");
+		}
+		if(exchange.getRequestMethod().equals("HEAD")) {
+			exchange.sendResponseHeaders(200, -1);
+			return;
+		}
+
+		byte[] body = gzip ? document.getGzipBytes() : document.getBytes();
+		exchange.sendResponseHeaders(200, body.length);
+		try(OutputStream stream = exchange.getResponseBody()) {
+			stream.write(body);
+		}
+	}
+
+	/**
+	 * applies the Json object in the request
+	 * @param exchange HTTP exchange
+	 * @throws IOException
+	 */
+	private void handlePost(HttpExchange exchange) throws IOException {
+		byte[] body = readBody(exchange.getRequestBody());
+		if(body==null) {
+			log.severe("HTTP request body exceeds max. length of "+MAX_BODY_SIZE);
+			exchange.sendResponseHeaders(413, -1);
+			return;
+		}
+
+		String rawPath = exchange.getRequestURI().getRawPath();
+		String query   = exchange.getRequestURI().getRawQuery();
+		JsonObject jsonObject = parseRequest(body, query==null ? rawPath : rawPath+"?"+query);
+		if(jsonObject==null) {
+			exchange.sendResponseHeaders(400, -1);
+			return;
+		}
+
+		JsonArray jsonArray = jsonObject.getJsonArray("alarms");
+		if(jsonArray!=null) {
+			Alarm.updateAlarmListFromJsonArray(jsonArray);
+		}
+
+		jsonArray = jsonObject.getJsonArray("lights");
+		if(jsonArray!=null) {
+			controller.parseLightStatusFromJsonObject(jsonObject);
+		}
+
+		jsonArray = jsonObject.getJsonArray("actions");
+		if(jsonArray!=null) {
+			jsonArray.stream().filter(action -> action.toString().equals("\"stopActiveAlarm\"")).forEach(action -> controller.stopActiveAlarm());
+		}
+
+		JsonObject jsonObjectSoundStatus = jsonObject.getJsonObject("soundStatus");
+		if(jsonObjectSoundStatus!=null) {
+			controller.parseSoundStatusFromJsonObject(jsonObjectSoundStatus);
+		}
+
+		exchange.sendResponseHeaders(200, -1);
+	}
+
+	/**
+	 * parses the Json object of a POST request. It is taken from the body or, for older clients,
+	 * from the URL encoded request path
+	 * @param body    request body
+	 * @param rawPath raw request path including query
+	 * @return Json object or null if the request does not contain a valid Json object
+	 */
+	static JsonObject parseRequest(byte[] body,String rawPath) {
+		String json = new String(body, StandardCharsets.UTF_8).trim();
+		if(json.isEmpty() && rawPath!=null && rawPath.length()>1) {
+			json = URLDecoder.decode(rawPath.substring(1), StandardCharsets.UTF_8).trim();
+		}
+		if(json.isEmpty()) {
+			log.severe("HTTP POST request without Json object");
+			return null;
+		}
+
+		try {
+			return buildJasonObjectFromString(json);
+		}
+		catch(JsonException | IllegalStateException e) {
+			log.severe("HTTP POST request with invalid Json object: "+e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * returns the cache for the status document. Each part of the document is keyed by the version of its store,
+	 * so it only gets serialized again after a change
+	 * @param controller controller providing sound and light status
+	 * @return status document cache
+	 */
+	static synchronized JsonStatusCache getStatusCache(Controller controller) {
+		if(statusCache==null) {
+			statusCache = createStatusCache(JsonRequestHandler::getSoundStatusKey, controller::getSoundStatusAsJsonObject, controller::getLightStatusAsJsonArray);
+		}
+
+		return statusCache;
+	}
+
+	/**
+	 * creates a cache with all fragments of the status document. Used by getStatusCache and by tests and benchmarks,
+	 * which have no complete controller and pass their own suppliers for the controller dependent fragments
+	 * @param soundStatusKey supplies a key that changes whenever the sound status changes
+	 * @param soundStatus    supplies the sound status
+	 * @param lightStatus    supplies the status of all lights
+	 * @return status document cache
+	 */
+	static JsonStatusCache createStatusCache(Supplier<Object> soundStatusKey,Supplier<JsonValue> soundStatus,Supplier<JsonValue> lightStatus) {
+		JsonStatusCache cache = new JsonStatusCache();
+		cache.addFragment("name", Configuration::getConfiguration, () -> Json.createValue(Configuration.getConfiguration().getName()));
+		cache.addFragment("alarms", Alarm::getAlarmSnapshot, Alarm::getAlarmListAsJsonArray);
+		cache.addFragment("sounds", Configuration::getConfiguration, () -> Configuration.getConfiguration().getSoundListAsJsonArray());
+		cache.addFragment("soundStatus", soundStatusKey, soundStatus);
+		cache.addFragment("lights", LightStatePublisher.getPublisher()::getVersion, lightStatus);
+
+		return cache;
+	}
+
+	/**
+	 * @return key for the sound status, made of the values it consists of
+	 */
+	private static Object getSoundStatusKey() {
+		SoundControl soundControl = SoundControl.getSoundControl();
+		Alarm.Sound  activeSound  = soundControl.getActiveSound();
+
+		return (activeSound==null ? "" : activeSound.name)+"/"+soundControl.getVolume();
+	}
+
+	/**
+	 * reads the complete request body
+	 * @param stream request body stream
+	 * @return body or null if it exceeds the max. size
+	 * @throws IOException
+	 */
+	static byte[] readBody(InputStream stream) throws IOException {
+		ByteArrayOutputStream body   = new ByteArrayOutputStream();
+		byte[]                buffer = new byte[4096];
+		int length;
+		while((length=stream.read(buffer))>0) {
+			if(body.size()+length>MAX_BODY_SIZE) {
+				return null;
+			}
+			body.write(buffer, 0, length);
+		}
+
+		return body.toByteArray();
 	}
-	
-	private JsonObject buildJasonObjectFromString(String stringifedObject) {
+
+	private static JsonObject buildJasonObjectFromString(String stringifedObject) {
 		JsonReader reader = Json.createReaderFactory(null).createReader(new StringReader(stringifedObject));
 		JsonObject jsonObject = reader.readObject();
-		 
+
 		String logString = jsonObject.toString();
 		if(logString.length()>50) {
 			logString = logString.substring(0,49);
 		}
-		
+
 		log.fine("buildJasonObjectFromString: created JSON object: "+logString+"...");
 		log.finest("full JSON object: "+jsonObject.toString());
-		
+
 		return jsonObject;
 	}
 
-	
+
 	//
 	// private data members
 	//
 	private static final Logger   log     = Logger.getLogger( MethodHandles.lookup().lookupClass().getName() );
-	
-	private final Socket               clientSocket;
+
+	private static final String ALLOWED_METHODS   = "GET, HEAD, POST, OPTIONS";
+	private static final String CONTENT_TYPE_JSON = "application/json; charset=utf-8";
+	private static final int    MAX_BODY_SIZE     = 1024*1024;   // max. size of a request body in bytes
+
 	private final Controller           controller;
-	private       PrintWriter          clientStream;
-	final ExecutorService threadPool = Executors.newCachedThreadPool();
+	private final JsonStatusCache      documentCache;   // own status document cache or null
+
+	private static JsonStatusCache     statusCache      = null;                                  // cache for the status document
+	private static final LongAdder     notModifiedCount = Metrics.counter("http.notModified");   // number of 304 responses
 }
@@ -0,0 +1,369 @@
+package alarmpi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonStructure;
+import javax.json.JsonValue;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * handler for the resources of the HTTP JSON interface:
+ *   /alarms, /alarms/{id}  GET, PATCH of a single alarm
+ *   /lights, /lights/{id}  GET, PATCH of a single light: brightness 0..100, colourTemperature in Kelvin
+ *                          (lights supporting effects only) with an optional transitionTime in seconds
+ *   /sound                 GET, PATCH
+ *   /batch                 POST {"alarms":{id:{...}},"lights":{id:{...}},"sound":{...}}
+ * PATCH only changes the properties present in the request. A batch gets validated completely before
+ * anything gets applied, all alarms are modified in one version of the alarm list, so it is stored and
+ * the alarm events get rescheduled only once
+ */
+class JsonResourceHandler implements HttpHandler {
+
+	JsonResourceHandler(Controller controller) {
+		this.controller = controller;
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		String path   = exchange.getRequestURI().getPath();
+		log.fine("received HTTP "+method+" request for "+path+" from "+exchange.getRemoteAddress());
+
+		try {
+			Headers headers = exchange.getResponseHeaders();
+			headers.set("Server", "AlarmPi");
+			headers.set("Access-Control-Allow-Origin", "*");
+
+			// path is /resource or /resource/id
+			String[] segments = path.substring(1).split("/", -1);
+			String   resource = segments[0];
+			String   id       = segments.length>1 ? segments[1] : null;
+			if(!resource.matches(RESOURCES) || segments.length>2 || (id!=null && (id.isEmpty() || resource.equals("sound") || resource.equals("batch")))) {
+				throw new RequestException(404, "resource "+path+" not found");
+			}
+
+			switch(method) {
+				case "OPTIONS":
+					headers.set("Allow", ALLOWED_METHODS);
+					headers.set("Access-Control-Allow-Methods", ALLOWED_METHODS);
+					headers.set("Access-Control-Allow-Headers", "Content-Type");
+					headers.set("Access-Control-Max-Age", "86400");
+					exchange.sendResponseHeaders(204, -1);
+					break;
+				case "GET":
+					sendJson(exchange, getResource(resource, id));
+					break;
+				case "PATCH":
+					if(resource.equals("batch") || (id==null && !resource.equals("sound"))) {
+						throw new RequestException(405, "PATCH not supported for "+path);
+					}
+					Batch batch = new Batch();
+					batch.add(resource, id, readObject(exchange));
+					batch.apply();
+					exchange.sendResponseHeaders(204, -1);
+					break;
+				case "POST":
+					if(!resource.equals("batch")) {
+						throw new RequestException(405, "POST not supported for "+path);
+					}
+					readBatch(readObject(exchange)).apply();
+					exchange.sendResponseHeaders(204, -1);
+					break;
+				default:
+					throw new RequestException(405, "method "+method+" not supported");
+			}
+		}
+		catch(RequestException e) {
+			log.warning("Unable to process HTTP "+method+" request for "+path+": "+e.getMessage());
+			if(e.status==405) {
+				exchange.getResponseHeaders().set("Allow", ALLOWED_METHODS);
+			}
+			exchange.sendResponseHeaders(e.status, -1);
+		}
+		catch(IOException e) {
+			log.info("HTTP connection to "+exchange.getRemoteAddress()+" failed: "+e.getMessage());
+		}
+		catch(RuntimeException e) {
+			log.severe("Exception during processing of HTTP request: "+e.getMessage());
+			try {
+				exchange.sendResponseHeaders(500, -1);
+			}
+			catch(IOException e2) {
+				// response already started
+			}
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	//
+	// private methods
+	//
+
+	/**
+	 * returns a resource
+	 * @param resource resource name
+	 * @param id       ID or null for all resources of this type
+	 * @return resource as Json
+	 * @throws RequestException if the resource does not exist
+	 */
+	private JsonStructure getResource(String resource,String id) throws RequestException {
+		switch(resource) {
+			case "alarms":
+				if(id==null) {
+					return Alarm.getAlarmListAsJsonArray();
+				}
+				return getAlarm(id).toJsonObject();
+			case "lights":
+				if(id==null) {
+					return controller.getLightStatusAsJsonArray();
+				}
+				return getLight(id).toJasonObject();
+			case "sound":
+				return controller.getSoundStatusAsJsonObject();
+			default:
+				throw new RequestException(404, "resource "+resource+" not found");
+		}
+	}
+
+	/**
+	 * parses a batch request
+	 * @param jsonObject batch request
+	 * @return validated batch
+	 * @throws RequestException if the batch is invalid
+	 */
+	private Batch readBatch(JsonObject jsonObject) throws RequestException {
+		Batch batch = new Batch();
+		for(Map.Entry<String,JsonValue> entry:jsonObject.entrySet()) {
+			if(entry.getKey().equals("sound")) {
+				batch.add("sound", null, asObject(entry.getValue()));
+			}
+			else if(entry.getKey().equals("alarms") || entry.getKey().equals("lights")) {
+				for(Map.Entry<String,JsonValue> resource:asObject(entry.getValue()).entrySet()) {
+					batch.add(entry.getKey(), resource.getKey(), asObject(resource.getValue()));
+				}
+			}
+			else {
+				throw new RequestException(400, "unknown batch entry "+entry.getKey());
+			}
+		}
+
+		return batch;
+	}
+
+	/**
+	 * @param id alarm ID
+	 * @return alarm
+	 * @throws RequestException if the alarm does not exist
+	 */
+	private static Alarm getAlarm(String id) throws RequestException {
+		try {
+			Alarm alarm = Alarm.getAlarmSnapshot().getAlarm(UUID.fromString(id));
+			if(alarm!=null) {
+				return alarm;
+			}
+		}
+		catch(IllegalArgumentException e) {
+			// no valid UUID
+		}
+		throw new RequestException(404, "alarm "+id+" not found");
+	}
+
+	/**
+	 * @param id light ID
+	 * @return light
+	 * @throws RequestException if the light does not exist
+	 */
+	private LightControl getLight(String id) throws RequestException {
+		try {
+			int lightId = Integer.parseInt(id);
+			for(LightControl light:controller.getLightControlList()) {
+				if(light.getId()==lightId) {
+					return light;
+				}
+			}
+		}
+		catch(NumberFormatException e) {
+			// no valid light ID
+		}
+		throw new RequestException(404, "light "+id+" not found");
+	}
+
+	/**
+	 * reads the Json object in the request body
+	 * @param exchange HTTP exchange
+	 * @return Json object
+	 * @throws RequestException if the body is too large or no Json object
+	 * @throws IOException
+	 */
+	private static JsonObject readObject(HttpExchange exchange) throws RequestException, IOException {
+		byte[] body = JsonRequestHandler.readBody(exchange.getRequestBody());
+		if(body==null) {
+			throw new RequestException(413, "request body exceeds max. length");
+		}
+		JsonObject jsonObject = JsonRequestHandler.parseRequest(body, null);
+		if(jsonObject==null) {
+			throw new RequestException(400, "request body is no valid Json object");
+		}
+
+		return jsonObject;
+	}
+
+	/**
+	 * sends a Json response
+	 * @param exchange  HTTP exchange
+	 * @param structure Json to send
+	 * @throws IOException
+	 */
+	private static void sendJson(HttpExchange exchange,JsonStructure structure) throws IOException {
+		byte[] body = structure.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+		exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+		if(body.length>=JsonServer.GZIP_MIN_SIZE && JsonServer.acceptsGzip(exchange.getRequestHeaders())) {
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			body = JsonServer.gzip(body);
+		}
+		exchange.sendResponseHeaders(200, body.length);
+		try(OutputStream stream = exchange.getResponseBody()) {
+			stream.write(body);
+		}
+	}
+
+	private static JsonObject asObject(JsonValue value) throws RequestException {
+		if(value.getValueType()!=JsonValue.ValueType.OBJECT) {
+			throw new RequestException(400, "Json object expected: "+value);
+		}
+		return value.asJsonObject();
+	}
+
+	//
+	// private members
+	//
+	private static final Logger log = Logger.getLogger( JsonResourceHandler.class.getName() );
+
+	private static final String ALLOWED_METHODS = "GET, PATCH, POST, OPTIONS";
+	private static final String RESOURCES       = "alarms|lights|sound|batch";   // pattern of valid resource names
+
+	// private exception for requests which cannot be processed, carries the HTTP status
+	private static class RequestException extends Exception {
+		RequestException(int status,String message) {
+			super(message);
+			this.status = status;
+		}
+
+		private static final long serialVersionUID = 1L;
+		private final int         status;               // HTTP status code
+	}
+
+	// private class collecting the validated modifications of a request
+	private class Batch {
+		/**
+		 * validates a modification and adds it to the batch
+		 * @param resource resource name
+		 * @param id       resource ID or null
+		 * @param patch    properties to modify
+		 * @throws RequestException if the resource does not exist or a property is invalid
+		 */
+		void add(String resource,String id,JsonObject patch) throws RequestException {
+			switch(resource) {
+				case "alarms":
+					alarms.put(getAlarm(id).getId(), patch);
+					break;
+				case "lights":
+					LightControl light = getLight(id);
+					if(!patch.containsKey("brightness") && !patch.containsKey("colourTemperature")) {
+						throw new RequestException(400, "light patch must contain brightness or colourTemperature: "+patch);
+					}
+					for(Map.Entry<String,JsonValue> entry:patch.entrySet()) {
+						JsonValue value = entry.getValue();
+						if(!(value instanceof JsonNumber) || !((JsonNumber)value).isIntegral()) {
+							throw new RequestException(400, "invalid light property "+entry.getKey());
+						}
+						int number = ((JsonNumber)value).intValue();
+						switch(entry.getKey()) {
+							case "brightness":
+								if(number<0 || number>100) {
+									throw new RequestException(400, "brightness must be 0..100: "+number);
+								}
+								break;
+							case "colourTemperature":
+								if(!light.supportsEffects()) {
+									throw new RequestException(400, "light "+id+" does not support colour temperature");
+								}
+								if(number<ColourTemperatureEffect.KELVIN_MIN || number>ColourTemperatureEffect.KELVIN_MAX) {
+									throw new RequestException(400, "colour temperature out of range: "+number);
+								}
+								break;
+							case "transitionTime":
+								if(!patch.containsKey("colourTemperature") || number<0) {
+									throw new RequestException(400, "transitionTime must not be negative and requires colourTemperature");
+								}
+								break;
+							default:
+								throw new RequestException(400, "invalid light property "+entry.getKey());
+						}
+					}
+					lights.put(light.getId(), patch);
+					break;
+				case "sound":
+					for(Map.Entry<String,JsonValue> entry:patch.entrySet()) {
+						JsonValue value = entry.getValue();
+						if(entry.getKey().equals("activeSound") && value instanceof JsonString) {
+							String name = ((JsonString)value).getString();
+							if(!name.isEmpty() && Configuration.getConfiguration().getSoundList().stream().noneMatch(s -> s.name.equals(name))) {
+								throw new RequestException(400, "sound "+name+" not found");
+							}
+						}
+						else if(!entry.getKey().equals("activeVolume") || !(value instanceof JsonNumber) || !((JsonNumber)value).isIntegral()) {
+							throw new RequestException(400, "invalid sound property "+entry.getKey());
+						}
+					}
+					sound = patch;
+					break;
+				default:
+					throw new RequestException(404, "resource "+resource+" not found");
+			}
+		}
+
+		/**
+		 * applies all modifications
+		 * @throws RequestException if an alarm setting is invalid. Nothing got applied in this case
+		 */
+		void apply() throws RequestException {
+			if(!alarms.isEmpty()) {
+				try {
+					Alarm.patchAlarms(alarms);
+				}
+				catch(IllegalArgumentException e) {
+					throw new RequestException(400, e.getMessage());
+				}
+			}
+			if(!lights.isEmpty()) {
+				controller.patchLights(lights);
+			}
+			if(sound!=null) {
+				controller.parseSoundStatusFromJsonObject(sound);
+			}
+		}
+
+		private final Map<UUID,JsonObject>    alarms = new LinkedHashMap<>();   // alarm properties to modify by alarm ID
+		private final Map<Integer,JsonObject> lights = new LinkedHashMap<>();   // light properties to modify by light ID
+		private JsonObject                    sound  = null;                    // sound properties to modify
+	}
+
+	private final Controller controller;
+}
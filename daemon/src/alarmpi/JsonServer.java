@@ -0,0 +1,200 @@
+package alarmpi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP server for the JSON interface with bounded resources.
+ * Requests get handled by a fixed number of threads with a bounded queue. If both are exhausted, the dispatcher
+ * thread handles the request itself and stops accepting new requests meanwhile. On top of that, the number of
+ * requests in progress is limited, requests above the limit get 503 right away.
+ * The number of open connections, including idle persistent ones, is limited by the JDK HTTP server itself:
+ * connections above the limit get closed right after they were accepted.
+ */
+class JsonServer {
+
+	/**
+	 * sets the timeouts and the connection limit of the JDK HTTP server. Must be called before the first server gets created
+	 * @param requestTimeout max. time in seconds to receive a request
+	 * @param idleTimeout    time in seconds after which idle persistent connections get closed
+	 * @param maxConnections max. number of open connections, including idle persistent connections and event streams
+	 */
+	static void setConnectionLimits(int requestTimeout,int idleTimeout,int maxConnections) {
+		System.setProperty("sun.net.httpserver.maxReqTime", Integer.toString(requestTimeout));
+		System.setProperty("sun.net.httpserver.idleInterval", Integer.toString(idleTimeout));
+		System.setProperty("jdk.httpserver.maxConnections", Integer.toString(maxConnections));
+		// headers and body are written separately, with Nagle's algorithm each response waits for the delayed ACK of the client (40ms)
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	/**
+	 * checks if the client accepts gzip compressed responses
+	 * @param requestHeaders request headers
+	 * @return true if the Accept-Encoding header allows gzip
+	 */
+	static boolean acceptsGzip(Headers requestHeaders) {
+		String acceptEncoding = requestHeaders.getFirst("Accept-Encoding");
+		if(acceptEncoding==null) {
+			return false;
+		}
+
+		for(String coding:acceptEncoding.split(",")) {
+			String[] parameters = coding.split(";");
+			String   name       = parameters[0].trim();
+			if(name.equalsIgnoreCase("gzip") || name.equals("*")) {
+				// q=0 means not acceptable
+				return parameters.length<2 || !parameters[1].trim().matches("q=0(\\.0*)?");
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * compresses data with gzip
+	 * @param data data to compress
+	 * @return compressed data
+	 */
+	static byte[] gzip(byte[] data) {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length/4+64);
+		try(GZIPOutputStream stream = new GZIPOutputStream(compressed)) {
+			stream.write(data);
+		}
+		catch(IOException e) {
+			// cannot happen for a byte array stream
+			throw new UncheckedIOException(e);
+		}
+
+		return compressed.toByteArray();
+	}
+
+	/**
+	 * constructor
+	 * @param address       address to bind to
+	 * @param threadCount   number of request handler threads
+	 * @param queueSize     max. number of requests waiting for a handler thread
+	 * @param maxActive     max. number of requests in progress
+	 * @throws IOException if the server socket cannot be created
+	 */
+	JsonServer(InetSocketAddress address,int threadCount,int queueSize,int maxActive) throws IOException {
+		AtomicInteger threadIndex = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+			Thread thread = new Thread(runnable, "HTTP handler "+threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+
+		limitFilter = new LimitFilter(maxActive);
+
+		server = HttpServer.create(address, 0);
+		server.setExecutor(executor);
+
+		log.config("HTTP server created, threads="+threadCount+" queue="+queueSize+" maxActive="+maxActive);
+	}
+
+	/**
+	 * adds a handler for a path. Its requests are subject to the request limit
+	 * @param path    path
+	 * @param handler handler
+	 */
+	void createContext(String path,HttpHandler handler) {
+		server.createContext(path, handler).getFilters().add(limitFilter);
+	}
+
+	/**
+	 * @return port the server listens on
+	 */
+	int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * starts the server
+	 */
+	void start() {
+		server.start();
+		log.info("HTTP server started on port "+getPort());
+	}
+
+	/**
+	 * stops the server, waiting at most one second for requests in progress
+	 */
+	void stop() {
+		server.stop(1);
+		executor.shutdownNow();
+		log.info("HTTP server stopped");
+	}
+
+	//
+	// private members
+	//
+	private static final Logger log = Logger.getLogger( JsonServer.class.getName() );
+
+	static final int GZIP_MIN_SIZE = 512;   // responses smaller than this are not worth compressing
+
+	// private filter limiting the number of requests in progress and recording metrics
+	private static class LimitFilter extends Filter {
+		LimitFilter(int maxActive) {
+			permits = new Semaphore(maxActive);
+			Metrics.gauge("http.activeRequests", () -> maxActive-permits.availablePermits());
+		}
+
+		@Override
+		public void doFilter(HttpExchange exchange,Chain chain) throws IOException {
+			if(!permits.tryAcquire()) {
+				log.warning("too many HTTP requests in progress, rejecting request from "+exchange.getRemoteAddress());
+				rejectedCount.increment();
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				exchange.sendResponseHeaders(503, -1);
+				exchange.close();
+				return;
+			}
+
+			// a response without body (304, HEAD) completes the exchange right away. If the request body was not read
+			// to the end by then, the server closes the persistent connection. GET and HEAD requests have no body
+			String method = exchange.getRequestMethod();
+			if(method.equals("GET") || method.equals("HEAD")) {
+				exchange.getRequestBody().close();
+			}
+
+			long start = System.nanoTime();
+			try {
+				chain.doFilter(exchange);
+			}
+			finally {
+				permits.release();
+				timer.record(System.nanoTime()-start);
+			}
+		}
+
+		@Override
+		public String description() {
+			return "limits the number of requests in progress";
+		}
+
+		private final Semaphore     permits;                                          // one permit per request in progress
+		private final Metrics.Timer timer         = Metrics.timer("http.request");     // request handling time
+		private final LongAdder     rejectedCount = Metrics.counter("http.rejected");  // requests rejected with 503
+	}
+
+	private final HttpServer         server;        // JDK HTTP server
+	private final ThreadPoolExecutor executor;      // request handler threads
+	private final LimitFilter        limitFilter;   // limits requests in progress
+}
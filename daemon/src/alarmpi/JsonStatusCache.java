@@ -0,0 +1,197 @@
+package alarmpi;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import javax.json.JsonValue;
+
+/**
+ * Caches the serialized status document of the JSON server.
+ * The document is a Json object made of fragments (alarms, sounds, lights ...). Each fragment has a key,
+ * typically the version of the store it comes from, and only gets serialized again when its key changed.
+ * Every new document gets a new entity tag, so pollers can use If-None-Match and get 304 as long as
+ * nothing changed. The gzip compressed document is created once on first request and has its own entity tag.
+ */
+class JsonStatusCache {
+
+	/**
+	 * serialized status document
+	 */
+	static final class Document {
+		private Document(String json,String entityTag) {
+			this.json      = json;
+			this.bytes     = json.getBytes(StandardCharsets.UTF_8);
+			this.entityTag = entityTag;
+		}
+
+		/**
+		 * @return the document as Json string
+		 */
+		String getJson() {
+			return json;
+		}
+
+		/**
+		 * @return the document as UTF-8 encoded bytes
+		 */
+		byte[] getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return entity tag of the document, including the quotes
+		 */
+		String getEntityTag() {
+			return entityTag;
+		}
+
+		/**
+		 * @return the document as gzip compressed UTF-8 bytes or null if it is too small to be worth compressing
+		 */
+		synchronized byte[] getGzipBytes() {
+			if(gzipBytes==null && bytes.length>=JsonServer.GZIP_MIN_SIZE) {
+				gzipBytes = JsonServer.gzip(bytes);
+			}
+			return gzipBytes;
+		}
+
+		/**
+		 * @return entity tag of the gzip compressed document, including the quotes
+		 */
+		String getGzipEntityTag() {
+			return gzipEntityTag(entityTag);
+		}
+
+		private final String json;               // document as Json string
+		private final byte[] bytes;              // document as UTF-8 bytes
+		private final String entityTag;          // entity tag
+		private byte[]       gzipBytes = null;   // gzip compressed document, created on first request
+	}
+
+	/**
+	 * @param entityTag entity tag including the quotes
+	 * @return entity tag of the gzip compressed variant
+	 */
+	static String gzipEntityTag(String entityTag) {
+		return entityTag.substring(0, entityTag.length()-1)+"-gzip\"";
+	}
+
+	/**
+	 * adds a fragment to the document. Fragments appear in the order they got added
+	 * @param name  property name of the fragment
+	 * @param key   supplies a key that changes whenever the value changes, e.g. a version counter
+	 * @param value supplies the value, only called if the key changed
+	 */
+	synchronized void addFragment(String name,Supplier<Object> key,Supplier<JsonValue> value) {
+		fragmentList.add(new Fragment(name, key, value));
+		document = null;
+	}
+
+	/**
+	 * @return the current status document. Only fragments with a changed key get serialized again
+	 */
+	synchronized Document getDocument() {
+		boolean changed = document==null;
+		for(Fragment fragment:fragmentList) {
+			changed = fragment.update() || changed;
+		}
+
+		if(changed) {
+			StringBuilder json = new StringBuilder("{");
+			for(Fragment fragment:fragmentList) {
+				if(json.length()>1) {
+					json.append(',');
+				}
+				json.append(fragment.prefix).append(fragment.json);
+			}
+			json.append('}');
+
+			documentVersion++;
+			document = new Document(json.toString(), "\""+EPOCH+"-"+documentVersion+"\"");
+			log.fine("status document rebuilt, entity tag="+document.getEntityTag());
+		}
+
+		return document;
+	}
+
+	/**
+	 * checks if a client already has the current document
+	 * @param ifNoneMatch value of the If-None-Match header or null
+	 * @param document    current document
+	 * @return true if the client copy is still valid
+	 */
+	static boolean matches(String ifNoneMatch,Document document) {
+		return matches(ifNoneMatch, document.getEntityTag()) || matches(ifNoneMatch, document.getGzipEntityTag());
+	}
+
+	/**
+	 * checks if a client already has a resource
+	 * @param ifNoneMatch value of the If-None-Match header or null
+	 * @param entityTag   entity tag of the current resource
+	 * @return true if the client copy is still valid
+	 */
+	static boolean matches(String ifNoneMatch,String entityTag) {
+		if(ifNoneMatch==null) {
+			return false;
+		}
+
+		for(String tag:ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if(tag.equals("*") || tag.equals(entityTag) || tag.equals("W/"+entityTag)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	//
+	// private members
+	//
+	private static final Logger log = Logger.getLogger( JsonStatusCache.class.getName() );
+
+	// part of each entity tag, so tags from before a restart never match
+	private static final String EPOCH = Long.toHexString(System.currentTimeMillis());
+
+	// private class holding one fragment of the document
+	private static class Fragment {
+		Fragment(String name,Supplier<Object> key,Supplier<JsonValue> value) {
+			this.prefix = "\""+name+"\":";
+			this.key    = key;
+			this.value  = value;
+		}
+
+		/**
+		 * serializes the fragment again if its key changed
+		 * @return true if the serialized value changed
+		 */
+		boolean update() {
+			Object newKey = key.get();
+			if(json!=null && newKey.equals(lastKey)) {
+				return false;
+			}
+
+			String newJson = value.get().toString();
+			lastKey = newKey;
+			if(newJson.equals(json)) {
+				return false;
+			}
+			json = newJson;
+
+			return true;
+		}
+
+		private final String              prefix;           // property name including quotes and colon
+		private final Supplier<Object>    key;              // supplies the current key
+		private final Supplier<JsonValue> value;            // supplies the current value
+		private Object                    lastKey = null;   // key of the serialized value
+		private String                    json    = null;   // serialized value
+	}
+
+	private final List<Fragment> fragmentList    = new LinkedList<>();   // all fragments in document order
+	private Document             document        = null;                 // current document
+	private long                 documentVersion = 0;                    // incremented with each new document
+}
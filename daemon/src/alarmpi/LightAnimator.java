@@ -0,0 +1,282 @@
+package alarmpi;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Drives brightness transitions (dim up, dim down, crossfade) of all lights from one shared timer.
+ * All running transitions get rendered in the same frame, so lights dimming in parallel stay
+ * synchronized. The timer only runs while at least one transition is active.
+ * Each light can have at most one transition at a time, starting a new one replaces the running one.
+ */
+class LightAnimator {
+
+	/**
+	 * easing curves, mapping the elapsed time (0...1) to the progress of the brightness change (0...1)
+	 */
+	enum Easing {
+		LINEAR {
+			@Override
+			double apply(double x) {
+				return x;
+			}
+		},
+		EASE_IN {
+			@Override
+			double apply(double x) {
+				return x*x;
+			}
+		},
+		EASE_OUT {
+			@Override
+			double apply(double x) {
+				return 1.0-(1.0-x)*(1.0-x);
+			}
+		},
+		EASE_IN_OUT {
+			@Override
+			double apply(double x) {
+				return x<0.5 ? 2.0*x*x : 1.0-2.0*(1.0-x)*(1.0-x);
+			}
+		};
+
+		/**
+		 * applies the easing curve
+		 * @param x elapsed time, normalized to 0...1
+		 * @return progress of the transition, normalized to 0...1
+		 */
+		abstract double apply(double x);
+	}
+
+	/**
+	 * returns the singleton animator object, using the frame rate from the configuration
+	 * @return animator object
+	 */
+	static synchronized LightAnimator getAnimator() {
+		if(object==null) {
+			object = new LightAnimator(Configuration.getConfiguration().getLightFrameRate());
+		}
+
+		return object;
+	}
+
+	/**
+	 * constructor
+	 * @param frameRate number of frames per second
+	 */
+	LightAnimator(int frameRate) {
+		if(frameRate<1) {
+			log.warning("invalid frame rate "+frameRate+", using "+DEFAULT_FRAME_RATE);
+			frameRate = DEFAULT_FRAME_RATE;
+		}
+		framePeriod = TimeUnit.SECONDS.toNanos(1)/frameRate;
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "LightAnimator");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		log.fine("light animator created with frame rate "+frameRate);
+	}
+
+	/**
+	 * dims a light up from 0 to the specified final brightness. The brightness only gets increased,
+	 * so the transition has no effect as long as the light is already brighter
+	 * @param light        light to dim
+	 * @param finalPercent final brightness in percent
+	 * @param seconds      time from start to final brightness in seconds
+	 */
+	void dimUp(LightControl light,double finalPercent,int seconds) {
+		start(new Transition(light, 0.0, finalPercent, seconds, Easing.LINEAR, true));
+	}
+
+	/**
+	 * dims a light down from its actual brightness to off
+	 * @param light   light to dim
+	 * @param seconds time until the light is off in seconds
+	 */
+	void dimDown(LightControl light,int seconds) {
+		start(new Transition(light, light.getBrightness(), 0.0, seconds, Easing.EASE_OUT, false));
+	}
+
+	/**
+	 * fades a light from its actual brightness to the specified target brightness
+	 * @param light         light to fade
+	 * @param targetPercent target brightness in percent
+	 * @param seconds       duration of the transition in seconds
+	 * @param easing        easing curve
+	 */
+	void crossfade(LightControl light,double targetPercent,int seconds,Easing easing) {
+		start(new Transition(light, light.getBrightness(), targetPercent, seconds, easing, false));
+	}
+
+	/**
+	 * renders an effect on a light
+	 * @param light   light to render the effect on
+	 * @param effect  effect to render
+	 * @param seconds duration of the effect in seconds
+	 */
+	void startEffect(LightControl light,LightEffect effect,int seconds) {
+		start(new Transition(light, effect, seconds));
+	}
+
+	/**
+	 * cancels the transition of a light (if any). Once this method returns, the transition
+	 * does not change the light anymore
+	 * @param light light for which the transition gets cancelled
+	 */
+	void cancel(LightControl light) {
+		Transition transition = transitions.remove(light);
+		if(transition!=null) {
+			log.fine("cancelling transition for light "+light.getName());
+			transition.cancel();
+		}
+	}
+
+	/**
+	 * checks if a transition is running for a light
+	 * @param light light to check
+	 * @return true if a transition is running
+	 */
+	boolean isAnimating(LightControl light) {
+		return transitions.containsKey(light);
+	}
+
+	//
+	// private methods
+	//
+
+	/**
+	 * starts a transition, replacing any running transition of the same light
+	 * @param transition transition to start
+	 */
+	private void start(Transition transition) {
+		log.fine("starting transition for light "+transition.light.getName()+" from "+transition.from+"% to "+transition.to+"%"
+				+" duration="+TimeUnit.NANOSECONDS.toMillis(transition.duration)+"ms easing="+transition.easing);
+
+		Transition previous = transitions.put(transition.light, transition);
+		if(previous!=null) {
+			previous.cancel();
+		}
+
+		synchronized(this) {
+			if(frameTask==null) {
+				frameTask = scheduler.scheduleAtFixedRate(this::renderFrame, 0, framePeriod, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+
+	/**
+	 * renders one frame of all running transitions
+	 */
+	private void renderFrame() {
+		final long now = System.nanoTime();
+
+		for(Transition transition:transitions.values()) {
+			try {
+				if(transition.render(now)) {
+					transitions.remove(transition.light, transition);
+					log.fine("transition for light "+transition.light.getName()+" finished");
+				}
+			}
+			catch(Exception e) {
+				log.severe("Exception during rendering of transition for light "+transition.light.getName()+": "+e.getMessage());
+				transitions.remove(transition.light, transition);
+			}
+		}
+
+		// stop the timer when idle. Checked under the lock so a concurrent start cannot get lost
+		synchronized(this) {
+			if(transitions.isEmpty() && frameTask!=null) {
+				frameTask.cancel(false);
+				frameTask = null;
+			}
+		}
+	}
+
+	//
+	// private members
+	//
+	private static final Logger log = Logger.getLogger( LightAnimator.class.getName() );
+
+	private static final int      DEFAULT_FRAME_RATE = 25;     // default number of frames per second
+	private static LightAnimator  object             = null;   // singleton object
+
+	// private class describing a single transition
+	private static class Transition {
+		Transition(LightControl light,double from,double to,int seconds,Easing easing,boolean increaseOnly) {
+			this.light        = light;
+			this.from         = from;
+			this.to           = to;
+			this.duration     = TimeUnit.SECONDS.toNanos(Math.max(seconds, 0));
+			this.easing       = easing;
+			this.increaseOnly = increaseOnly;
+			this.effect       = null;
+			this.startTime    = System.nanoTime();
+		}
+
+		Transition(LightControl light,LightEffect effect,int seconds) {
+			this.light        = light;
+			this.from         = effect.getBrightness(0.0);
+			this.to           = effect.getBrightness(1.0);
+			this.duration     = TimeUnit.SECONDS.toNanos(Math.max(seconds, 0));
+			this.easing       = Easing.LINEAR;
+			this.increaseOnly = false;
+			this.effect       = effect;
+			this.startTime    = System.nanoTime();
+		}
+
+		/**
+		 * renders the brightness for the specified point in time
+		 * @param now actual time as returned by System.nanoTime
+		 * @return true if the transition is finished
+		 */
+		synchronized boolean render(long now) {
+			if(cancelled) {
+				return true;
+			}
+
+			double x = duration>0 ? Math.min((double)(now-startTime)/(double)duration, 1.0) : 1.0;
+			if(effect!=null) {
+				light.renderEffect(effect, x);
+
+				return x>=1.0;
+			}
+
+			double brightness = from+(to-from)*easing.apply(x);
+			if(!increaseOnly || brightness>light.getBrightness()) {
+				light.applyFrame(brightness);
+			}
+
+			return x>=1.0;
+		}
+
+		/**
+		 * cancels the transition. Blocks while a frame of this transition is being rendered
+		 */
+		synchronized void cancel() {
+			cancelled = true;
+		}
+
+		final LightControl light;          // light to control
+		final double       from;           // start brightness in percent
+		final double       to;             // final brightness in percent
+		final long         duration;       // duration in nanoseconds
+		final Easing       easing;         // easing curve
+		final boolean      increaseOnly;   // if true, brightness gets only increased
+		final LightEffect  effect;         // effect to render or null for brightness transitions
+		final long         startTime;      // start time as returned by System.nanoTime
+		boolean            cancelled = false;
+	}
+
+	private final long                           framePeriod;                              // time between two frames in nanoseconds
+	private final ScheduledExecutorService       scheduler;                                // timer thread rendering all frames
+	private final Map<LightControl,Transition>   transitions = new ConcurrentHashMap<>();  // running transition of each light
+	private ScheduledFuture<?>                   frameTask   = null;                       // periodic frame task, null while idle
+}
@@ -74,6 +74,67 @@ abstract class LightControl {
 	 */
 	abstract void dimUp(double finalPercent,int seconds);
 	
+	/**
+	 * sets the brightness for one frame of a transition rendered by the LightAnimator.
+	 * Gets called from the animator thread, so implementations must not cancel transitions
+	 * or wait for locks held while cancelling them
+	 * @param percentage brightness in percent
+	 */
+	void applyFrame(double percentage) {
+		setBrightness(percentage);
+	}
+	
+	/**
+	 * returns if the light can render effects with individual colours per LED
+	 * @return true if effects are supported
+	 */
+	boolean supportsEffects() {
+		return false;
+	}
+	
+	/**
+	 * starts an effect. Lights not supporting effects just set the final brightness of the effect
+	 * @param effect  effect to start
+	 * @param seconds duration of the effect in seconds
+	 */
+	void startEffect(LightEffect effect,int seconds) {
+		setBrightness(effect.getBrightness(1.0));
+	}
+	
+	/**
+	 * returns the colour temperature. Lights without colour support return 0
+	 * @return colour temperature in Kelvin
+	 */
+	int getColourTemperature() {
+		return 0;
+	}
+	
+	/**
+	 * fades to a colour temperature. Lights without colour support just set the brightness
+	 * @param kelvin     target colour temperature in Kelvin
+	 * @param percentage target brightness in percent
+	 * @param seconds    duration of the transition in seconds
+	 */
+	void setColourTemperature(int kelvin,double percentage,int seconds) {
+		setBrightness(percentage);
+	}
+	
+	/**
+	 * renders one frame of an effect. Gets called from the LightAnimator thread, see applyFrame
+	 * @param effect   effect to render
+	 * @param progress progress of the effect, 0...1
+	 */
+	void renderEffect(LightEffect effect,double progress) {
+	}
+	
+	/**
+	 * reports the actual brightness and colour temperature to the LightStatePublisher. Must be called by all
+	 * implementations whenever the brightness or colour temperature changed
+	 */
+	final void reportBrightness() {
+		LightStatePublisher.getPublisher().report(this, getBrightness(), getColourTemperature());
+	}
+	
 	/**
 	 * Creates a JsonObject representation of the alarm
 	 * @return JsonObject representation of the alarm
@@ -83,6 +144,9 @@ abstract class LightControl {
 		builder.add("id", id);
 		builder.add("name", name);
 		builder.add("brightness", (int)getBrightness());
+		if(supportsEffects()) {
+			builder.add("colourTemperature", getColourTemperature());
+		}
 		
 		JsonObject jsonObject = builder.build();
 		
@@ -40,6 +40,8 @@ public class LightControlMqtt extends LightControl {
 		if(topicsDefined) {
 			log.fine("switching MQTT light off: "+getName());
 			MqttClient.getMqttClient().publish(mqttTopicOff, mqttValueOff);
+			isOn = false;
+			reportBrightness();
 		}
 		else {
 			log.warning("unable to switch off MQTT light - topics not defined");
@@ -59,6 +61,7 @@ public class LightControlMqtt extends LightControl {
 				MqttClient.getMqttClient().publish(mqttTopicOff, mqttValueOff);
 				isOn = false;
 			}
+			reportBrightness();
 		}
 		else {
 			log.warning("unable to switch off MQTT light - topics not defined");
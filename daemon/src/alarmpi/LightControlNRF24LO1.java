@@ -13,12 +13,23 @@ public class LightControlNRF24LO1 extends LightControl {
 
 	/**
 	 * constructor
-	 * @param id unique light ID
+	 * @param id             unique light ID
+	 * @param name           light name
+	 * @param repeatCount    number of times each command gets transmitted
+	 * @param repeatInterval time between two transmissions in milliseconds
+	 * @param pi4j           pi4j context
 	 */
-	LightControlNRF24LO1(int id,String name, Context pi4j) {
+	LightControlNRF24LO1(int id,String name,int repeatCount,int repeatInterval,Context pi4j) {
 		super(id,name);
 		
-		nRF204Control    = new NRF24LO1Control(pi4j);
+		this.repeatCount    = repeatCount;
+		this.repeatInterval = repeatInterval;
+		nRF204Control       = new NRF24LO1Control(pi4j);
+		
+		// all radio access happens on this thread
+		radioThread = new Thread(this::runRadio, "nRF24LO1 radio");
+		radioThread.setDaemon(true);
+		radioThread.start();
 	}
 	
 	@Override
@@ -59,7 +70,68 @@ public class LightControlNRF24LO1 extends LightControl {
 		sendCommand(CMD_ON);
 	}
 
-	private void sendCommand(int command) {
+	/**
+	 * hands a command over to the radio thread. A command which is still waiting or being
+	 * transmitted gets superseded
+	 * @param command command to send
+	 */
+	private void sendCommand(short command) {
+		if (command!=CMD_ON && command!=CMD_OFF) {
+			log.severe("Unknown command in sendCommand: " + command);
+			return;
+		}
+		lastCommandWasOn = command==CMD_ON;
+		reportBrightness();
+		
+		synchronized (this) {
+			if (pendingCommand!=null) {
+				log.fine("command "+pendingCommand+" superseded by command "+command+" before transmission");
+			}
+			pendingCommand = command;
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * main loop of the radio thread
+	 */
+	private void runRadio() {
+		boolean initialized = false;
+		
+		try {
+			while (true) {
+				short command;
+				synchronized (this) {
+					while (pendingCommand==null) {
+						wait();
+					}
+					command        = pendingCommand;
+					pendingCommand = null;
+				}
+				
+				// the device only needs to be initialized once
+				if (!initialized) {
+					initialized = nRF204Control.init();
+					if (!initialized) {
+						log.severe("Unable to initialize nRF24LO1 Control Object");
+						continue;
+					}
+				}
+				
+				transmit(command);
+			}
+		}
+		catch (InterruptedException e) {
+			log.info("nRF24LO1 radio thread interrupted");
+		}
+	}
+	
+	/**
+	 * transmits a command repeatCount times or until a new command arrives
+	 * @param command command to transmit
+	 * @throws InterruptedException
+	 */
+	private void transmit(short command) throws InterruptedException {
 		final short HEADER_LENGTH = 3;
 		final short HEADER_BYTE = 0x55;
 
@@ -67,66 +139,51 @@ public class LightControlNRF24LO1 extends LightControl {
 		for (short i = 0; i < HEADER_LENGTH; i++) {
 			data[i] = HEADER_BYTE;
 		}
+		data[HEADER_LENGTH] = command;
+		
+		log.fine("transmitting command "+command+" "+repeatCount+" times");
+		
+		// Defaults after init are 2.402 GHz (channel 2), 2Mbps, 0dBm
+		try {
+			nRF204Control.setChannel(1);
 
-		switch (command) {
-		case CMD_ON:
-			data[HEADER_LENGTH] = CMD_ON;
-			lastCommandWasOn = true;
-			break;
-		case CMD_OFF:
-			data[HEADER_LENGTH] = CMD_OFF;
-			lastCommandWasOn = false;
-			break;
-		default:
-			log.severe("Unknown command in sendCommand: " + command);
-			return;
-		}
+			nRF204Control.setRF(NRF24LO1Control.DataRate.DataRate2Mbps,
+					NRF24LO1Control.TransmitPower.TransmitPower0dBm);
 
-		if (!nRF204Control.init()) {
-			log.severe("Unable to initialize nRF24LO1 Control Object");
-			return;
-		}
-		
-		new Thread(new Runnable() {
-			
-			@Override
-			public void run() {
-				// Defaults after init are 2.402 GHz (channel 2), 2Mbps, 0dBm
-				try {
-					nRF204Control.setChannel(1);
-
-					nRF204Control.setRF(NRF24LO1Control.DataRate.DataRate2Mbps,
-							NRF24LO1Control.TransmitPower.TransmitPower0dBm);
-
-					// send command for 10 seconds
-					long start = System.nanoTime();
-					while ((System.nanoTime() - start) < 10E9) {
-						nRF204Control.send(data);
-						nRF204Control.waitPacketSent();
-
-						try {
-							Thread.sleep(10);
-						} catch (InterruptedException e) {
-						}
-					}
+			for (int repeat=0 ; repeat<repeatCount ; repeat++) {
+				nRF204Control.send(data);
+				nRF204Control.waitPacketSent();
 
-				} catch (IOException e) {
-					log.severe("IO Exception while talking to nRF24LO1: " + e.getMessage());
-				}
-				finally {
-					// back to idle again
-					try {
-						nRF204Control.setModeIdle();
+				// wait for the next repetition, a new command ends the transmission immediately
+				synchronized (this) {
+					if (pendingCommand==null) {
+						wait(repeatInterval);
+					}
+					if (pendingCommand!=null) {
+						log.fine("transmission of command "+command+" superseded by command "+pendingCommand+" after "+(repeat+1)+" repetitions");
+						return;
 					}
-					catch(IOException e1) {}
 				}
 			}
-		}).start();
+		} catch (IOException e) {
+			log.severe("IO Exception while talking to nRF24LO1: " + e.getMessage());
+		}
+		finally {
+			// back to idle again
+			try {
+				nRF204Control.setModeIdle();
+			}
+			catch(IOException e1) {}
+		}
 	}
 
 	private static final Logger log = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
 
-	private NRF24LO1Control nRF204Control    = null;
-	private boolean         lastCommandWasOn = false;
+	private final NRF24LO1Control nRF204Control;                    // radio device
+	private final Thread          radioThread;                      // thread doing all radio access
+	private final int             repeatCount;                      // number of transmissions of each command
+	private final int             repeatInterval;                   // time between two transmissions in milliseconds
+	private volatile boolean      lastCommandWasOn = false;         // last requested state
+	private Short                 pendingCommand   = null;          // command waiting for transmission or null
 
 }
@@ -12,7 +12,7 @@ import com.pi4j.io.spi.SpiMode;
  * This class controls a LED strip with WS2801 controller chips.
  * The LED strip is connected to the SPI interface of the Raspberry Pi.
  */
-public class LightControlWS2801 extends LightControl implements Runnable {
+public class LightControlWS2801 extends LightControl {
 
 	/**
 	 * Constructor
@@ -21,13 +21,21 @@ public class LightControlWS2801 extends LightControl implements Runnable {
 	 * @param skipFarEnd  number of LEDs to skip at the far end of the strip
 	 * @param skipNearEnd number of LEDs to skip at the near end of the strip
 	 * @param count       number of active LEDs that are actually used
+	 * @param sunrise     if true, dimUp renders a sunrise effect instead of just increasing the brightness
 	 * @param pi4j        PI4J context object
 	 */
-	public LightControlWS2801(int id, String name,int skipFarEnd,int skipNearEnd,int count,Context pi4j) {
+	public LightControlWS2801(int id, String name,int skipFarEnd,int skipNearEnd,int count,boolean sunrise,Context pi4j) {
 		super(id, name);
 		SKIP_NEAR_END = skipNearEnd;
 		SKIP_FAR_END  = skipFarEnd;
 		LED_COUNT     = count;
+		this.sunrise  = sunrise;
+		frame         = new byte[(SKIP_NEAR_END+SKIP_FAR_END+LED_COUNT)*3];
+		
+		if(pi4j==null) {
+			log.info("no pi4j context - WS2801 LedStrip not initialized");
+			return;
+		}
 		
 		try {
 	        SpiConfig spiDeviceConfig = Spi.newConfigBuilder(pi4j)
@@ -52,17 +60,15 @@ public class LightControlWS2801 extends LightControl implements Runnable {
 
 	@Override
 	void setOff() {
-		if(dimThread!=null) {
-			dimThread.interrupt();
-			try {
-				dimThread.join();
-				dimThread = null;
-			} catch (InterruptedException e) {}
-		}
+		LightAnimator.getAnimator().cancel(this);
 		
 		setPwm(0);
 	}
 
+	/**
+	 * sets the brightness. A running transition or effect gets cancelled, otherwise its next frame would
+	 * overwrite the brightness. The colour temperature set by setColourTemperature is kept
+	 */
 	@Override
 	public void setBrightness(double percentage) {
 		if(percentage<=0) {
@@ -72,34 +78,31 @@ public class LightControlWS2801 extends LightControl implements Runnable {
 			if(percentage>100) {
 				percentage = 100.0;
 			}
-			int pwm = 0;
-			// found the following relation between physical luminance power and perceived human lightness
-			if(percentage<=8.0) {
-				pwm = (int)((percentage/903.3)*(double)RANGE);
-			}
-			else {
-				pwm = (int)(Math.pow((percentage+16.0)/116.0, 3.0)*(double)RANGE);
+			LightAnimator.getAnimator().cancel(this);
+			
+			int kelvin = getColourTemperature();
+			if(kelvin!=DEFAULT_KELVIN) {
+				log.finest("setting brightness to "+(int)percentage+"% at "+kelvin+"K");
+				renderEffect(new ColourTemperatureEffect(kelvin, kelvin, percentage, percentage, WHITE_BALANCE), 1.0);
+				return;
 			}
 			
+			// conversion based on the relation between physical luminance power and perceived human lightness
+			int pwm = lightnessTable.getPwm(percentage);
+			
 			log.finest("setting brightness to "+(int)percentage+"% pwm="+pwm);;
 			setPwm(pwm);
 		}
 	}
+	
+	@Override
+	void applyFrame(double percentage) {
+		setPwm(percentage>0 ? lightnessTable.getPwm(percentage) : 0);
+	}
 
 	@Override
 	public double getBrightness() {
-		double brightness;
-		
-		if(pwmValue<(int)((8.0/903.3)*(double)RANGE)) {
-			brightness = ((double)pwmValue/(double)RANGE)*903.3;
-		}
-		else {
-			brightness = 116.0*Math.pow((double)pwmValue/(double)RANGE, 1.0/3.0)-16.0;
-		}
-		
-		if(brightness<0) {
-			brightness = 0.0;
-		}
+		double brightness = lightnessTable.getBrightness(pwmValue);
 		
 		log.finest("get Brightness returns "+brightness);
 		
@@ -107,60 +110,36 @@ public class LightControlWS2801 extends LightControl implements Runnable {
 	}
 	
 
+	/**
+	 * sets the PWM value of all LEDs with the neutral white pattern, this resets the colour temperature
+	 */
 	@Override
-	void setPwm(int pwmValue) {
+	synchronized void setPwm(int pwmValue) {
 		if(pwmValue<0) {
 			pwmValue = 0;
 		}
 		if(pwmValue>(RANGE-1)) {
 			pwmValue = RANGE-1;
 		}
-		this.pwmValue = pwmValue;
-		
-		byte data[] = new byte[(SKIP_NEAR_END+SKIP_FAR_END+LED_COUNT)*3];
-		
-		for(int i=0 ; i<SKIP_NEAR_END ; i++) {
-			data[i*3 + 0] = 0;
-			data[i*3 + 1] = 0;
-			data[i*3 + 2] = 0;
-		}
-		
-		final double offset[] = {-6.3,-4.2,-1.8,0.3};
-		int value[] = new int[4];
 		
-		for(int i=0 ; i<4 ; i++) {
-			value[i] = (byte)(Math.round((double)pwmValue/4.0+offset[i]));
-			value[i] = Integer.min(value[i], 255);
-			value[i] = Integer.max(value[i], 0);
-		}
-			
-			
-		for(int i=0 ; i<LED_COUNT ; i+=4) {
-			for(int j=0 ; j<4 ; j++) {
-				int index = i+j;
-				if(index < LED_COUNT) {
-					data[(SKIP_NEAR_END+index)*3 + 0] = (byte)value[j];
-					data[(SKIP_NEAR_END+index)*3 + 1] = (byte)Math.round(value[j]*GREEN_BLUE_SCALE);
-					data[(SKIP_NEAR_END+index)*3 + 2] = (byte)Math.round(value[j]*GREEN_BLUE_SCALE);
-				}
-			}
+		// nothing to do if the strip already shows this value
+		if(pwmValue==this.pwmValue && frameWritten) {
+			return;
 		}
+		this.pwmValue = pwmValue;
 		
-		for(int i=0 ; i<SKIP_FAR_END ; i++) {
-			data[(SKIP_NEAR_END+LED_COUNT+i)*3 + 0] = 0;
-			data[(SKIP_NEAR_END+LED_COUNT+i)*3 + 1] = 0;
-			data[(SKIP_NEAR_END+LED_COUNT+i)*3 + 2] = 0;
+		// copy the precomputed pattern of 4 LEDs into the active part of the frame. The skipped LEDs stay 0
+		kelvin = DEFAULT_KELVIN;
+		final int patternOffset = pwmValue*PATTERN_LENGTH;
+		for(int i=0 ; i<LED_COUNT ; i+=PATTERN_LEDS) {
+			int length = Integer.min(PATTERN_LEDS, LED_COUNT-i)*3;
+			System.arraycopy(PATTERNS, patternOffset, frame, (SKIP_NEAR_END+i)*3, length);
 		}
 		
-		try {
-			if(ws2801!=null) {
-				log.finest("writing to SPI. 10-bit PWM="+pwmValue+" 8-bit PMW values="+value[0]+" "+value[1]+" "+value[2]+" "+value[3]);
-				ws2801.write(data);
-			}
-		}
-		catch ( Pi4JException e) {
-			log.severe("Exception during spi write: "+e.getMessage());
-		}
+		log.finest("writing to SPI. 10-bit PWM="+pwmValue+" 8-bit PMW values="+(PATTERNS[patternOffset]&0xFF)+" "+(PATTERNS[patternOffset+3]&0xFF)
+				+" "+(PATTERNS[patternOffset+6]&0xFF)+" "+(PATTERNS[patternOffset+9]&0xFF));
+		frameWritten = writeFrame();
+		reportBrightness();
 	}
 
 	@Override
@@ -170,41 +149,103 @@ public class LightControlWS2801 extends LightControl implements Runnable {
 
 	@Override
 	void dimUp(double finalPercent, int seconds) {
-		// switch off and stop thread in case a thread is still running
+		// switch off and cancel a transition that might still be running
 		setOff();
 		
-		dimDuration      = seconds;
-		dimTargetPercent = finalPercent;
-		dimThread        = new Thread(this);
-		
-		log.fine("starting dimming thread");
-		dimThread.start();
+		if(sunrise) {
+			log.fine("starting sunrise, duration="+seconds+"s target="+finalPercent+"%");
+			startEffect(new SunriseEffect(finalPercent, WHITE_BALANCE), seconds);
+		}
+		else {
+			log.fine("starting dim up, duration="+seconds+"s target="+finalPercent+"%");
+			LightAnimator.getAnimator().dimUp(this, finalPercent, seconds);
+		}
+	}
+	
+	@Override
+	boolean supportsEffects() {
+		return true;
+	}
+	
+	@Override
+	void startEffect(LightEffect effect,int seconds) {
+		LightAnimator.getAnimator().startEffect(this, effect, seconds);
+	}
+	
+	@Override
+	synchronized int getColourTemperature() {
+		return kelvin;
 	}
 	
 	@Override
-	public void run() {
-		log.fine("dim up thread started, range="+RANGE+" duration="+dimDuration+"s target="+dimTargetPercent+"%");
+	void setColourTemperature(int kelvin,double percentage,int seconds) {
+		log.fine("fading to colour temperature "+kelvin+"K brightness="+percentage+"% duration="+seconds+"s");
 		
-		// increase brightness once per second
-		double stepSize = dimTargetPercent/(double)dimDuration;
+		// the lock must not be held while starting the effect, the animator renders with the lock of the previous transition
+		int fromKelvin;
+		synchronized(this) {
+			fromKelvin  = this.kelvin;
+			this.kelvin = kelvin;
+		}
+		reportBrightness();
+		startEffect(new ColourTemperatureEffect(fromKelvin, kelvin, getBrightness(), percentage, WHITE_BALANCE), seconds);
+	}
+	
+	@Override
+	synchronized void renderEffect(LightEffect effect,double progress) {
+		effect.render(progress, frame, SKIP_NEAR_END*3, LED_COUNT);
+		pwmValue = lightnessTable.getPwm(effect.getBrightness(progress));
 		
-		log.fine("dim up thread stepSize="+stepSize);
-		for(double p=0 ; p<=dimTargetPercent ; p+=stepSize) {
-			// only increase brightness
-			if(p>getBrightness()) {
-				setBrightness(p);
-			}
-			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				log.info("dimming thread interrupted");
+		// the frame does not match pwmValue anymore, so the next setPwm must write in any case
+		frameWritten = false;
+		writeFrame();
+		reportBrightness();
+	}
 
-				return;
+	//
+	// private methods
+	//
+	
+	/**
+	 * writes the frame to the LED strip
+	 * @return true if the frame got written
+	 */
+	private boolean writeFrame() {
+		try {
+			if(ws2801!=null) {
+				ws2801.write(frame);
+				return true;
 			}
 		}
-		log.fine("dim up thread finished");
+		catch ( Pi4JException e) {
+			log.severe("Exception during spi write: "+e.getMessage());
+		}
 		
-		dimThread = null;
+		return false;
+	}
+	
+	/**
+	 * creates the RGB patterns for all PWM values. 8 bit LED values get dithered
+	 * over 4 LEDs to provide 2 additional virtual bits
+	 * @return array with PATTERN_LENGTH bytes per PWM value
+	 */
+	private static byte[] createPatterns() {
+		final double offset[] = {-6.3,-4.2,-1.8,0.3};
+		byte patterns[] = new byte[RANGE*PATTERN_LENGTH];
+		
+		for(int pwm=0 ; pwm<RANGE ; pwm++) {
+			for(int j=0 ; j<PATTERN_LEDS ; j++) {
+				int value = (int)Math.round((double)pwm/4.0+offset[j]);
+				value = Integer.min(value, 255);
+				value = Integer.max(value, 0);
+				
+				patterns[pwm*PATTERN_LENGTH + j*3 + 0] = (byte)value;
+				patterns[pwm*PATTERN_LENGTH + j*3 + 1] = (byte)Math.round(value*GREEN_BLUE_SCALE);
+				patterns[pwm*PATTERN_LENGTH + j*3 + 2] = (byte)Math.round(value*GREEN_BLUE_SCALE);
+			}
+		}
+		
+		return patterns;
 	}
 
 	//
@@ -216,15 +257,23 @@ public class LightControlWS2801 extends LightControl implements Runnable {
 	
 	private static final int RANGE      = 1023;             // 8 real bits, plus 2 virtual bits by distributing over mutliple LEDs
 	private static final double GREEN_BLUE_SCALE = 0.6;
+	private static final int    PATTERN_LEDS     = 4;                // number of LEDs used to distribute the 2 virtual bits
+	private static final int    PATTERN_LENGTH   = PATTERN_LEDS*3;   // number of bytes of one pattern
+	private static final byte[] PATTERNS         = createPatterns(); // RGB bytes of 4 consecutive LEDs for each PWM value
+	private static final double[] WHITE_BALANCE  = {1.0,GREEN_BLUE_SCALE,GREEN_BLUE_SCALE};   // RGB scale factors for neutral white
+	private static final int    DEFAULT_KELVIN   = 6500;             // colour temperature of the plain white LED pattern
+	
+	private final LightnessTable lightnessTable = LightnessTable.getTable(0, RANGE);   // brightness <-> PWM conversion
 	
 	private final int SKIP_NEAR_END;   // number of LEDs to skip at the near end of the strip
 	private final int SKIP_FAR_END;    // number of LEDs to skip at the far end of the strip
 	private final int LED_COUNT;       // number of LEDs that are actually used
+	private final boolean sunrise;     // if true, dimUp renders a sunrise effect
 
+	private final byte[]           frame;                   // RGB bytes of all LEDs, written to SPI
+	private boolean                frameWritten = false;    // frame got written to SPI at least once
 	private int                    pwmValue;                // actual PWM value of each LED controlled thru me
-	private Thread                 dimThread        = null; // thread used for dimming
-	private int                    dimDuration      = 0;    // duration for dim up in seconds
-	private double                 dimTargetPercent = 0;    // target brightness in % for dim up
+	private int                    kelvin = DEFAULT_KELVIN; // actual colour temperature
 	
 	private Spi                    ws2801 = null;           // PI4J SPI device object
 }
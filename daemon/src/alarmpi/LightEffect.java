@@ -0,0 +1,24 @@
+package alarmpi;
+
+/**
+ * Interface for effects rendering individual colours per LED (pixel) of an LED strip.
+ * Effects get rendered by the LightAnimator, the progress of the effect is passed for each frame
+ */
+interface LightEffect {
+
+	/**
+	 * renders one frame of the effect into a frame buffer with 3 bytes (red, green, blue) per LED
+	 * @param progress progress of the effect, 0...1
+	 * @param frame    frame buffer
+	 * @param offset   offset of the first LED in the frame buffer
+	 * @param ledCount number of LEDs to render
+	 */
+	void render(double progress,byte[] frame,int offset,int ledCount);
+
+	/**
+	 * returns the overall brightness of the effect at the specified progress
+	 * @param progress progress of the effect, 0...1
+	 * @return brightness in percent
+	 */
+	double getBrightness(double progress);
+}
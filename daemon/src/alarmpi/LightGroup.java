@@ -0,0 +1,142 @@
+package alarmpi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Applies commands to a group of lights in parallel.
+ * Each light has its own executor lane, so commands to the same light keep their order
+ * while a slow light (MQTT, radio) does not delay the others. The completion latency
+ * of each light gets recorded in the Metrics when the command actually completes, also after
+ * a timeout. A light exceeding the timeout gets reported and counted separately
+ */
+class LightGroup {
+
+	/**
+	 * constructor
+	 * @param lights  lights in the group
+	 * @param timeout time in milliseconds after which a command to a single light is reported as timed out
+	 */
+	LightGroup(List<LightControl> lights,int timeout) {
+		this.timeout = timeout;
+
+		for(LightControl light:lights) {
+			lanes.add(new Lane(light));
+		}
+
+		log.fine("light group created with "+lanes.size()+" lights, timeout="+timeout+"ms");
+	}
+
+	/**
+	 * sets the brightness of all lights
+	 * @param percentage brightness in percent
+	 * @return future completing when all lights are done or timed out
+	 */
+	CompletableFuture<Void> setBrightness(double percentage) {
+		return apply("setBrightness "+percentage, light -> light.setBrightness(percentage));
+	}
+
+	/**
+	 * switches all lights off
+	 * @return future completing when all lights are done or timed out
+	 */
+	CompletableFuture<Void> setOff() {
+		return apply("setOff", light -> light.setOff());
+	}
+
+	/**
+	 * dims all lights up
+	 * @param finalPercent final brightness in percent
+	 * @param seconds      time from start to final brightness in seconds
+	 * @return future completing when all lights are done or timed out
+	 */
+	CompletableFuture<Void> dimUp(double finalPercent,int seconds) {
+		return apply("dimUp", light -> light.dimUp(finalPercent, seconds));
+	}
+
+	/**
+	 * applies a command to all lights in parallel
+	 * @param operation name of the operation (for logging)
+	 * @param command   command to execute for each light
+	 * @return future completing when all lights are done or timed out
+	 */
+	CompletableFuture<Void> apply(String operation,Consumer<LightControl> command) {
+		log.fine("applying "+operation+" to "+lanes.size()+" lights");
+
+		final long start = System.nanoTime();
+		CompletableFuture<?> futures[] = new CompletableFuture<?>[lanes.size()];
+		for(int index=0 ; index<lanes.size() ; index++) {
+			final Lane lane = lanes.get(index);
+
+			// the latency gets recorded when the command completes. orTimeout completes the future it is
+			// called on, so the timeout only applies to a copy and does not end up in the latency
+			CompletableFuture<Void> future = CompletableFuture.runAsync(() -> command.accept(lane.light), lane.executor);
+			future.whenComplete((result,exception) -> {
+				long latency = System.nanoTime()-start;
+				lane.latency.record(latency);
+
+				Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+				if(cause!=null) {
+					log.severe("light "+lane.light.getName()+": exception during "+operation+": "+cause.getMessage());
+				}
+				else {
+					log.finest("light "+lane.light.getName()+": "+operation+" done after "+TimeUnit.NANOSECONDS.toMillis(latency)+"ms");
+				}
+			});
+
+			futures[index] = future.copy()
+					.orTimeout(timeout, TimeUnit.MILLISECONDS)
+					.whenComplete((result,exception) -> {
+						if(exception instanceof TimeoutException) {
+							log.warning("light "+lane.light.getName()+": "+operation+" did not complete within "+timeout+"ms");
+							lane.timeouts.increment();
+						}
+					});
+		}
+
+		return CompletableFuture.allOf(futures).exceptionally(exception -> null);
+	}
+
+	/**
+	 * stops all executor lanes
+	 */
+	void shutdown() {
+		lanes.forEach(lane -> lane.executor.shutdownNow());
+	}
+
+	//
+	// private members
+	//
+	private static final Logger log = Logger.getLogger( LightGroup.class.getName() );
+
+	// private class with the executor of a single light
+	private static class Lane {
+		Lane(LightControl light) {
+			this.light    = light;
+			this.latency  = Metrics.timer("light."+light.getName()+".latency");
+			this.timeouts = Metrics.counter("light."+light.getName()+".timeouts");
+			this.executor = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "light "+light.getName());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		final LightControl    light;      // light controlled by this lane
+		final ExecutorService executor;   // executes all commands for this light
+		final Metrics.Timer   latency;    // completion latency of commands
+		final LongAdder       timeouts;   // number of commands exceeding the timeout
+	}
+
+	private final int        timeout;                      // timeout for a single light in milliseconds
+	private final List<Lane> lanes = new ArrayList<>();    // one lane per light
+}
@@ -0,0 +1,164 @@
+package alarmpi;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the brightness of all lights on MQTT and as event to HTTP clients.
+ * Lights only report their brightness and colour temperature, which is cheap enough to be done for every animation frame.
+ * Reports get coalesced per light (last value wins) and are published at most once per
+ * publish interval as retained topic light<id>/brightness and as light event, and only if the published value changed.
+ * The colour temperature is part of the light event only.
+ * For existing subscribers, the topic brightness still carries the brightness of the brightest light
+ */
+class LightStatePublisher {
+
+	/**
+	 * returns the singleton publisher object, using the publish interval from the configuration
+	 * @return publisher object
+	 */
+	static synchronized LightStatePublisher getPublisher() {
+		if(object==null) {
+			object = new LightStatePublisher(Configuration.getConfiguration().getLightPublishInterval());
+			
+			LightStatePublisher publisher = object;
+			Configuration.addListener("light state publisher", (previous,current,changedSections) -> {
+				if(changedSections.contains("lights")) {
+					publisher.interval = TimeUnit.MILLISECONDS.toNanos(current.getLightPublishInterval());
+				}
+			});
+		}
+
+		return object;
+	}
+
+	/**
+	 * constructor
+	 * @param interval minimum time between two publications in milliseconds
+	 */
+	private LightStatePublisher(int interval) {
+		this.interval    = TimeUnit.MILLISECONDS.toNanos(interval);
+		this.lastPublish = System.nanoTime()-this.interval;
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "LightStatePublisher");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		log.fine("light state publisher created with interval "+interval+"ms");
+	}
+
+	/**
+	 * reports the actual brightness and colour temperature of a light
+	 * @param light      light
+	 * @param percentage brightness in percent
+	 * @param kelvin     colour temperature in Kelvin, 0 for lights without colour support
+	 */
+	void report(LightControl light,double percentage,int kelvin) {
+		LightState previous = stateMap.put(light.getId(), new LightState(percentage, kelvin));
+		if(previous==null || previous.brightness!=percentage || previous.kelvin!=kelvin) {
+			version.incrementAndGet();
+		}
+
+		synchronized(this) {
+			if(!publishPending) {
+				publishPending = true;
+
+				long delay = Long.max(lastPublish+interval-System.nanoTime(), 0);
+				scheduler.schedule(this::publish, delay, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+
+	/**
+	 * returns a counter which gets incremented whenever the brightness or colour temperature of a light changed
+	 * @return version counter
+	 */
+	long getVersion() {
+		return version.get();
+	}
+
+	//
+	// private methods
+	//
+
+	/**
+	 * publishes all modified values. Executed on the scheduler thread
+	 */
+	private void publish() {
+		synchronized(this) {
+			publishPending = false;
+			lastPublish    = System.nanoTime();
+		}
+
+		MqttClient       mqttClient = MqttClient.getMqttClient();
+		EventBroadcaster events     = EventBroadcaster.getBroadcaster();
+
+		double maxBrightness = 0.0;
+		for(Map.Entry<Integer,LightState> entry:stateMap.entrySet()) {
+			LightState state = entry.getValue();
+			long       value = Math.round(state.brightness);
+			maxBrightness = Double.max(maxBrightness, state.brightness);
+
+			Long    published       = publishedMap.get(entry.getKey());
+			Integer publishedKelvin = publishedKelvinMap.get(entry.getKey());
+			boolean changed         = published==null || published!=value;
+			if(changed && mqttClient!=null) {
+				MqttClient.TopicHandle topic = topicMap.computeIfAbsent(entry.getKey(),
+						id -> mqttClient.getTopic(String.format(MQTT_TOPIC_LIGHT_BRIGHTNESS, id)));
+				mqttClient.publish(topic, Long.toString(value), true);
+			}
+			if(changed || publishedKelvin==null || publishedKelvin!=state.kelvin) {
+				events.publish("light", entry.getKey().toString(), "{\"id\":"+entry.getKey()+",\"brightness\":"+value
+						+(state.kelvin>0 ? ",\"colourTemperature\":"+state.kelvin : "")+"}");
+				publishedMap.put(entry.getKey(), value);
+				publishedKelvinMap.put(entry.getKey(), state.kelvin);
+			}
+		}
+
+		long value = Math.round(maxBrightness);
+		if(mqttClient!=null && (publishedBrightness==null || publishedBrightness!=value)) {
+			mqttClient.publish(mqttClient.getTopic(MQTT_TOPIC_BRIGHTNESS), Long.toString(value), false);
+			publishedBrightness = value;
+		}
+	}
+
+	//
+	// private members
+	//
+	private static final Logger log = Logger.getLogger( LightStatePublisher.class.getName() );
+
+	private static final String MQTT_TOPIC_LIGHT_BRIGHTNESS = "light%d/brightness";   // retained brightness of each light
+	private static final String MQTT_TOPIC_BRIGHTNESS       = "brightness";           // brightness of the brightest light
+
+	private static LightStatePublisher object = null;   // singleton object
+
+	// private class with the reported state of a light
+	private static class LightState {
+		LightState(double brightness,int kelvin) {
+			this.brightness = brightness;
+			this.kelvin     = kelvin;
+		}
+
+		final double brightness;   // brightness in percent
+		final int    kelvin;       // colour temperature in Kelvin, 0 for lights without colour support
+	}
+
+	private volatile long                  interval;                                    // minimum time between publications in nanoseconds
+	private final ScheduledExecutorService scheduler;                                   // thread doing the publication
+	private final Map<Integer,LightState>  stateMap      = new ConcurrentHashMap<>();   // last reported state of each light
+	private final Map<Integer,Long>        publishedMap  = new HashMap<>();             // last published value of each light
+	private final Map<Integer,Integer>     publishedKelvinMap = new HashMap<>();        // last published colour temperature of each light
+	private final Map<Integer,MqttClient.TopicHandle> topicMap = new HashMap<>();       // brightness topic of each light
+	private final AtomicLong               version       = new AtomicLong();            // incremented on each brightness or colour temperature change
+	private Long                           publishedBrightness = null;                  // last value published on legacy topic
+	private boolean                        publishPending      = false;                 // publication is scheduled
+	private long                           lastPublish;                                 // time of last publication (System.nanoTime)
+}
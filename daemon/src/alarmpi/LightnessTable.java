@@ -0,0 +1,153 @@
+package alarmpi;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Precomputed lookup tables to convert between perceived brightness (CIE lightness in percent)
+ * and raw PWM values, in both directions.
+ * Tables get created once per device resolution (PWM offset and full scale) and are shared
+ * by all lights using the same resolution
+ */
+class LightnessTable {
+
+	/**
+	 * returns the lookup table for the specified resolution, creating it if needed
+	 * @param pwmOffset    PWM value at which the light starts to glow
+	 * @param pwmFullScale PWM full scale value
+	 * @return lookup table
+	 */
+	static synchronized LightnessTable getTable(int pwmOffset,int pwmFullScale) {
+		String key = pwmOffset+"/"+pwmFullScale;
+		LightnessTable table = tableMap.get(key);
+		if(table==null) {
+			table = new LightnessTable(pwmOffset, pwmFullScale);
+			tableMap.put(key, table);
+		}
+
+		return table;
+	}
+
+	/**
+	 * private constructor, builds both tables
+	 * @param pwmOffset    PWM value at which the light starts to glow
+	 * @param pwmFullScale PWM full scale value
+	 */
+	private LightnessTable(int pwmOffset,int pwmFullScale) {
+		this.pwmOffset    = pwmOffset;
+		this.pwmFullScale = pwmFullScale;
+
+		pwmTable = new int[100*STEPS_PER_PERCENT+1];
+		for(int i=0 ; i<pwmTable.length ; i++) {
+			pwmTable[i] = calculatePwm((double)i/(double)STEPS_PER_PERCENT, pwmOffset, pwmFullScale);
+		}
+
+		brightnessTable = new double[pwmFullScale+1];
+		for(int pwm=0 ; pwm<brightnessTable.length ; pwm++) {
+			brightnessTable[pwm] = calculateBrightness(pwm, pwmOffset, pwmFullScale);
+		}
+
+		log.fine("created lightness tables for pwmOffset="+pwmOffset+" pwmFullScale="+pwmFullScale);
+	}
+
+	/**
+	 * converts a brightness into a PWM value
+	 * @param percentage brightness in percent, gets clipped to 0...100
+	 * @return PWM value
+	 */
+	int getPwm(double percentage) {
+		if(percentage<=0.0) {
+			return pwmTable[0];
+		}
+		if(percentage>=100.0) {
+			return pwmTable[pwmTable.length-1];
+		}
+
+		return pwmTable[(int)(percentage*STEPS_PER_PERCENT)];
+	}
+
+	/**
+	 * converts a PWM value into a brightness
+	 * @param pwm PWM value, gets clipped to 0...full scale
+	 * @return brightness in percent
+	 */
+	double getBrightness(int pwm) {
+		if(pwm<=0) {
+			return brightnessTable[0];
+		}
+		if(pwm>=brightnessTable.length) {
+			return brightnessTable[brightnessTable.length-1];
+		}
+
+		return brightnessTable[pwm];
+	}
+
+	/**
+	 * @return PWM value at which the light starts to glow
+	 */
+	int getPwmOffset() {
+		return pwmOffset;
+	}
+
+	/**
+	 * @return PWM full scale value
+	 */
+	int getPwmFullScale() {
+		return pwmFullScale;
+	}
+
+	/**
+	 * calculates the PWM value for a brightness, based on the relation between physical luminance
+	 * power and perceived human lightness
+	 * @param percentage   brightness in percent
+	 * @param pwmOffset    PWM value at which the light starts to glow
+	 * @param pwmFullScale PWM full scale value
+	 * @return PWM value
+	 */
+	static int calculatePwm(double percentage,int pwmOffset,int pwmFullScale) {
+		final int usableScale = pwmFullScale-pwmOffset;
+
+		if(percentage<=8.0) {
+			return pwmOffset+(int)((percentage/903.3)*(double)usableScale);
+		}
+		else {
+			return pwmOffset+(int)(Math.pow((percentage+16.0)/116.0, 3.0)*(double)usableScale);
+		}
+	}
+
+	/**
+	 * calculates the brightness for a PWM value (inverse of calculatePwm)
+	 * @param pwm          PWM value
+	 * @param pwmOffset    PWM value at which the light starts to glow
+	 * @param pwmFullScale PWM full scale value
+	 * @return brightness in percent
+	 */
+	static double calculateBrightness(int pwm,int pwmOffset,int pwmFullScale) {
+		final int usableScale = pwmFullScale-pwmOffset;
+		double brightness;
+
+		if((pwm-pwmOffset)<(int)((8.0/903.3)*(double)usableScale)) {
+			brightness = ((double)(pwm-pwmOffset)/(double)usableScale)*903.3;
+		}
+		else {
+			brightness = 116.0*Math.pow((double)(pwm-pwmOffset)/(double)usableScale, 1.0/3.0)-16.0;
+		}
+
+		return brightness<0 ? 0.0 : brightness;
+	}
+
+	//
+	// private members
+	//
+	private static final Logger log = Logger.getLogger( LightnessTable.class.getName() );
+
+	private static final int STEPS_PER_PERCENT = 100;   // resolution of the brightness to PWM table
+
+	private static final Map<String,LightnessTable> tableMap = new HashMap<>();   // all tables created so far
+
+	private final int      pwmOffset;         // PWM value at which the light starts to glow
+	private final int      pwmFullScale;      // PWM full scale value
+	private final int[]    pwmTable;          // PWM value for each brightness step
+	private final double[] brightnessTable;   // brightness in percent for each PWM value
+}
@@ -0,0 +1,115 @@
+package alarmpi;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Lightweight registry for runtime metrics (timers, counters and gauges).
+ * Metrics are identified by name and get created on first use. The content can be dumped
+ * into the logfile
+ */
+class Metrics {
+
+	/**
+	 * measures durations: number of measurements, average, maximum and last value
+	 */
+	static class Timer {
+		/**
+		 * records a duration
+		 * @param nanos duration in nanoseconds
+		 */
+		synchronized void record(long nanos) {
+			count++;
+			total += nanos;
+			last   = nanos;
+			max    = Long.max(max, nanos);
+		}
+
+		/**
+		 * @return number of recorded durations
+		 */
+		synchronized long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return maximum recorded duration in nanoseconds
+		 */
+		synchronized long getMax() {
+			return max;
+		}
+
+		@Override
+		public synchronized String toString() {
+			return String.format("count=%d avg=%.1fms max=%.1fms last=%.1fms", count,
+					count>0 ? toMillis(total/count) : 0.0, toMillis(max), toMillis(last));
+		}
+
+		private static double toMillis(long nanos) {
+			return (double)nanos/(double)TimeUnit.MILLISECONDS.toNanos(1);
+		}
+
+		private long count = 0;   // number of recorded durations
+		private long total = 0;   // sum of all durations in nanoseconds
+		private long max   = 0;   // maximum duration in nanoseconds
+		private long last  = 0;   // last duration in nanoseconds
+	}
+
+	/**
+	 * returns the timer with the specified name, creating it if needed
+	 * @param name timer name
+	 * @return timer
+	 */
+	static synchronized Timer timer(String name) {
+		return timerMap.computeIfAbsent(name, key -> new Timer());
+	}
+
+	/**
+	 * returns the counter with the specified name, creating it if needed
+	 * @param name counter name
+	 * @return counter
+	 */
+	static synchronized LongAdder counter(String name) {
+		return counterMap.computeIfAbsent(name, key -> new LongAdder());
+	}
+
+	/**
+	 * registers a gauge, replacing a gauge with the same name
+	 * @param name     gauge name
+	 * @param supplier supplies the actual value of the gauge
+	 */
+	static synchronized void gauge(String name,LongSupplier supplier) {
+		gaugeMap.put(name, supplier);
+	}
+
+	/**
+	 * writes all metrics into the logfile
+	 */
+	static synchronized void dump() {
+		String dump = new String("metrics:\n");
+		for(String name:timerMap.keySet()) {
+			dump += "  "+name+": "+timerMap.get(name)+"\n";
+		}
+		for(String name:counterMap.keySet()) {
+			dump += "  "+name+": "+counterMap.get(name).sum()+"\n";
+		}
+		for(String name:gaugeMap.keySet()) {
+			dump += "  "+name+": "+gaugeMap.get(name).getAsLong()+"\n";
+		}
+
+		log.info(dump);
+	}
+
+	//
+	// private members
+	//
+	private static final Logger log = Logger.getLogger( Metrics.class.getName() );
+
+	private static final Map<String,Timer>        timerMap   = new TreeMap<>();   // all timers, sorted by name
+	private static final Map<String,LongAdder>    counterMap = new TreeMap<>();   // all counters, sorted by name
+	private static final Map<String,LongSupplier> gaugeMap   = new TreeMap<>();   // all gauges, sorted by name
+}
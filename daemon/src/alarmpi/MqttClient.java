@@ -1,8 +1,17 @@
 package alarmpi;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
@@ -16,9 +25,57 @@ import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
 /**
  * MQTT Client
+ * Outgoing messages are queued and sent by a publisher thread. Only the latest value of each topic
+ * is kept in the queue, so bursts of updates of the same topic get coalesced. While the connection
+ * to the broker is down, the queue buffers up to a configurable number of topics and gets flushed
+ * once the connection is back.
+ * Incoming messages get routed to the listener subscribed for their exact topic. Listeners run
+ * on the worker threads of a MqttRouter, never on the thread of the MQTT client.
+ * Payloads are UTF-8 encoded in both directions.
  */
 public class MqttClient implements MqttCallbackExtended{
 	
+	/**
+	 * handle of a topic to publish. Prefix, QoS and retain flag get resolved once when the handle
+	 * is created and again by resolveTopics after the configuration changed
+	 */
+	static final class TopicHandle {
+		private TopicHandle(String name,boolean display) {
+			this.name    = name;
+			this.display = display;
+			resolve();
+		}
+		
+		/**
+		 * @return topic name without prefix
+		 */
+		String getName() {
+			return name;
+		}
+		
+		/**
+		 * @return topic name including prefix
+		 */
+		String getFullyQualifiedTopic() {
+			return fullyQualifiedTopic;
+		}
+		
+		/**
+		 * resolves prefix, QoS and retain flag from the configuration
+		 */
+		private void resolve() {
+			fullyQualifiedTopic = display ? MqttClient.getFullyQualifiedDisplayTopic(name) : MqttClient.getFullyQualifiedTopic(name);
+			qos                 = Configuration.getConfiguration().getMqttQos(name);
+			retain              = Configuration.getConfiguration().getMqttRetain(name);
+		}
+		
+		private final    String  name;                  // topic name without prefix
+		private final    boolean display;               // true for display topics
+		private volatile String  fullyQualifiedTopic;   // topic name including prefix
+		private volatile int     qos;                   // configured quality of service
+		private volatile Boolean retain;                // configured retain flag or null
+	}
+	
 	/**
 	 * private constructor
 	 * @param brokerAddress MQTT broker address
@@ -31,6 +88,38 @@ public class MqttClient implements MqttCallbackExtended{
 				connectOptions.setKeepAliveInterval(keepalive);
 				
 				isConnected = new AtomicBoolean(false);
+				
+				outboundQueue     = new LinkedHashMap<>();
+				outboundQueueSize = Configuration.getConfiguration().getMqttQueueSize();
+				publishLatency    = Metrics.timer("mqtt.publish.latency");
+				coalescedCount    = Metrics.counter("mqtt.coalesced");
+				droppedCount      = Metrics.counter("mqtt.dropped");
+				Metrics.gauge("mqtt.queue.depth", () -> {
+					synchronized(outboundQueue) {
+						return outboundQueue.size();
+					}
+				});
+				
+				router = new MqttRouter(ROUTER_WORKER_COUNT, ROUTER_QUEUE_SIZE, SLOW_HANDLER_LIMIT);
+				
+				// topic settings of a modified configuration file apply to the next message, the connection is not touched
+				Configuration.addListener("mqtt", (previous,current,changedSections) -> {
+					if(changedSections.contains("mqtt")) {
+						if(!Objects.equals(previous.getMqttAddress(), current.getMqttAddress()) || !Objects.equals(previous.getMqttPort(), current.getMqttPort())
+								|| !Objects.equals(previous.getMqttKeepalive(), current.getMqttKeepalive())) {
+							log.warning("modified MQTT broker settings take effect after a restart");
+						}
+						if(!Objects.equals(previous.getMqttTopicPrefix(), current.getMqttTopicPrefix())) {
+							log.warning("modified MQTT topic prefix takes effect for subscriptions after a restart");
+						}
+						outboundQueueSize = current.getMqttQueueSize();
+						resolveTopics();
+					}
+				});
+				
+				publisherThread = new Thread(this::runPublisher, "MQTT publisher");
+				publisherThread.setDaemon(true);
+				publisherThread.start();
 
 				String broker = "tcp://"+brokerAddress+":"+brokerPort;
 				log.info("Creating MQTT client for broker "+broker+", client ID="+clientId);
@@ -86,8 +175,9 @@ public class MqttClient implements MqttCallbackExtended{
 	}
 	
 	/**
-	 * subscribes for an MQTT topic
-	 * @param topicName  topic to subscribe
+	 * subscribes for an MQTT topic. The listener gets called on a worker thread, messages of the same topic
+	 * are delivered one after the other
+	 * @param topicName  topic to subscribe (exact topic, wildcards are not supported)
 	 * @param listener   listener objects for the callbacl
 	 */
 	public synchronized void subscribe(String topicName,IMqttMessageListener listener) {
@@ -111,40 +201,77 @@ public class MqttClient implements MqttCallbackExtended{
 		else {
 			topicList.add(topic);
 		}
+		router.addRoute(fqt, listener);
 		
 		// subscribe if we are currently connected
 		if(isConnected.get()) {
 			try {
-				mqttClient.subscribe(fqt,0,listener);
+				mqttClient.subscribe(fqt,0,this::messageArrived);
 			} catch (MqttException e) {
 				log.severe("MQTT subscribe for topic "+fqt+" failed: "+e.getMessage());
 			}
 		}
 	}
 	
+	/**
+	 * returns the handle of a topic using the prefix specified in the configuration file
+	 * @param topic topic name without prefix
+	 * @return topic handle
+	 */
+	TopicHandle getTopic(String topic) {
+		return topicMap.computeIfAbsent(topic, name -> new TopicHandle(name, false));
+	}
+	
+	/**
+	 * returns the handle of a topic using the display prefix specified in the configuration file
+	 * @param topic topic name without prefix
+	 * @return topic handle
+	 */
+	TopicHandle getDisplayTopic(String topic) {
+		return displayTopicMap.computeIfAbsent(topic, name -> new TopicHandle(name, true));
+	}
+	
+	/**
+	 * resolves prefix, QoS and retain flag of all topic handles again. To be called after the configuration changed
+	 */
+	void resolveTopics() {
+		log.fine("resolving MQTT topics");
+		topicMap.values().forEach(TopicHandle::resolve);
+		displayTopicMap.values().forEach(TopicHandle::resolve);
+	}
+	
+	/**
+	 * decodes the payload of a received message
+	 * @param message received message
+	 * @return payload as UTF-8 string
+	 */
+	static String getText(MqttMessage message) {
+		return new String(message.getPayload(), StandardCharsets.UTF_8);
+	}
+	
 	/**
 	 * publishes an MQTT topic using the prefix specified in the configuration file
 	 * @param topic  topic to publish
 	 * @param data   data to publish or null
 	 */
 	public void publish(String topic,String data) {
+		publish(topic,data,false);
+	}
+	
+	/**
+	 * publishes an MQTT topic using the prefix specified in the configuration file
+	 * @param topic    topic to publish
+	 * @param data     data to publish or null
+	 * @param retained if true, the broker keeps the value for new subscribers
+	 */
+	public void publish(String topic,String data,boolean retained) {
 		if(topic==null || topic.length()==0) {
 			log.severe("Invalid topic name to publish: "+topic);
 			
 			return;
 		}
-				
-		if(data==null) {
-			data = new String();
-		}
 		
-		try {
-			log.fine("publishing MQTT topic "+topic+", value="+data);;
-			mqttClient.publish(getFullyQualifiedTopic(topic), data.getBytes(), 0, false);
-		} catch (MqttException e) {
-			log.severe("Unable to publish MQTT topic "+topic+", data="+data);
-			log.severe(e.getMessage());
-		}
+		publish(getTopic(topic), data, retained);
 	}
 	
 	/**
@@ -158,22 +285,155 @@ public class MqttClient implements MqttCallbackExtended{
 			
 			return;
 		}
-				
+		
+		publish(getDisplayTopic(topic), data, false);
+	}
+	
+	/**
+	 * publishes a topic. The message gets added to the outbound queue, replacing a queued message of the same topic
+	 * @param topic    topic handle
+	 * @param data     data to publish or null
+	 * @param retained retain flag, unless configured for the topic
+	 */
+	void publish(TopicHandle topic,String data,boolean retained) {
 		if(data==null) {
-			data = new String();
+			data = "";
+		}
+		log.fine("publishing MQTT topic "+topic.name+", value="+data+" retained="+retained);
+		
+		PooledMessage message = obtainMessage();
+		message.topic     = topic;
+		message.payload   = data.getBytes(StandardCharsets.UTF_8);
+		message.queueTime = System.nanoTime();
+		message.setQos(topic.qos);
+		message.setRetained(topic.retain!=null ? topic.retain : retained);
+		
+		PooledMessage replaced = null;
+		synchronized(outboundQueue) {
+			replaced = outboundQueue.put(topic, message);
+			if(replaced!=null) {
+				log.finest("MQTT topic "+topic.name+": queued value replaced");
+				coalescedCount.increment();
+			}
+			else if(outboundQueue.size()>outboundQueueSize) {
+				// queue full (broker not reachable for a while): drop the oldest topic
+				Iterator<PooledMessage> iterator = outboundQueue.values().iterator();
+				replaced = iterator.next();
+				log.warning("MQTT outbound queue full, dropping topic "+replaced.topic.name);
+				iterator.remove();
+				droppedCount.increment();
+			}
+			outboundQueue.notifyAll();
 		}
 		
+		if(replaced!=null) {
+			recycleMessage(replaced);
+		}
+	}
+	
+	/**
+	 * returns a message object from the pool or creates a new one
+	 * @return message object
+	 */
+	private PooledMessage obtainMessage() {
+		synchronized(messagePool) {
+			PooledMessage message = messagePool.poll();
+			
+			return message!=null ? message : new PooledMessage();
+		}
+	}
+	
+	/**
+	 * returns a message object into the pool once the MQTT client does not need it anymore
+	 * @param message message object
+	 */
+	private void recycleMessage(PooledMessage message) {
+		message.topic   = null;
+		message.payload = null;
+		message.setId(0);
+		message.setDuplicate(false);
+		
+		synchronized(messagePool) {
+			if(messagePool.size()<MESSAGE_POOL_SIZE) {
+				messagePool.add(message);
+			}
+		}
+	}
+	
+	/**
+	 * main loop of the publisher thread. Sends all queued messages while connected
+	 */
+	private void runPublisher() {
 		try {
-			log.fine("publishing MQTT Display topic "+topic+", value="+data);
-			mqttClient.publish(getFullyQualifiedDisplayTopic(topic), data.getBytes(), 0, false);
+			while(true) {
+				synchronized(outboundQueue) {
+					while(outboundQueue.isEmpty() || !isConnected.get()) {
+						outboundQueue.wait();
+					}
+				}
+				
+				// give further updates of the same burst a chance to replace the queued values
+				Thread.sleep(COALESCE_DELAY);
+				
+				PooledMessage message;
+				while((message=takeNext())!=null) {
+					send(message);
+				}
+			}
+		}
+		catch(InterruptedException e) {
+			log.info("MQTT publisher thread interrupted");
+		}
+	}
+	
+	/**
+	 * removes the oldest message from the outbound queue
+	 * @return oldest message or null if the queue is empty or the client is not connected
+	 */
+	private PooledMessage takeNext() {
+		synchronized(outboundQueue) {
+			if(outboundQueue.isEmpty() || !isConnected.get()) {
+				return null;
+			}
+			Iterator<PooledMessage> iterator = outboundQueue.values().iterator();
+			PooledMessage message = iterator.next();
+			iterator.remove();
+			
+			return message;
+		}
+	}
+	
+	/**
+	 * hands a message over to the MQTT client. Messages that cannot be sent right now are queued again
+	 * unless a newer value of the same topic got queued in the meantime
+	 * @param message message to send
+	 * @throws InterruptedException
+	 */
+	private void send(PooledMessage message) throws InterruptedException {
+		try {
+			mqttClient.publish(message.topic.fullyQualifiedTopic, message, message, null);
 		} catch (MqttException e) {
-			log.severe("Unable to publish MQTT Display topic "+topic+", data="+data);
-			log.severe(e.getMessage());
+			if(e.getReasonCode()==MqttException.REASON_CODE_MAX_INFLIGHT || e.getReasonCode()==MqttException.REASON_CODE_CLIENT_NOT_CONNECTED) {
+				log.fine("MQTT topic "+message.topic.name+" not sent, queued again: "+e.getMessage());
+				boolean queued;
+				synchronized(outboundQueue) {
+					queued = outboundQueue.putIfAbsent(message.topic, message)==null;
+				}
+				if(!queued) {
+					recycleMessage(message);
+				}
+				Thread.sleep(RETRY_DELAY);
+			}
+			else {
+				log.severe("Unable to publish MQTT topic "+message.topic.name+", data="+message);
+				log.severe(e.getMessage());
+				recycleMessage(message);
+			}
 		}
 	}
 	
 	
-	private String getFullyQualifiedTopic(String topic) {
+	private static String getFullyQualifiedTopic(String topic) {
 		String fullTopic;
 		String prefix = Configuration.getConfiguration().getMqttTopicPrefix();
 		
@@ -192,7 +452,7 @@ public class MqttClient implements MqttCallbackExtended{
 		return fullTopic;
 	}
 	
-	private String getFullyQualifiedDisplayTopic(String topic) {
+	private static String getFullyQualifiedDisplayTopic(String topic) {
 		String fullTopic;
 		String prefix = Configuration.getConfiguration().getMqttDisplayTopicPrefix();
 		
@@ -227,12 +487,19 @@ public class MqttClient implements MqttCallbackExtended{
 
 	@Override
 	public void deliveryComplete(IMqttDeliveryToken t) {
+		if(t.getUserContext() instanceof PooledMessage) {
+			PooledMessage message = (PooledMessage)t.getUserContext();
+			publishLatency.record(System.nanoTime()-message.queueTime);
+			recycleMessage(message);
+		}
 	}
 
 	@Override
-	public void messageArrived(String topic, MqttMessage message) throws Exception {
+	public void messageArrived(String topic, MqttMessage message) {
 		log.fine("MQTT message arrived: topic="+topic);
 		log.finest("MQTT message arrived: topic="+topic+" content="+message);
+		
+		router.route(topic, message);
 	}
 
 	@Override
@@ -246,11 +513,19 @@ public class MqttClient implements MqttCallbackExtended{
 			
 			// subscribe
 			try {
-				mqttClient.subscribe(topic.topic,0,topic.listener);
+				mqttClient.subscribe(topic.topic,0,this::messageArrived);
 			} catch (MqttException e) {
 				log.severe("MQTT subscribe for topic "+topic.topic+" failed: "+e.getMessage());
 			}
 		}
+		
+		// send everything queued while offline
+		synchronized(outboundQueue) {
+			if(!outboundQueue.isEmpty()) {
+				log.info("sending "+outboundQueue.size()+" MQTT topics queued while offline");
+			}
+			outboundQueue.notifyAll();
+		}
 	}
 	
 	//
@@ -276,7 +551,48 @@ public class MqttClient implements MqttCallbackExtended{
 		}
 	};
 	
-	private List<Topic>   topicList;              // list of subscribed topics
-	private AtomicBoolean isConnected;            // maintains if client is currently connected or not
+	// private class for outgoing messages. Objects get reused once the MQTT client delivered them.
+	// The payload gets handed to the MQTT client directly instead of a copy
+	private static class PooledMessage extends MqttMessage {
+		@Override
+		public byte[] getPayload() {
+			return payload;
+		}
+		
+		@Override
+		protected void setDuplicate(boolean duplicate) {
+			super.setDuplicate(duplicate);
+		}
+		
+		@Override
+		public String toString() {
+			return payload!=null ? new String(payload, StandardCharsets.UTF_8) : "";
+		}
+		
+		TopicHandle topic;       // topic of the message
+		byte[]      payload;     // UTF-8 encoded payload
+		long        queueTime;   // time the message got queued (System.nanoTime)
+	}
+	
+	private static final int COALESCE_DELAY      = 50;     // time in milliseconds to collect updates before sending
+	private static final int RETRY_DELAY         = 100;    // time in milliseconds to wait before retrying a message that could not be sent
+	private static final int ROUTER_WORKER_COUNT = 4;      // number of threads executing the listeners of incoming messages
+	private static final int ROUTER_QUEUE_SIZE   = 20;     // max. number of messages waiting per topic
+	private static final int SLOW_HANDLER_LIMIT  = 1000;   // time in milliseconds after which a listener is reported as slow
+	private static final int MESSAGE_POOL_SIZE   = 32;     // max. number of message objects kept for reuse
+	
+	private List<Topic>                    topicList;           // list of subscribed topics
+	private AtomicBoolean                  isConnected;         // maintains if client is currently connected or not
+	private Map<TopicHandle,PooledMessage> outboundQueue;       // messages waiting to be sent
+	private volatile int                   outboundQueueSize;   // maximum number of topics in the outbound queue
+	private Thread                         publisherThread;     // thread sending the queued messages
+	private MqttRouter                     router;              // routes incoming messages to the subscribed listeners
+	private Metrics.Timer                  publishLatency;      // time from queuing until delivery
+	private LongAdder                      coalescedCount;      // number of queued messages replaced by a newer value
+	private LongAdder                      droppedCount;        // number of messages dropped because the queue was full
+	
+	private final Queue<PooledMessage>     messagePool     = new ArrayDeque<>();          // message objects for reuse
+	private final Map<String,TopicHandle>  topicMap        = new ConcurrentHashMap<>();   // topic handles by name
+	private final Map<String,TopicHandle>  displayTopicMap = new ConcurrentHashMap<>();   // display topic handles by name
 }
 
@@ -0,0 +1,178 @@
+package alarmpi;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * Routes incoming MQTT messages to the handler registered for their exact topic.
+ * Handlers run on a bounded pool of worker threads, so a slow handler never blocks the
+ * MQTT client thread or the handlers of other topics. Messages of the same topic are
+ * handled one after the other in the order they arrived.
+ */
+class MqttRouter {
+
+	/**
+	 * constructor
+	 * @param workerCount      number of worker threads
+	 * @param queueSize        max. number of messages waiting per topic
+	 * @param slowHandlerLimit time in milliseconds after which a handler is reported as slow
+	 */
+	MqttRouter(int workerCount,int queueSize,int slowHandlerLimit) {
+		this.queueSize        = queueSize;
+		this.slowHandlerLimit = TimeUnit.MILLISECONDS.toNanos(slowHandlerLimit);
+
+		// each topic has at most one task in the pool at a time, so the pool queue is bounded by the number of routes
+		AtomicInteger threadCount = new AtomicInteger();
+		workers = new ThreadPoolExecutor(workerCount, workerCount, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(POOL_QUEUE_SIZE), runnable -> {
+			Thread thread = new Thread(runnable, "MQTT handler "+threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		workers.allowCoreThreadTimeOut(true);
+
+		slowCount     = Metrics.counter("mqtt.handler.slow");
+		rejectedCount = Metrics.counter("mqtt.handler.rejected");
+	}
+
+	/**
+	 * registers the handler for a topic, replacing a handler registered before
+	 * @param topic   fully qualified topic
+	 * @param handler handler to call for messages of this topic
+	 */
+	void addRoute(String topic,IMqttMessageListener handler) {
+		log.fine("adding MQTT route for topic "+topic);
+		Route previous = routeMap.put(topic, new Route(topic, handler));
+		if(previous!=null) {
+			log.warning("MQTT route for topic "+topic+" replaced");
+		}
+	}
+
+	/**
+	 * hands a message over to the handler of its topic
+	 * @param topic   fully qualified topic
+	 * @param message message
+	 * @return true if the message got queued for its handler, false if there is no handler or the handler is overloaded
+	 */
+	boolean route(String topic,MqttMessage message) {
+		Route route = routeMap.get(topic);
+		if(route==null) {
+			log.warning("no handler for MQTT topic "+topic);
+			return false;
+		}
+
+		return route.add(message);
+	}
+
+	/**
+	 * stops all worker threads. Messages still waiting do not get handled anymore
+	 */
+	void shutdown() {
+		workers.shutdownNow();
+	}
+
+	//
+	// private members
+	//
+	private static final Logger log = Logger.getLogger( MqttRouter.class.getName() );
+
+	private static final int POOL_QUEUE_SIZE = 64;   // max. number of topics waiting for a worker thread
+
+	// private class holding the handler and the waiting messages of one topic
+	private class Route implements Runnable {
+		Route(String topic,IMqttMessageListener handler) {
+			this.topic   = topic;
+			this.handler = handler;
+			this.timer   = Metrics.timer("mqtt.handler."+topic);
+		}
+
+		/**
+		 * queues a message and starts the handler if it is not running yet
+		 * @param message message to handle
+		 * @return true if the message got queued
+		 */
+		synchronized boolean add(MqttMessage message) {
+			if(pending.size()>=queueSize) {
+				log.warning("MQTT handler for topic "+topic+" overloaded, dropping message");
+				rejectedCount.increment();
+				return false;
+			}
+			pending.add(message);
+
+			if(!running) {
+				try {
+					workers.execute(this);
+					running = true;
+				}
+				catch(RejectedExecutionException e) {
+					log.severe("no worker available for MQTT topic "+topic+", dropping message");
+					pending.remove(message);
+					rejectedCount.increment();
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		/**
+		 * handles all waiting messages. Executed on a worker thread
+		 */
+		@Override
+		public void run() {
+			MqttMessage message;
+			while((message=next())!=null) {
+				long start = System.nanoTime();
+				try {
+					handler.messageArrived(topic, message);
+				}
+				catch(Exception e) {
+					log.severe("Exception in MQTT handler for topic "+topic+": "+e.getMessage());
+				}
+
+				long duration = System.nanoTime()-start;
+				timer.record(duration);
+				if(duration>slowHandlerLimit) {
+					log.warning("slow MQTT handler for topic "+topic+": "+TimeUnit.NANOSECONDS.toMillis(duration)+"ms");
+					slowCount.increment();
+				}
+			}
+		}
+
+		/**
+		 * @return next waiting message or null if there is none. In this case the route is marked as not running
+		 */
+		private synchronized MqttMessage next() {
+			MqttMessage message = pending.poll();
+			if(message==null) {
+				running = false;
+			}
+
+			return message;
+		}
+
+		private final String               topic;                         // fully qualified topic
+		private final IMqttMessageListener handler;                       // handler for this topic
+		private final Metrics.Timer        timer;                         // handler execution time
+		private final Queue<MqttMessage>   pending = new ArrayDeque<>();  // messages waiting to be handled
+		private boolean                    running = false;               // true while handler task is queued or running
+	}
+
+	private final Map<String,Route>  routeMap = new ConcurrentHashMap<>();   // routes by fully qualified topic
+	private final ThreadPoolExecutor workers;                                // worker threads executing the handlers
+	private final int                queueSize;                              // max. number of waiting messages per topic
+	private final long               slowHandlerLimit;                       // handler duration reported as slow in nanoseconds
+	private final LongAdder          slowCount;                              // number of slow handler executions
+	private final LongAdder          rejectedCount;                          // number of dropped messages
+}
@@ -2,6 +2,7 @@ package alarmpi;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Logger;
 
 import com.pi4j.Pi4J;
@@ -39,6 +40,7 @@ public class NRF24LO1Control {
 	private Spi spi;
 	
 	private       boolean              isReady;           // indicates if object can be used or not
+	private final static long    STATUS_POLL_INTERVAL = 100000; // interval in nanoseconds to poll the status while waiting for a packet to be sent
 	
 	/**
 	 * Defines convenient values for setting data rates in setRF()
@@ -71,7 +73,7 @@ public class NRF24LO1Control {
 		log.info("Instantiating nRF204 controller");
 		isReady = false;
 		
-		if(Configuration.getConfiguration().getRunningOnRaspberry()) {
+		if(pi4j!=null) {
 			
 	        try {
 		        SpiConfig spiDeviceConfig = Spi.newConfigBuilder(pi4j)
@@ -306,9 +308,8 @@ public class NRF24LO1Control {
 	            
 	    		throw new IOException("timeout while waiting for data to be sent");
 	    	}
-	    	try {
-				Thread.sleep(100);
-			} catch (InterruptedException e) {}
+	    	// a packet is on air for less than 1ms, so poll with a short interval
+	    	LockSupport.parkNanos(STATUS_POLL_INTERVAL);
         }
 
         // Must clear RH_NRF24_MAX_RT if it is set, else no further comm
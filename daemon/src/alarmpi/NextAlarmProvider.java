@@ -0,0 +1,44 @@
+package alarmpi;
+
+import java.util.logging.Logger;
+
+/**
+ * implements AnnouncementProvider to announce the time of the next alarm
+ * (either today or tomorrow)
+ */
+public class NextAlarmProvider implements AnnouncementProvider {
+
+	/**
+	 * constructor
+	 * @param alarm alarm to announce
+	 * @param mode  defines if the alarm is today or tomorrow
+	 */
+	public NextAlarmProvider(Alarm alarm,GoogleCalendar.Mode mode) {
+		this.alarm = alarm;
+		this.mode  = mode;
+	}
+
+	@Override
+	public String getName() {
+		return "nextAlarm"+mode.toString();
+	}
+
+	@Override
+	public String call() throws Exception {
+		String text = "Der nächste Alarm ist "+(mode==GoogleCalendar.Mode.TODAY ? "heute" : "morgen")+" um "+alarm.getTime().getHour()+" Uhr ";
+		if(alarm.getTime().getMinute()!=0) {
+			text += alarm.getTime().getMinute();
+		}
+		log.fine("preparing next alarm announcement, text="+text);
+
+		return new TextToSpeech().createTempFile(text, mode==GoogleCalendar.Mode.TODAY ? "nextAlarmToday.mp3" : "nextAlarmTomorrow.mp3");
+	}
+
+	//
+	// private data members
+	//
+	private static final Logger log = Logger.getLogger( NextAlarmProvider.class.getName() );
+
+	private final Alarm               alarm;   // alarm to announce
+	private final GoogleCalendar.Mode mode;    // alarm is today or tomorrow
+}
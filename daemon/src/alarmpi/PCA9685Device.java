@@ -0,0 +1,303 @@
+package alarmpi;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.pi4j.context.Context;
+import com.pi4j.exception.Pi4JException;
+import com.pi4j.io.gpio.digital.DigitalOutput;
+import com.pi4j.io.gpio.digital.DigitalState;
+import com.pi4j.io.i2c.I2C;
+import com.pi4j.io.i2c.I2CConfig;
+
+/**
+ * Represents one NXP PCA9685 chip, shared by all lights connected to it.
+ * Channel values get collected in a frame buffer and are written to the chip in
+ * auto-increment bursts covering the modified channels. All writes to the I2C bus happen
+ * on one bus thread shared by all chips, so writes of different lights cannot interleave.
+ */
+class PCA9685Device {
+
+	/**
+	 * returns the device object for the specified I2C address, creating and initializing it if needed
+	 * @param pi4j          pi4j context
+	 * @param deviceAddress I2C device address
+	 * @param pwmInversion  if true, output signals get inverted
+	 * @return device object
+	 */
+	static synchronized PCA9685Device getDevice(Context pi4j,int deviceAddress,boolean pwmInversion) {
+		PCA9685Device device = deviceMap.get(deviceAddress);
+		if(device==null) {
+			device = new PCA9685Device(pi4j, deviceAddress, pwmInversion);
+			deviceMap.put(deviceAddress, device);
+		}
+
+		return device;
+	}
+
+	/**
+	 * private constructor, initializes the chip
+	 * @param pi4j          pi4j context
+	 * @param deviceAddress I2C device address
+	 * @param pwmInversion  if true, output signals get inverted
+	 */
+	private PCA9685Device(Context pi4j,int deviceAddress,boolean pwmInversion) {
+		this.deviceAddress = deviceAddress;
+
+		// after initialization all LEDs are off
+		for(int channel=0 ; channel<CHANNEL_COUNT ; channel++) {
+			fullOff[channel] = true;
+		}
+
+		if(pi4j!=null) {
+			log.info("Initializing PCA9685 IIC device with address "+deviceAddress);
+			i2c = initializeDevice(pi4j, pwmInversion);
+		}
+		else {
+			i2c = null;
+		}
+	}
+
+	/**
+	 * sets the PWM value of a channel. The value gets written with the next burst write
+	 * @param channel  channel (LED) number 0...15
+	 * @param pwmValue PWM value 0...4095
+	 */
+	synchronized void setPwm(int channel,int pwmValue) {
+		pwm[channel]     = pwmValue;
+		fullOff[channel] = false;
+		markDirty(channel);
+	}
+
+	/**
+	 * switches a channel off using the full off bit. The value gets written with the next burst write
+	 * @param channel  channel (LED) number 0...15
+	 */
+	synchronized void setOff(int channel) {
+		fullOff[channel] = true;
+		markDirty(channel);
+	}
+
+	/**
+	 * waits until all burst writes scheduled so far have been executed. Used by tests
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	static void awaitFlush() throws InterruptedException {
+		try {
+			busThread.schedule(() -> {}, FLUSH_DELAY, TimeUnit.MICROSECONDS).get();
+		} catch (ExecutionException e) {
+			log.severe("PCA9685: error waiting for flush: "+e.getMessage());
+		}
+	}
+
+	//
+	// private methods
+	//
+
+	/**
+	 * marks a channel as modified and schedules a burst write if none is pending yet.
+	 * Must be called while holding the object lock
+	 * @param channel modified channel
+	 */
+	private void markDirty(int channel) {
+		if(channel<0 || channel>=CHANNEL_COUNT) {
+			log.severe("PCA9685: invalid channel "+channel);
+			return;
+		}
+		if(i2c==null) {
+			return;
+		}
+
+		boolean flushPending = dirtyMask!=0;
+		dirtyMask |= 1<<channel;
+
+		// wait a little bit so that all lights of the same animation frame get collected
+		if(!flushPending) {
+			busThread.schedule(this::flush, FLUSH_DELAY, TimeUnit.MICROSECONDS);
+		}
+	}
+
+	/**
+	 * writes all modified channels in bursts. Executed on the bus thread.
+	 * An I2C block write is limited to 32 bytes, so a burst covers at most 8 channels.
+	 * Modified channels further apart get written in separate bursts
+	 */
+	private void flush() {
+		int mask;
+
+		synchronized(this) {
+			if(dirtyMask==0) {
+				return;
+			}
+			mask      = dirtyMask;
+			dirtyMask = 0;
+
+			// channels in between that did not change get rewritten with their actual value
+			int first = Integer.numberOfTrailingZeros(mask);
+			int last  = 31-Integer.numberOfLeadingZeros(mask);
+			for(int channel=first ; channel<=last ; channel++) {
+				int offset = channel*4;
+				writeBuffer[offset+0] = 0;
+				writeBuffer[offset+1] = 0;
+				writeBuffer[offset+2] = (byte)(pwm[channel] & 0x00FF);
+				writeBuffer[offset+3] = (byte)(((pwm[channel] & 0x0F00) >> 8) | (fullOff[channel] ? 0x10 : 0x00));
+			}
+		}
+
+		while(mask!=0) {
+			int first      = Integer.numberOfTrailingZeros(mask);
+			int burstMask  = mask & (((1<<MAX_BURST_CHANNELS)-1)<<first);
+			int last       = 31-Integer.numberOfLeadingZeros(burstMask);
+			mask          &= ~burstMask;
+
+			log.finest("PCA9685: burst write address="+deviceAddress+" channels "+first+"..."+last);
+			try {
+				i2c.writeRegister(REGISTER_LED0_ON_L+4*first, writeBuffer, first*4, (last-first+1)*4);
+			} catch (Pi4JException e) {
+				log.severe("Error during I2C write: "+e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * initializes the chip
+	 * @param pi4j         pi4j context
+	 * @param pwmInversion if true, output signals get inverted
+	 * @return pi4j I2C device or null in case of an error
+	 */
+	private I2C initializeDevice(Context pi4j,boolean pwmInversion) {
+		final int IIC_BUS       = 0x1;
+		final int RESET_ADDRESS = 0x0;
+
+		I2C device;
+		try {
+			// software reset is a general call, resetting all chips on the bus. Do it only once
+			synchronized(PCA9685Device.class) {
+				if(!resetDone) {
+					I2CConfig i2cDeviceConfigReset = I2C.newConfigBuilder(pi4j)
+							.bus(IIC_BUS)
+							.device(RESET_ADDRESS)
+							.id("PCA9685_reset")
+							.name("PCA9685_reset")
+							.provider("pigpio-i2c")
+							.build();
+					log.fine("i2c config created");
+
+					I2C resetDevice = pi4j.create(i2cDeviceConfigReset);
+					log.fine("i2c reset device created");
+
+					resetDevice.write((byte) 0x06);
+					resetDevice.close();
+					log.fine("PCA9685: reset done");
+					resetDone = true;
+
+					try {
+						Thread.sleep(100);
+					} catch (InterruptedException e) {
+						log.severe("PCA9685: sleep exception "+e.getMessage());
+					}
+				}
+			}
+
+			I2CConfig config = I2C.newConfigBuilder(pi4j)
+					.bus(IIC_BUS)
+					.device(deviceAddress)
+					.id("PCA9685_"+deviceAddress)
+					.name("PCA9685_"+deviceAddress)
+					.provider("pigpio-i2c")
+					.build();
+
+			device = pi4j.create(config);
+			log.fine("created i2c device with device address "+deviceAddress);
+		} catch (Pi4JException e) {
+			log.severe("Exception during creation of IIC objects: "+e.getMessage());
+			return null;
+		} catch (Exception e) {
+			log.severe("Exception during pi4j initialization: "+e.getMessage());
+			for( var v:e.getStackTrace()) {
+				log.severe(v.toString());
+			}
+			return null;
+		}
+
+		// read status registers and dump to logfile
+		log.fine("PCA9685: MODE1 register after reset: "+device.readRegisterByte(0x00));
+		log.fine("PCA9685: MODE2 register after reset: "+device.readRegisterByte(0x01));
+
+		// turn oscillator on at 1.5MHz with register auto-increment enabled, inversion depends on configuration
+		device.writeRegister(0x00,(byte) 0x10);
+		device.writeRegister(0xFE,(byte) 0x05);
+		device.writeRegister(0x00,(byte) MODE1_AUTO_INCREMENT);
+		if(pwmInversion) {
+			device.writeRegister(0x01,(byte) 0x15);
+		}
+		else {
+			device.writeRegister(0x01,(byte) 0x05);
+		}
+
+		log.fine("PCA9685: MODE1 register after setup: "+device.readRegisterByte(0x00));
+		log.fine("PCA9685: MODE2 register after setup: "+device.readRegisterByte(0x01));
+
+		// all LEDs off
+		device.writeRegister(0xFA,(byte) 0x00);
+		device.writeRegister(0xFB,(byte) 0x00);
+		device.writeRegister(0xFC,(byte) 0x00);
+		device.writeRegister(0xFD,(byte) 0x10);
+
+		try {
+			int GPIO_OUTPUT = 16; // GPIO number for output enable
+
+			var outputConfig = DigitalOutput.newConfigBuilder(pi4j)
+					.id("PCA9685 Output "+deviceAddress)
+					.name("PCA9685 Output "+deviceAddress)
+					.address(GPIO_OUTPUT)
+					.shutdown(DigitalState.LOW)
+					.initial(DigitalState.LOW)
+					.provider("pigpio-digital-output");
+
+			var output = pi4j.create(outputConfig);
+			output.low();
+		}
+		catch(Pi4JException e) {
+			log.severe("Exception during setting OE pin low using pi4j");
+			log.severe(e.getMessage());
+		}
+
+		log.info("PCA9685 with address "+deviceAddress+" initialized");
+
+		return device;
+	}
+
+	//
+	// private members
+	//
+	private static final Logger log = Logger.getLogger( PCA9685Device.class.getName() );
+
+	private static final int CHANNEL_COUNT        = 16;     // number of PWM channels of the chip
+	private static final int REGISTER_LED0_ON_L   = 0x06;   // first channel register
+	private static final int MODE1_AUTO_INCREMENT = 0x20;   // MODE1 register auto-increment bit
+	private static final int FLUSH_DELAY          = 2000;   // delay in microseconds to collect modified channels before writing
+	private static final int MAX_BURST_CHANNELS   = 8;      // channels per burst, an I2C block write is limited to 32 bytes
+
+	private static final Map<Integer,PCA9685Device> deviceMap = new HashMap<>();   // all devices, key is the I2C address
+	private static boolean                          resetDone = false;             // software reset on I2C bus done
+
+	// thread executing all I2C bus writes
+	private static final ScheduledExecutorService busThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "PCA9685 bus");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final int       deviceAddress;                             // I2C device address
+	private final I2C       i2c;                                       // pi4j I2C device or null without pi4j context
+	private final int[]     pwm         = new int[CHANNEL_COUNT];      // PWM value of each channel
+	private final boolean[] fullOff     = new boolean[CHANNEL_COUNT];  // full off bit of each channel
+	private final byte[]    writeBuffer = new byte[CHANNEL_COUNT*4];   // buffer for burst write, only used on bus thread
+	private int             dirtyMask   = 0;                           // bit mask of channels modified since last write
+}
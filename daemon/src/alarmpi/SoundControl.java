@@ -4,11 +4,14 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
 import com.pi4j.context.Context;
 import com.pi4j.exception.Pi4JException;
 import com.pi4j.io.gpio.digital.DigitalOutput;
@@ -48,14 +51,25 @@ public class SoundControl {
 	}
 	
 	/**
-	 * Default constructor, requires a configuration object
-	 * @param configuration configuration object
+	 * private constructor for the singleton object, mpd gets accessed at the configured address
+	 * @param pi4j PI4J context or null if no GPIO is available
 	 */
 	private SoundControl(Context pi4j) {
+		this(pi4j, null);
+	}
+	
+	/**
+	 * Constructor. Only used directly by tests
+	 * @param pi4j       PI4J context or null if no GPIO is available
+	 * @param mpdAddress mpd address to use instead of the configured one or null
+	 */
+	SoundControl(Context pi4j,InetSocketAddress mpdAddress) {
+		this.mpdAddress = mpdAddress;
+		
 		// initialize pi4j objects for GPIO handling
 		// Sound power on uses BRCM 23 (WiringPI 04)
-		if(Configuration.getConfiguration().getRunningOnRaspberry()) {
-			log.info("running on Raspberry - initializing pi4j");
+		if(pi4j!=null) {
+			log.info("pi4j context available - initializing sound power GPIO");
 			
 	        try {
 	            var config = DigitalOutput.newConfigBuilder(pi4j)
@@ -73,9 +87,10 @@ public class SoundControl {
 	        	log.severe(e.getMessage());
 	        }
 	        
-			log.info("running on Raspberry - initializing pi4j done.");
+			log.info("initializing sound power GPIO done.");
 		}
 		else {
+			log.info("no pi4j context - sound power GPIO not initialized");
 			gpioSoundPower = null;
 		}
 				
@@ -89,7 +104,7 @@ public class SoundControl {
 	synchronized void on() {
 		log.fine("turning 5V audio supply ON");
 
-		if(Configuration.getConfiguration().getRunningOnRaspberry() && gpioSoundPower!=null) {
+		if(gpioSoundPower!=null) {
 			gpioSoundPower.high();
 		}
 		log.fine("GPIO for audio set to high");
@@ -101,13 +116,14 @@ public class SoundControl {
 	synchronized void off() {
 		log.fine("turning 5V audio supply OFF");
 		stop();
-		if(Configuration.getConfiguration().getRunningOnRaspberry() && gpioSoundPower!=null) {
+		if(gpioSoundPower!=null) {
 			gpioSoundPower.low();
 		}
 		log.fine("GPIO for audio set to low");
 		
 		activeVolume = 0;
 		activeSound  = null;
+		publishStatus();
 	}
 	
 	/**
@@ -130,6 +146,7 @@ public class SoundControl {
 		} catch (IOException e) {
 			log.severe("Exception in stop: "+e.getMessage());
 		}
+		publishStatus();
 	}
 	
 	/**
@@ -213,6 +230,7 @@ public class SoundControl {
 		}
 		
 		activeSound = sound;
+		publishStatus();
 	}
 	
 	/**
@@ -255,6 +273,7 @@ public class SoundControl {
 			log.severe("Exception in checkSound");
 			log.severe(e.getMessage());
 		}
+		publishStatus();
 	}
 	
 	/**
@@ -296,6 +315,7 @@ public class SoundControl {
 			log.severe("Exception in playFile, filename="+filename);
 			log.severe(e.getMessage());
 		}
+		publishStatus();
 	}
 	
 	/**
@@ -316,6 +336,7 @@ public class SoundControl {
 		} catch (IOException e) {
 			log.severe("Exception in setVolume: "+e.getMessage());
 		}
+		publishStatus();
 	}
 	
 	/**
@@ -337,6 +358,21 @@ public class SoundControl {
 	
 	// private methods
 	
+	/**
+	 * publishes active sound and volume as event to HTTP clients
+	 */
+	private void publishStatus() {
+		JsonObjectBuilder builder = Json.createObjectBuilder();
+		if(activeSound==null) {
+			builder.addNull("activeSound");
+		}
+		else {
+			builder.add("activeSound", activeSound.name);
+		}
+		builder.add("activeVolume", activeVolume);
+		EventBroadcaster.getBroadcaster().publish("sound", "", builder.build().toString());
+	}
+	
 	/**
 	 * plays an internet radio stream
 	 * @param uri    radio stream URI
@@ -379,7 +415,12 @@ public class SoundControl {
 	 * @throws IOException
 	 */
 	synchronized private void connect() throws UnknownHostException, IOException {
-		socket = new Socket(Configuration.getConfiguration().getMpdAddress(),Configuration.getConfiguration().getMpdPort());
+		if(mpdAddress!=null) {
+			socket = new Socket(mpdAddress.getAddress(),mpdAddress.getPort());
+		}
+		else {
+			socket = new Socket(Configuration.getConfiguration().getMpdAddress(),Configuration.getConfiguration().getMpdPort());
+		}
 		socket.setKeepAlive(true);
 		reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
 		writer = new PrintWriter(socket.getOutputStream(),true);
@@ -447,6 +488,7 @@ public class SoundControl {
 	private static SoundControl  object = null;   // singleton object
 
 	private DigitalOutput        gpioSoundPower = null; // pi4j digital output pin to control sound power
+	private final InetSocketAddress mpdAddress;         // mpd address overriding the configuration or null
 	private final static int     GPIO_SOUND_POWER = 23; // GPIO number for sound power control
 	
 	private Socket               socket;                // TCP socket
@@ -0,0 +1,175 @@
+package alarmpi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * serves the web interface from memory.
+ * All files of the directory are read once at startup, text files are compressed with gzip once as well.
+ * Each file has a strong entity tag made of its content hash, so browsers revalidate with If-None-Match
+ * and get 304 as long as the file is unchanged. Brotli is not available in the JDK, so gzip is the only encoding
+ */
+class StaticContentHandler implements HttpHandler {
+
+	/**
+	 * constructor, reads all files in the directory and its subdirectories
+	 * @param directory directory with the web interface
+	 * @throws IOException if the directory cannot be read
+	 */
+	StaticContentHandler(Path directory) throws IOException {
+		List<Path> files;
+		try(Stream<Path> stream = Files.walk(directory)) {
+			files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+
+		for(Path file:files) {
+			String path = directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+			contentMap.put(path, new Content(path, Files.readAllBytes(file)));
+		}
+
+		log.config("serving "+contentMap.size()+" files of web interface from "+directory);
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			Headers headers = exchange.getResponseHeaders();
+			headers.set("Server", "AlarmPi");
+
+			String method = exchange.getRequestMethod();
+			if(!method.equals("GET") && !method.equals("HEAD")) {
+				headers.set("Allow", "GET, HEAD");
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+
+			String path = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+			if(path.isEmpty() || path.endsWith("/")) {
+				path += INDEX;
+			}
+			Content content = contentMap.get(path);
+			if(content==null) {
+				log.fine("web interface file "+path+" not found");
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+
+			boolean gzip = content.gzipBytes!=null && JsonServer.acceptsGzip(exchange.getRequestHeaders());
+			String  tag  = gzip ? content.gzipEntityTag : content.entityTag;
+			headers.set("ETag", tag);
+			headers.set("Cache-Control", content.cacheControl);
+			headers.set("Vary", "Accept-Encoding");
+
+			if(JsonStatusCache.matches(exchange.getRequestHeaders().getFirst("If-None-Match"), tag)) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+
+			headers.set("Content-Type", content.contentType);
+			if(gzip) {
+				headers.set("Content-Encoding", "gzip");
+			}
+			if(method.equals("HEAD")) {
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+
+			byte[] body = gzip ? content.gzipBytes : content.bytes;
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream stream = exchange.getResponseBody()) {
+				stream.write(body);
+			}
+		}
+		catch(IOException e) {
+			log.info("HTTP connection to "+exchange.getRemoteAddress()+" failed: "+e.getMessage());
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	//
+	// private members
+	//
+	private static final Logger log = Logger.getLogger( StaticContentHandler.class.getName() );
+
+	static final String CONTEXT = "/ui/";          // context path of the web interface
+	static final String INDEX   = "index.html";    // file returned for directories
+
+	// content type by file extension, types starting with text/ or listed here get compressed
+	private static final Map<String,String> contentTypeMap = Map.of(
+			"html", "text/html; charset=utf-8",
+			"css",  "text/css; charset=utf-8",
+			"js",   "text/javascript; charset=utf-8",
+			"json", "application/json; charset=utf-8",
+			"svg",  "image/svg+xml",
+			"png",  "image/png",
+			"jpg",  "image/jpeg",
+			"ico",  "image/x-icon");
+	private static final List<String> compressedTypeList = List.of("application/json; charset=utf-8", "image/svg+xml");
+
+	// private class holding one file
+	private static class Content {
+		Content(String path,byte[] bytes) {
+			String extension = path.substring(path.lastIndexOf('.')+1).toLowerCase();
+			this.contentType   = contentTypeMap.getOrDefault(extension, "application/octet-stream");
+			this.bytes         = bytes;
+			this.entityTag     = "\""+hash(bytes)+"\"";
+			this.gzipEntityTag = JsonStatusCache.gzipEntityTag(entityTag);
+
+			// pages must be revalidated to pick up updates, everything else may be used for a day without asking
+			this.cacheControl = extension.equals("html") ? "no-cache" : "public, max-age=86400";
+
+			byte[] compressed = null;
+			if(bytes.length>=JsonServer.GZIP_MIN_SIZE && (contentType.startsWith("text/") || compressedTypeList.contains(contentType))) {
+				compressed = JsonServer.gzip(bytes);
+				if(compressed.length>=bytes.length) {
+					compressed = null;
+				}
+			}
+			this.gzipBytes = compressed;
+		}
+
+		/**
+		 * @param bytes file content
+		 * @return hex string made of the first 8 bytes of the SHA-256 hash
+		 */
+		private static String hash(byte[] bytes) {
+			try {
+				byte[]        digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+				StringBuilder hex    = new StringBuilder();
+				for(int index=0 ; index<8 ; index++) {
+					hex.append(String.format("%02x", digest[index]));
+				}
+				return hex.toString();
+			}
+			catch(NoSuchAlgorithmException e) {
+				// SHA-256 is part of every JDK
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private final String contentType;     // value of the Content-Type header
+		private final String cacheControl;    // value of the Cache-Control header
+		private final byte[] bytes;           // file content
+		private final byte[] gzipBytes;       // gzip compressed file content or null if not compressed
+		private final String entityTag;       // entity tag including quotes
+		private final String gzipEntityTag;   // entity tag of the compressed content
+	}
+
+	private final Map<String,Content> contentMap = new HashMap<>();   // all files by path relative to the directory
+}
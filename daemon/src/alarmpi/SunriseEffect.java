@@ -0,0 +1,66 @@
+package alarmpi;
+
+/**
+ * Light effect simulating a sunrise: LEDs start in a dark warm red and change to a bright white.
+ * The LEDs at the near end of the strip are ahead of the LEDs at the far end, so a gradient
+ * moves across the strip. At the end of the effect all LEDs have the same colour
+ */
+class SunriseEffect implements LightEffect {
+
+	/**
+	 * constructor
+	 * @param finalPercent final brightness in percent
+	 * @param whiteBalance scale factors for red, green and blue to get a neutral white on the LEDs
+	 */
+	SunriseEffect(double finalPercent,double[] whiteBalance) {
+		this.finalPercent = finalPercent;
+
+		colours = new ColourTemperatureEffect(KELVIN_START, KELVIN_END, 0.0, finalPercent, whiteBalance);
+	}
+
+	@Override
+	public void render(double progress,byte[] frame,int offset,int ledCount) {
+		if(delays==null || delays.length!=ledCount) {
+			delays = createDelays(ledCount);
+		}
+
+		final double scaledProgress = progress*(1.0+SPREAD);
+		for(int led=0 ; led<ledCount ; led++) {
+			colours.copyColour(scaledProgress-delays[led], frame, offset+led*3);
+		}
+	}
+
+	@Override
+	public double getBrightness(double progress) {
+		return finalPercent*progress;
+	}
+
+	//
+	// private methods
+	//
+
+	/**
+	 * calculates the delay of each LED, increasing from the near end to the far end of the strip
+	 * @param ledCount number of LEDs
+	 * @return delay of each LED, 0...SPREAD
+	 */
+	private static double[] createDelays(int ledCount) {
+		double delays[] = new double[ledCount];
+		for(int led=0 ; led<ledCount ; led++) {
+			delays[led] = ledCount>1 ? SPREAD*(double)led/(double)(ledCount-1) : 0.0;
+		}
+
+		return delays;
+	}
+
+	//
+	// private members
+	//
+	private static final int    KELVIN_START = 1000;   // colour temperature at start of the sunrise
+	private static final int    KELVIN_END   = 5500;   // colour temperature at end of the sunrise
+	private static final double SPREAD       = 0.3;    // progress difference between near end and far end of the strip
+
+	private final double                  finalPercent;   // final brightness in percent
+	private final ColourTemperatureEffect colours;        // precomputed colours along the sunrise
+	private double[]                      delays = null;  // delay of each LED, created on first render
+}
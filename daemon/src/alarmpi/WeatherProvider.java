@@ -7,7 +7,6 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 import javax.json.Json;
@@ -18,10 +17,10 @@ import javax.json.JsonReader;
 
 
 /**
- * Class implementing the Callable interface to return the weather forecast for today
+ * Class implementing the AnnouncementProvider interface to return the weather forecast for today
  * using openweathermap.org
  */
-public class WeatherProvider implements Callable<String> {
+public class WeatherProvider implements AnnouncementProvider {
 	
 	/**
 	 * constructor
@@ -29,6 +28,11 @@ public class WeatherProvider implements Callable<String> {
 	public WeatherProvider(Integer temperature) {
 		this.temperature = temperature;
 	}
+	
+	@Override
+	public String getName() {
+		return "weather";
+	}
 
 	/**
 	 * builds the URL for OpenWeatherMap
@@ -0,0 +1,101 @@
+package alarmpi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+class AlarmPersistenceTest {
+
+	@Test
+	void testCoalescing(@TempDir Path tempDir) throws InterruptedException {
+		Path file = tempDir.resolve("alarmlist.json");
+		AlarmPersistence persistence = new AlarmPersistence(file, 100);
+
+		for(int i=0 ; i<20 ; i++) {
+			persistence.store(List.of(alarm("a", i), alarm("b", 0)));
+		}
+		assertThat(Files.exists(file),is(false));
+		assertThat(Files.exists(journal(file)),is(true));
+
+		Thread.sleep(500);
+		assertThat(persistence.getWriteCount(),is(1));
+		assertThat(Files.exists(journal(file)),is(false));
+		assertThat(Files.exists(tempDir.resolve("alarmlist.json.tmp")),is(false));
+
+		JsonArray alarms = new AlarmPersistence(file, 100).restore();
+		assertThat(alarms,hasSize(2));
+		assertThat(alarms.getJsonObject(0).getInt("value"),is(19));
+	}
+
+	@Test
+	void testJournalRecovery(@TempDir Path tempDir) throws IOException {
+		Path file = tempDir.resolve("alarmlist.json");
+		AlarmPersistence persistence = new AlarmPersistence(file, 100);
+		persistence.store(List.of(alarm("a", 1), alarm("b", 1), alarm("c", 1)));
+		persistence.flush();
+
+		// changes after the last write of the file only end up in the journal
+		AlarmPersistence crashed = new AlarmPersistence(file, 60000);
+		crashed.restore();
+		crashed.store(List.of(alarm("a", 2), alarm("b", 1)));
+
+		// power cut during last append
+		Files.writeString(journal(file), "{\"id\":\"a\",\"val", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+		JsonArray alarms = new AlarmPersistence(file, 100).restore();
+		assertThat(alarms,hasSize(2));
+		assertThat(alarms.getJsonObject(0).getString("id"),is("a"));
+		assertThat(alarms.getJsonObject(0).getInt("value"),is(2));
+		assertThat(alarms.getJsonObject(1).getString("id"),is("b"));
+	}
+
+	@Test
+	void testRetry(@TempDir Path tempDir) throws IOException, InterruptedException {
+		Path file    = tempDir.resolve("alarmlist.json");
+		Path tmpFile = tempDir.resolve("alarmlist.json.tmp");
+		AlarmPersistence persistence = new AlarmPersistence(file, 100);
+
+		// a directory in place of the temporary file makes the write fail
+		Files.createDirectory(tmpFile);
+		persistence.store(List.of(alarm("a", 1)));
+		Thread.sleep(300);
+		assertThat(persistence.getWriteCount(),is(0));
+		assertThat(Files.exists(journal(file)),is(true));
+
+		// the write gets retried without a further change
+		Files.delete(tmpFile);
+		for(int wait=0 ; wait<100 && persistence.getWriteCount()==0 ; wait++) {
+			Thread.sleep(50);
+		}
+		assertThat(persistence.getWriteCount(),is(1));
+		assertThat(Files.exists(journal(file)),is(false));
+		assertThat(new AlarmPersistence(file, 100).restore().getJsonObject(0).getInt("value"),is(1));
+	}
+
+	@Test
+	void testNoFile(@TempDir Path tempDir) {
+		assertThat(new AlarmPersistence(tempDir.resolve("alarmlist.json"), 100).restore(),is(nullValue()));
+	}
+
+	private static JsonObject alarm(String id,int value) {
+		return Json.createObjectBuilder().add("id", id).add("value", value).build();
+	}
+
+	private static Path journal(Path file) {
+		return file.resolveSibling(file.getFileName()+".journal");
+	}
+}
@@ -4,6 +4,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.StringReader;
 import java.nio.file.Path;
@@ -12,6 +13,9 @@ import java.time.LocalTime;
 import java.time.LocalDate;
 import java.util.EnumSet;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.LogManager;
 
 import javax.json.Json;
@@ -221,7 +225,7 @@ class AlarmTest {
 		Alarm.restoreAlarmList();
 		Alarm alarm = Alarm.getAlarmList().get(0);
 		alarm.setEnabled(true);
-		alarm.getWeekDays().add(LocalDate.now().getDayOfWeek());
+		alarm.setWeekDays(EnumSet.of(LocalDate.now().getDayOfWeek()));
 		alarm.setTime(LocalTime.now().plusMinutes(1));
 		assertThat(Alarm.getNextAlarmToday(),is(alarm));
 	}
@@ -236,8 +240,67 @@ class AlarmTest {
 		Alarm.restoreAlarmList();
 		Alarm alarm = Alarm.getAlarmList().get(0);
 		alarm.setEnabled(true);
-		alarm.getWeekDays().add(LocalDate.now().getDayOfWeek().plus(1));
+		alarm.setWeekDays(EnumSet.of(LocalDate.now().getDayOfWeek().plus(1)));
 		alarm.setTime(LocalTime.now());
 		assertThat(Alarm.getNextAlarmTomorrow(),is(alarm));
 	}
+	
+	@Test
+	void testAlarmListVersion() {
+		Alarm.restoreAlarmList();
+		Alarm alarm = Alarm.getAlarmList().get(0);
+		alarm.setEnabled(false);
+		long version = Alarm.getAlarmListVersion();
+		
+		// setting the same value again is no change
+		alarm.setEnabled(false);
+		assertThat(Alarm.getAlarmListVersion(),is(version));
+		
+		alarm.setEnabled(true);
+		assertThat(Alarm.getAlarmListVersion(),is(version+1));
+		Alarm.publishAlarms();
+		assertThat(Alarm.getAlarmListVersion(),is(version+1));
+	}
+	
+	@Test
+	void testAlarmSnapshot() {
+		Alarm.restoreAlarmList();
+		Alarm.AlarmList before = Alarm.getAlarmSnapshot();
+		Alarm alarm = before.getAlarms().get(1);
+		boolean enabled = alarm.getEnabled();
+		
+		// modification publishes a new version, the old version stays unchanged
+		alarm.setEnabled(!enabled);
+		Alarm.AlarmList after = Alarm.getAlarmSnapshot();
+		assertThat(after.getVersion(),is(before.getVersion()+1));
+		assertThat(alarm.getEnabled(),is(enabled));
+		assertThat(after.getAlarm(alarm.getId()).getEnabled(),is(!enabled));
+		assertThat(after.getModifiedAlarms(before),contains(alarm));
+		assertThat(after.getRemovedAlarms(before),is(empty()));
+		
+		assertThrows(UnsupportedOperationException.class, () -> after.getAlarms().clear());
+		assertThrows(UnsupportedOperationException.class, () -> alarm.getWeekDays().clear());
+	}
+	
+	@Test
+	void testListener() throws InterruptedException {
+		Alarm.restoreAlarmList();
+		BlockingQueue<Alarm.AlarmList> versions = new LinkedBlockingQueue<>();
+		Alarm.addListener("test", (previous,current) -> versions.add(current));
+		
+		Alarm alarm = Alarm.getAlarmList().get(2);
+		alarm.setTime(LocalTime.of(6, 30));
+		alarm.setTime(LocalTime.of(6, 45));
+		
+		// changes arrive in order on the listener thread
+		Alarm.AlarmList first  = versions.poll(1, TimeUnit.SECONDS);
+		Alarm.AlarmList second = versions.poll(1, TimeUnit.SECONDS);
+		assertThat(first.getAlarm(alarm.getId()).getTime(),is(LocalTime.of(6, 30)));
+		assertThat(second.getAlarm(alarm.getId()).getTime(),is(LocalTime.of(6, 45)));
+		assertThat(second.getVersion(),is(first.getVersion()+1));
+		
+		// setting the same value again is no change
+		alarm.setTime(LocalTime.of(6, 45));
+		assertThat(versions.poll(100, TimeUnit.MILLISECONDS),is(nullValue()));
+	}
 }
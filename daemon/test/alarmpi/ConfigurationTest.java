@@ -0,0 +1,72 @@
+package alarmpi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.ini4j.Ini;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+class ConfigurationTest {
+
+	@Test
+	void testValues() {
+		Configuration configuration = Configuration.load("conf/alarmpitest.cfg");
+		assertThat(configuration,is(notNullValue()));
+
+		assertThat(configuration.getValue("mpd", "port", 0),is(6600));
+		assertThat(configuration.getValue("mpd", "address", "none"),is("192.168.178.27"));
+		assertThat(configuration.getValue("mpd", "unknown", 42),is(42));
+		assertThat(configuration.getValue("unknown", "key", "default"),is("default"));
+		assertThat(configuration.getValue("unknown", "key", true),is(true));
+
+		// parsed values are cached, the default only applies to values not found
+		assertThat(configuration.getValue("mpd", "port", 1),is(6600));
+		assertThat(configuration.getValue("unknown", "key", "other"),is("other"));
+
+		// sounds get parsed once
+		assertThat(configuration.getSoundList(),is(sameInstance(configuration.getSoundList())));
+		assertThat(configuration.getSoundListAsJsonArray().size(),is(configuration.getSoundList().size()));
+		assertThrows(UnsupportedOperationException.class, () -> configuration.getSoundList().clear());
+	}
+
+	@Test
+	void testChangedSections(@TempDir Path directory) throws IOException {
+		Ini ini = new Ini(new File("conf/alarmpitest.cfg"));
+		Configuration previous = Configuration.load(store(ini, directory, "previous.cfg"));
+
+		assertThat(Configuration.getChangedSections(previous, Configuration.load(store(ini, directory, "unchanged.cfg"))),is(empty()));
+
+		ini.put("mpd", "port", 6601);
+		ini.put("sound9", "name", "new sound");
+		ini.put("weather", "location", "10115,de");
+		ini.remove("network");
+		Configuration current = Configuration.load(store(ini, directory, "current.cfg"));
+
+		assertThat(Configuration.getChangedSections(previous, current),contains("mpd", "network", "sound9", "weather"));
+		assertThat(current.getMpdPort(),is(6601));
+		assertThat(previous.getMpdPort(),is(6600));
+	}
+
+	@Test
+	void testInvalidFile(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("invalid.cfg");
+		Files.writeString(file, "[general\nname=x\n");
+
+		assertThat(Configuration.load(file.toString()),is(nullValue()));
+		assertThat(Configuration.load(directory.resolve("missing.cfg").toString()),is(nullValue()));
+	}
+
+	private static String store(Ini ini,Path directory,String name) throws IOException {
+		File file = directory.resolve(name).toFile();
+		ini.store(file);
+		return file.getPath();
+	}
+}
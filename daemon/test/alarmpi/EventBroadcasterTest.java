@@ -0,0 +1,130 @@
+package alarmpi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+
+class EventBroadcasterTest {
+
+	@Test
+	@Timeout(value=10, unit=TimeUnit.SECONDS)
+	void testEvents() throws Exception {
+		EventBroadcaster broadcaster = new EventBroadcaster(1, 60000, 10000);
+
+		JsonServer server = new JsonServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2, 2, 4);
+		server.createContext("/events", broadcaster);
+		server.start();
+
+		try {
+			HttpClient  client  = HttpClient.newHttpClient();
+			HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:"+server.getPort()+"/events")).build();
+
+			HttpResponse<Stream<String>> response = client.send(request, BodyHandlers.ofLines());
+			assertThat(response.statusCode(),is(200));
+			assertThat(response.headers().firstValue("Content-Type").orElse(""),startsWith("text/event-stream"));
+
+			Iterator<String> lines = response.body().iterator();
+			assertThat(lines.next(),is("retry: 3000"));
+			assertThat(lines.next(),is(""));
+			while(broadcaster.getClientCount()==0) {
+				Thread.sleep(10);
+			}
+
+			// second client exceeds the limit
+			assertThat(client.send(request, BodyHandlers.discarding()).statusCode(),is(503));
+
+			broadcaster.publish("sound", "", "{\"activeVolume\":10}");
+			assertThat(lines.next(),is("event: sound"));
+			assertThat(lines.next(),is("data: {\"activeVolume\":10}"));
+			assertThat(lines.next(),is(""));
+
+			// unchanged data is not sent again
+			broadcaster.publish("sound", "", "{\"activeVolume\":10}");
+			broadcaster.publish("light", "1", "{\"id\":1,\"brightness\":50}");
+			assertThat(lines.next(),is("event: light"));
+			assertThat(lines.next(),is("data: {\"id\":1,\"brightness\":50}"));
+			assertThat(lines.next(),is(""));
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	@Timeout(value=30, unit=TimeUnit.SECONDS)
+	void testStalledClient() throws Exception {
+		EventBroadcaster broadcaster = new EventBroadcaster(2, 60000, 500);
+
+		JsonServer server = new JsonServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4, 4, 4);
+		server.createContext("/events", broadcaster);
+		server.start();
+
+		try (Socket stalled = new Socket()) {
+			// client which connects and never reads
+			stalled.setReceiveBufferSize(1024);
+			stalled.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+			OutputStream stream = stalled.getOutputStream();
+			stream.write(("GET /events HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			stream.flush();
+			while(broadcaster.getClientCount()==0) {
+				Thread.sleep(10);
+			}
+
+			HttpClient  client  = HttpClient.newHttpClient();
+			HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:"+server.getPort()+"/events")).build();
+
+			HttpResponse<Stream<String>> response = client.send(request, BodyHandlers.ofLines());
+			Iterator<String> lines = response.body().iterator();
+			assertThat(lines.next(),is("retry: 3000"));
+			assertThat(lines.next(),is(""));
+			while(broadcaster.getClientCount()<2) {
+				Thread.sleep(10);
+			}
+
+			// the other client keeps getting every event until the stalled client gets dropped
+			String padding = "x".repeat(65536);
+			int    id      = 0;
+			while(broadcaster.getClientCount()==2) {
+				String data = "{\"id\":"+id+",\"padding\":\""+padding+"\"}";
+				broadcaster.publish("light", Integer.toString(id), data);
+				assertThat(lines.next(),is("event: light"));
+				assertThat(lines.next(),is("data: "+data));
+				assertThat(lines.next(),is(""));
+				id++;
+			}
+
+			// and still gets events afterwards
+			broadcaster.publish("sound", "", "{\"activeVolume\":10}");
+			assertThat(lines.next(),is("event: sound"));
+			assertThat(lines.next(),is("data: {\"activeVolume\":10}"));
+			assertThat(broadcaster.getClientCount(),is(1));
+
+			// the connection of the dropped client got closed
+			stalled.setSoTimeout(5000);
+			InputStream input  = stalled.getInputStream();
+			byte[]      buffer = new byte[65536];
+			while(input.read(buffer)>=0);
+		}
+		finally {
+			server.stop();
+		}
+	}
+}
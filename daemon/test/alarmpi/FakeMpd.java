@@ -0,0 +1,98 @@
+package alarmpi;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal stand-in for the mpd TCP interface, enough for SoundControl:
+ * every connection gets the version greeting, every command gets OK. status reports a playing
+ * player, lsinfo reports a song duration. Commands get answered after a configurable delay
+ * to model the latency of a real mpd on a Raspberry Pi
+ */
+class FakeMpd {
+
+	/**
+	 * starts the fake mpd on a free port of the loopback interface
+	 * @param delay delay in milliseconds before each answer
+	 * @throws IOException if the server socket cannot be created
+	 */
+	FakeMpd(int delay) throws IOException {
+		this.delay   = delay;
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+		Thread thread = new Thread(this::accept, "FakeMpd");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return port the fake mpd listens on
+	 */
+	int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return number of commands received so far
+	 */
+	long getCommandCount() {
+		return commandCount.get();
+	}
+
+	//
+	// private methods
+	//
+
+	private void accept() {
+		while(!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				Thread thread = new Thread(() -> serve(socket), "FakeMpd connection");
+				thread.setDaemon(true);
+				thread.start();
+			}
+			catch(IOException e) {
+				return;
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try(socket;
+			BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			PrintWriter    writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+			writer.print("OK MPD 0.23.5\n");
+			writer.flush();
+
+			String command;
+			while((command=reader.readLine())!=null) {
+				commandCount.incrementAndGet();
+				if(delay>0) {
+					Thread.sleep(delay);
+				}
+				if(command.equals("status")) {
+					writer.print("volume: 50\nstate: play\n");
+				}
+				else if(command.startsWith("lsinfo")) {
+					writer.print("Time: 10\n");
+				}
+				writer.print("OK\n");
+				writer.flush();
+			}
+		}
+		catch(IOException | InterruptedException e) {
+			// client closed connection
+		}
+	}
+
+	private final ServerSocket serverSocket;                       // server socket
+	private final int          delay;                              // delay before each answer in milliseconds
+	private final AtomicLong   commandCount = new AtomicLong();    // number of received commands
+}
@@ -0,0 +1,368 @@
+package alarmpi;
+
+import java.io.File;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+
+import org.ini4j.Ini;
+
+/**
+ * HTTP load test of the JSON interface. Starts the daemon locally with simulated hardware and a fake mpd
+ * (controller, alarm list and the complete HTTP server) or targets a running daemon, replays a mix of
+ * web UI and Android app requests and reports throughput and latency percentiles per request type:
+ * mvn -Ploadtest test -Dloadtest="-clients 8 -duration 30 -alarm"
+ * options:
+ *   -clients n    number of concurrent clients (default 8)
+ *   -duration s   measurement time in seconds (default 30)
+ *   -warmup s     warmup time in seconds, not measured (default 5)
+ *   -think ms     pause of each client between two requests (default 0: as fast as possible)
+ *   -alarm        fires an alarm during the measurement, latencies get reported before and after its start
+ *   -url url      targets a running daemon, e.g. http://alarmpi:3948
+ */
+public class HttpLoadHarness {
+
+	// request mix of web UI and Android app
+	private enum RequestType {
+		STATUS_POLL (40),   // web UI / app polling the status document with If-None-Match
+		STATUS_FULL (15),   // app start: full status document, gzip accepted
+		GET_ALARM   (10),   // single alarm resource
+		POST_LIGHT  (15),   // brightness slider of the web UI
+		POST_SOUND  (5),    // volume change of the app
+		POST_ALARM  (5),    // alarm submission of the web UI (complete alarm objects)
+		PATCH_ALARM (10);   // partial alarm update
+
+		RequestType(int weight) {
+			this.weight = weight;
+		}
+
+		private final int weight;   // relative frequency in the mix
+	}
+
+	public static void main(String[] args) throws Exception {
+		int     clients  = 8;
+		int     duration = 30;
+		int     warmup   = 5;
+		int     think    = 0;
+		boolean alarm    = false;
+		String  url      = null;
+		for(int index=0 ; index<args.length ; index++) {
+			switch(args[index]) {
+				case "-clients":  clients  = Integer.parseInt(args[++index]); break;
+				case "-duration": duration = Integer.parseInt(args[++index]); break;
+				case "-warmup":   warmup   = Integer.parseInt(args[++index]); break;
+				case "-think":    think    = Integer.parseInt(args[++index]); break;
+				case "-alarm":    alarm    = true; break;
+				case "-url":      url      = args[++index]; break;
+				default:
+					System.err.println("unknown option "+args[index]);
+					return;
+			}
+		}
+		if(alarm && url!=null) {
+			System.err.println("-alarm is only possible with a locally started daemon");
+			return;
+		}
+
+		if(url==null) {
+			url = startDaemon();
+		}
+		System.out.println("load test against "+url+": "+clients+" clients, warmup "+warmup+"s, duration "+duration+"s");
+
+		HttpLoadHarness harness = new HttpLoadHarness(url, think);
+		harness.run(clients, warmup);
+
+		long alarmStart = Long.MAX_VALUE;
+		if(alarm) {
+			alarmStart = scheduleAlarm();
+			duration   = (int)Long.max(duration, TimeUnit.NANOSECONDS.toSeconds(alarmStart-System.nanoTime())+ALARM_MEASUREMENT);
+			System.out.println("alarm starts in "+TimeUnit.NANOSECONDS.toSeconds(alarmStart-System.nanoTime())+"s, measuring for "+duration+"s");
+		}
+
+		List<long[]> samples = harness.run(clients, duration);
+		if(alarm) {
+			report("before alarm", samples, Long.MIN_VALUE, alarmStart);
+			report("alarm active", samples, alarmStart, Long.MAX_VALUE);
+		}
+		else {
+			report("all requests", samples, Long.MIN_VALUE, Long.MAX_VALUE);
+		}
+
+		System.exit(0);
+	}
+
+	/**
+	 * constructor, reads the alarm list of the daemon
+	 * @param url   base URL of the daemon
+	 * @param think pause between two requests in milliseconds
+	 * @throws Exception
+	 */
+	private HttpLoadHarness(String url,int think) throws Exception {
+		this.url   = url;
+		this.think = think;
+
+		HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url+"/alarms")).build(), BodyHandlers.ofString());
+		JsonArray alarms = Json.createReader(new StringReader(response.body())).readArray();
+
+		// the last alarm is left alone, it gets used to fire an alarm
+		alarmList = new ArrayList<>();
+		for(int index=0 ; index<alarms.size()-1 ; index++) {
+			alarmList.add(alarms.getJsonObject(index));
+		}
+
+		for(RequestType type:RequestType.values()) {
+			totalWeight += type.weight;
+		}
+	}
+
+	/**
+	 * runs the clients
+	 * @param clients  number of clients
+	 * @param duration duration in seconds
+	 * @return samples: request type, start time (System.nanoTime), latency in nanoseconds, 1 if failed
+	 * @throws InterruptedException
+	 */
+	private List<long[]> run(int clients,int duration) throws InterruptedException {
+		long               end     = System.nanoTime()+TimeUnit.SECONDS.toNanos(duration);
+		List<List<long[]>> samples = new ArrayList<>();
+		Thread[]           threads = new Thread[clients];
+		for(int index=0 ; index<clients ; index++) {
+			final List<long[]> clientSamples = new ArrayList<>();
+			samples.add(clientSamples);
+			threads[index] = new Thread(() -> {
+				String entityTag = null;
+				while(System.nanoTime()<end) {
+					RequestType type  = nextType();
+					long        start = System.nanoTime();
+					boolean     failed;
+					try {
+						HttpResponse<byte[]> response = client.send(createRequest(type, entityTag), BodyHandlers.ofByteArray());
+						failed = response.statusCode()>=400;
+						if(type==RequestType.STATUS_POLL) {
+							entityTag = response.headers().firstValue("ETag").orElse(entityTag);
+						}
+					}
+					catch(Exception e) {
+						failed = true;
+					}
+					clientSamples.add(new long[] {type.ordinal(), start, System.nanoTime()-start, failed ? 1 : 0});
+
+					if(think>0) {
+						try {
+							Thread.sleep(think);
+						}
+						catch(InterruptedException e) {
+							return;
+						}
+					}
+				}
+			}, "client "+index);
+			threads[index].start();
+		}
+
+		List<long[]> allSamples = new ArrayList<>();
+		for(int index=0 ; index<clients ; index++) {
+			threads[index].join();
+			allSamples.addAll(samples.get(index));
+		}
+
+		return allSamples;
+	}
+
+	/**
+	 * @return type of the next request, chosen randomly according to the request mix
+	 */
+	private RequestType nextType() {
+		int value = ThreadLocalRandom.current().nextInt(totalWeight);
+		for(RequestType type:RequestType.values()) {
+			value -= type.weight;
+			if(value<0) {
+				return type;
+			}
+		}
+		return RequestType.STATUS_POLL;
+	}
+
+	/**
+	 * creates a request
+	 * @param type      request type
+	 * @param entityTag entity tag of the status document the client has or null
+	 * @return request
+	 */
+	private HttpRequest createRequest(RequestType type,String entityTag) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		JsonObject        alarm  = alarmList.isEmpty() ? null : alarmList.get(random.nextInt(alarmList.size()));
+
+		switch(type) {
+			case STATUS_POLL:
+				HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url+"/"));
+				if(entityTag!=null) {
+					builder.header("If-None-Match", entityTag);
+				}
+				return builder.build();
+			case STATUS_FULL:
+				return HttpRequest.newBuilder(URI.create(url+"/")).header("Accept", "application/json").header("Accept-Encoding", "gzip").build();
+			case GET_ALARM:
+				return HttpRequest.newBuilder(URI.create(url+"/alarms/"+alarm.getString("id"))).build();
+			case POST_LIGHT:
+				return post("/", "{\"lights\":[{\"id\":1,\"brightness\":"+random.nextInt(10, 60)+"}]}");
+			case POST_SOUND:
+				return post("/", "{\"soundStatus\":{\"activeVolume\":"+random.nextInt(20, 60)+"}}");
+			case POST_ALARM:
+				JsonObject modified = Json.createObjectBuilder(alarm).add("skipOnce", random.nextBoolean()).build();
+				return post("/", "{\"alarms\":["+modified+"]}");
+			case PATCH_ALARM:
+				return HttpRequest.newBuilder(URI.create(url+"/alarms/"+alarm.getString("id")))
+						.method("PATCH", BodyPublishers.ofString("{\"skipOnce\":"+random.nextBoolean()+"}")).build();
+			default:
+				throw new IllegalArgumentException("unknown request type "+type);
+		}
+	}
+
+	private HttpRequest post(String path,String body) {
+		return HttpRequest.newBuilder(URI.create(url+path)).POST(BodyPublishers.ofString(body)).build();
+	}
+
+	/**
+	 * prints throughput and latency percentiles per request type
+	 * @param title   title
+	 * @param samples samples
+	 * @param from    first start time of the reported samples (System.nanoTime)
+	 * @param to      start time of the first sample not reported (System.nanoTime)
+	 */
+	private static void report(String title,List<long[]> samples,long from,long to) {
+		List<long[]> selected = samples.stream().filter(sample -> sample[1]>=from && sample[1]<to).collect(Collectors.toList());
+		if(selected.isEmpty()) {
+			System.out.println(title+": no requests");
+			return;
+		}
+		long begin = selected.stream().mapToLong(sample -> sample[1]).min().getAsLong();
+		long end   = selected.stream().mapToLong(sample -> sample[1]+sample[2]).max().getAsLong();
+
+		System.out.println();
+		System.out.println(String.format("%s: %d requests in %.1fs, %.0f requests/s", title, selected.size(), (end-begin)/1e9, selected.size()*1e9/(end-begin)));
+		System.out.println(String.format("%-12s %9s %9s %9s %9s %9s", "request", "count", "errors", "p50 ms", "p99 ms", "max ms"));
+		for(RequestType type:RequestType.values()) {
+			printLine(type.name(), selected.stream().filter(sample -> sample[0]==type.ordinal()).collect(Collectors.toList()));
+		}
+		printLine("total", selected);
+	}
+
+	private static void printLine(String name,List<long[]> samples) {
+		if(samples.isEmpty()) {
+			System.out.println(String.format("%-12s %9d", name, 0));
+			return;
+		}
+		long[] latencies = samples.stream().mapToLong(sample -> sample[2]).sorted().toArray();
+		long   errors    = samples.stream().filter(sample -> sample[3]==1).count();
+		System.out.println(String.format("%-12s %9d %9d %9.2f %9.2f %9.2f", name, latencies.length, errors,
+				percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[latencies.length-1]/1e6));
+	}
+
+	/**
+	 * @param sorted sorted latencies in nanoseconds
+	 * @param p      percentile (0..1)
+	 * @return percentile in milliseconds
+	 */
+	private static double percentile(long[] sorted,double p) {
+		int index = (int)Math.ceil(p*sorted.length)-1;
+		return sorted[Integer.max(index, 0)]/1e6;
+	}
+
+	/**
+	 * starts the daemon with simulated hardware and a fake mpd
+	 * @return base URL of the HTTP server
+	 * @throws Exception
+	 */
+	private static String startDaemon() throws Exception {
+		// logging output would dominate the measurement, failed requests show up in the report
+		Logger.getLogger("alarmpi").setLevel(Level.OFF);
+
+		Path    directory = Files.createTempDirectory("alarmpi-loadtest");
+		FakeMpd mpd       = new FakeMpd(MPD_DELAY);
+
+		Ini ini = new Ini(new File("conf/alarmpitest.cfg"));
+		ini.put("mpd", "address", "127.0.0.1");
+		ini.put("mpd", "port", mpd.getPort());
+		ini.put("mpd", "files", directory.toString()+File.separator);
+		ini.put("light1", "type", "pca9685");
+		ini.put("light1", "name", "ceiling");
+		ini.put("light1", "deviceAddress", 65);
+		ini.put("light1", "pwmOffset", 55);
+		ini.put("light1", "pwmFullScale", 4095);
+		ini.put("light2", "type", "ws2801");
+		ini.put("light2", "name", "strip");
+		ini.put("light2", "count", 150);
+		ini.put("light2", "dimUpEffect", "sunrise");
+		ini.put("network", "wwwDirectory", "www");
+		File configFile = directory.resolve("alarmpi.cfg").toFile();
+		ini.store(configFile);
+
+		Configuration.read(configFile.getPath());
+		Alarm.setStorageDirectory(directory.toString());
+		SoundControl.setPi4jContext(SimulatedHardware.getContext());
+
+		Controller controller = new Controller(SimulatedHardware.getContext());
+		Thread controllerThread = new Thread(controller, "Controller");
+		controllerThread.setDaemon(true);
+		controllerThread.start();
+
+		// the controller thread loads the alarm list
+		for(int wait=0 ; wait<100 && Alarm.getAlarmList().isEmpty() ; wait++) {
+			Thread.sleep(50);
+		}
+
+		JsonServer server = AlarmPi.startJsonServer(Configuration.getConfiguration(), controller,
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		return "http://127.0.0.1:"+server.getPort();
+	}
+
+	/**
+	 * sets the last alarm of the list to start (begin of fade in) within the next one or two minutes
+	 * @return start time of the alarm (System.nanoTime)
+	 */
+	private static long scheduleAlarm() {
+		List<Alarm> alarms     = Alarm.getAlarmList();
+		int         fadeIn     = alarms.get(alarms.size()-1).getFadeInDuration();
+		LocalTime   now        = LocalTime.now();
+		LocalTime   alarmTime  = now.plusSeconds(fadeIn+80).truncatedTo(ChronoUnit.MINUTES);
+		LocalTime   alarmStart = alarmTime.minusSeconds(fadeIn);
+
+		Alarm.setAlarmToday(alarmTime);
+		return System.nanoTime()+Duration.between(now, alarmStart).toNanos();
+	}
+
+	//
+	// private members
+	//
+	private static final int MPD_DELAY         = 5;    // answer delay of the fake mpd in milliseconds
+	private static final int ALARM_MEASUREMENT = 30;   // measurement time after alarm start in seconds
+
+	private final String           url;                                      // base URL of the daemon
+	private final int              think;                                    // pause between two requests in milliseconds
+	private final List<JsonObject> alarmList;                                // alarms used for modifications
+	private final HttpClient       client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+	private int                    totalWeight = 0;                          // sum of all request weights
+}
@@ -0,0 +1,100 @@
+package alarmpi;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * measures building the status document and parsing the POST requests of the JSON interface.
+ * The status document gets built by JsonStatusCache, which replaced building one Json object per request.
+ * Allocation per request gets reported with the GC profiler:
+ * mvn -Pbenchmark test -Dbenchmark="JsonApiBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonApiBenchmark {
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Configuration.read("conf/alarmpitest.cfg");
+		Alarm.setStorageDirectory(Files.createTempDirectory("alarmpi-benchmark").toString());
+		Alarm.restoreAlarmList();
+
+		// fixed sound and light status, the controller needs the complete hardware. The sound status
+		// is keyed on a counter, so that statusDocumentChanged can modify one fragment per request
+		JsonArray lights = Json.createArrayBuilder()
+				.add(Json.createObjectBuilder().add("id", 1).add("name", "ceiling").add("brightness", 40))
+				.add(Json.createObjectBuilder().add("id", 2).add("name", "strip").add("brightness", 0).add("colourTemperature", 6500))
+				.build();
+
+		statusCache = JsonRequestHandler.createStatusCache(() -> counter,
+				() -> Json.createObjectBuilder().add("activeSound", "").add("activeVolume", counter%100).add("activeTimer", 0).build(),
+				() -> lights);
+
+		// requests as sent by the web interface: all alarms, and the brightness slider
+		alarmBody  = Json.createObjectBuilder().add("alarms", Alarm.getAlarmListAsJsonArray()).build().toString().getBytes(StandardCharsets.UTF_8);
+		lightBody  = "{\"lights\":[{\"id\":1,\"brightness\":40}]}".getBytes(StandardCharsets.UTF_8);
+		legacyPath = "/"+URLEncoder.encode(new String(lightBody, StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public JsonStatusCache.Document statusDocumentUnchanged() {
+		return statusCache.getDocument();
+	}
+
+	@Benchmark
+	public JsonStatusCache.Document statusDocumentChanged() {
+		counter++;
+		return statusCache.getDocument();
+	}
+
+	@Benchmark
+	public byte[] statusDocumentGzip() {
+		return JsonServer.gzip(statusCache.getDocument().getBytes());
+	}
+
+	@Benchmark
+	public JsonObject parseAlarmRequest() {
+		return JsonRequestHandler.parseRequest(alarmBody, "/");
+	}
+
+	@Benchmark
+	public JsonObject parseLightRequest() {
+		return JsonRequestHandler.parseRequest(lightBody, "/");
+	}
+
+	@Benchmark
+	public JsonObject parseLegacyRequest() {
+		return JsonRequestHandler.parseRequest(EMPTY_BODY, legacyPath);
+	}
+
+	private static final byte[] EMPTY_BODY = new byte[0];
+
+	private JsonStatusCache statusCache;
+	private byte[]          alarmBody;
+	private byte[]          lightBody;
+	private String          legacyPath;   // request path of older clients, containing the URL encoded Json object
+	private int             counter = 0;  // key of a fragment changing with every request
+}
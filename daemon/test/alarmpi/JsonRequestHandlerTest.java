@@ -0,0 +1,98 @@
+package alarmpi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+
+class JsonRequestHandlerTest {
+
+	@Test
+	void testParseRequestBody() {
+		JsonObject jsonObject = JsonRequestHandler.parseRequest("{\"actions\":[\"stopActiveAlarm\"]}".getBytes(StandardCharsets.UTF_8), "/");
+
+		assertThat(jsonObject,is(notNullValue()));
+		assertThat(jsonObject.getJsonArray("actions").getString(0),is("stopActiveAlarm"));
+	}
+
+	@Test
+	void testParseRequestLargeBody() {
+		StringBuilder json = new StringBuilder("{\"lights\":[");
+		for(int i=0 ; i<2000 ; i++) {
+			json.append(i>0 ? "," : "").append("{\"id\":").append(i).append(",\"brightness\":50}");
+		}
+		json.append("]}");
+
+		JsonObject jsonObject = JsonRequestHandler.parseRequest(json.toString().getBytes(StandardCharsets.UTF_8), "/");
+		assertThat(jsonObject.getJsonArray("lights"),hasSize(2000));
+	}
+
+	@Test
+	void testParseRequestFromPath() {
+		// older clients send the Json object URL encoded as path, separated by a blank
+		String path = "/"+URLEncoder.encode(" {\"soundStatus\":{\"activeSound\":\"radio\"}}", StandardCharsets.UTF_8);
+		JsonObject jsonObject = JsonRequestHandler.parseRequest(new byte[0], path);
+
+		assertThat(jsonObject.getJsonObject("soundStatus").getString("activeSound"),is("radio"));
+	}
+
+	@Test
+	void testParseRequestInvalid() {
+		assertThat(JsonRequestHandler.parseRequest(new byte[0], "/"),is(nullValue()));
+		assertThat(JsonRequestHandler.parseRequest("{\"alarms\":".getBytes(StandardCharsets.UTF_8), "/"),is(nullValue()));
+		assertThat(JsonRequestHandler.parseRequest("[1,2]".getBytes(StandardCharsets.UTF_8), "/"),is(nullValue()));
+	}
+
+	@Test
+	void testStatusCodes() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", new JsonRequestHandler(null));
+		server.start();
+
+		try {
+			URI uri = URI.create("http://127.0.0.1:"+server.getAddress().getPort()+"/");
+
+			HttpResponse<String> response = send(HttpRequest.newBuilder(uri).method("OPTIONS", BodyPublishers.noBody()).build());
+			assertThat(response.statusCode(),is(204));
+			assertThat(response.headers().firstValue("Access-Control-Allow-Origin").orElse(null),is("*"));
+
+			response = send(HttpRequest.newBuilder(uri).POST(BodyPublishers.ofString("{\"alarms\":")).build());
+			assertThat(response.statusCode(),is(400));
+
+			response = send(HttpRequest.newBuilder(uri).PUT(BodyPublishers.ofString("{}")).build());
+			assertThat(response.statusCode(),is(405));
+			assertThat(response.headers().firstValue("Allow").isPresent(),is(true));
+
+			// empty Json object is valid and changes nothing
+			response = send(HttpRequest.newBuilder(uri).POST(BodyPublishers.ofString("{}")).build());
+			assertThat(response.statusCode(),is(200));
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+	/**
+	 * sends a request on a new connection. The JDK client sometimes fails to send a request with body
+	 * on a connection which had a response without body before
+	 */
+	private static HttpResponse<String> send(HttpRequest request) throws Exception {
+		return HttpClient.newHttpClient().send(request, BodyHandlers.ofString());
+	}
+}
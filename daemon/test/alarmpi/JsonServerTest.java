@@ -0,0 +1,82 @@
+package alarmpi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.Headers;
+
+
+class JsonServerTest {
+
+	@Test
+	void testRequestLimit() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		JsonServer server = new JsonServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2, 2, 1);
+		server.createContext("/", exchange -> {
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+		});
+		server.start();
+
+		try {
+			HttpClient  client  = HttpClient.newHttpClient();
+			HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:"+server.getPort()+"/")).build();
+			long rejected = Metrics.counter("http.rejected").sum();
+
+			// first request occupies the only slot, second one gets rejected right away
+			CompletableFuture<HttpResponse<Void>> first = client.sendAsync(request, BodyHandlers.discarding());
+			assertThat(started.await(5, TimeUnit.SECONDS),is(true));
+
+			HttpResponse<Void> second = client.send(request, BodyHandlers.discarding());
+			assertThat(second.statusCode(),is(503));
+			assertThat(second.headers().firstValue("Retry-After").orElse(null),is("1"));
+			assertThat(Metrics.counter("http.rejected").sum(),is(rejected+1));
+
+			release.countDown();
+			assertThat(first.get(5, TimeUnit.SECONDS).statusCode(),is(200));
+
+			// slot is free again
+			assertThat(client.send(request, BodyHandlers.discarding()).statusCode(),is(200));
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	void testAcceptsGzip() {
+		Headers headers = new Headers();
+		assertThat(JsonServer.acceptsGzip(headers),is(false));
+
+		headers.set("Accept-Encoding", "gzip, deflate, br");
+		assertThat(JsonServer.acceptsGzip(headers),is(true));
+		headers.set("Accept-Encoding", "br;q=1.0, gzip;q=0.5");
+		assertThat(JsonServer.acceptsGzip(headers),is(true));
+		headers.set("Accept-Encoding", "gzip;q=0");
+		assertThat(JsonServer.acceptsGzip(headers),is(false));
+		headers.set("Accept-Encoding", "identity");
+		assertThat(JsonServer.acceptsGzip(headers),is(false));
+	}
+}
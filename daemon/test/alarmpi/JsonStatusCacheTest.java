@@ -0,0 +1,57 @@
+package alarmpi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+
+
+class JsonStatusCacheTest {
+
+	@Test
+	void testFragmentsOnlyRebuiltOnChange() {
+		AtomicInteger version    = new AtomicInteger();
+		AtomicInteger buildCount = new AtomicInteger();
+
+		JsonStatusCache cache = new JsonStatusCache();
+		cache.addFragment("name", () -> "constant", () -> Json.createValue("AlarmPi"));
+		cache.addFragment("lights", version::get, () -> {
+			buildCount.incrementAndGet();
+			return Json.createArrayBuilder().add(version.get()).build();
+		});
+
+		JsonStatusCache.Document first = cache.getDocument();
+		JsonObject json = Json.createReader(new StringReader(first.getJson())).readObject();
+		assertThat(json.getString("name"),is("AlarmPi"));
+		assertThat(json.getJsonArray("lights").getInt(0),is(0));
+
+		// unchanged poll returns the same document
+		assertThat(cache.getDocument(),is(sameInstance(first)));
+		assertThat(buildCount.get(),is(1));
+
+		version.incrementAndGet();
+		JsonStatusCache.Document second = cache.getDocument();
+		assertThat(buildCount.get(),is(2));
+		assertThat(second.getEntityTag(),is(not(first.getEntityTag())));
+		assertThat(second.getJson(),containsString("[1]"));
+	}
+
+	@Test
+	void testMatches() {
+		JsonStatusCache cache = new JsonStatusCache();
+		cache.addFragment("name", () -> "constant", () -> Json.createValue("AlarmPi"));
+		JsonStatusCache.Document document = cache.getDocument();
+
+		assertThat(JsonStatusCache.matches(null, document),is(false));
+		assertThat(JsonStatusCache.matches("\"other\"", document),is(false));
+		assertThat(JsonStatusCache.matches(document.getEntityTag(), document),is(true));
+		assertThat(JsonStatusCache.matches("\"other\", W/"+document.getEntityTag(), document),is(true));
+		assertThat(JsonStatusCache.matches(document.getGzipEntityTag(), document),is(true));
+	}
+}
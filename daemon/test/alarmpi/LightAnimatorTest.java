@@ -0,0 +1,122 @@
+package alarmpi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.jupiter.api.Test;
+
+
+class LightAnimatorTest {
+
+	@Test
+	void testEasingEndpoints() {
+		for(LightAnimator.Easing easing:LightAnimator.Easing.values()) {
+			assertThat(easing.apply(0.0),is(closeTo(0.0, 1E-9)));
+			assertThat(easing.apply(1.0),is(closeTo(1.0, 1E-9)));
+			assertThat(easing.apply(0.5),is(both(greaterThan(0.0)).and(lessThan(1.0))));
+		}
+		assertThat(LightAnimator.Easing.EASE_IN_OUT.apply(0.5),is(closeTo(0.5, 1E-9)));
+	}
+
+	@Test
+	void testCrossfadeReachesTarget() throws InterruptedException {
+		LightAnimator animator = new LightAnimator(100);
+		TestLight     light    = new TestLight();
+
+		light.setBrightness(20.0);
+		animator.crossfade(light, 80.0, 1, LightAnimator.Easing.EASE_IN_OUT);
+		assertThat(animator.isAnimating(light),is(true));
+
+		Thread.sleep(1500);
+		assertThat(animator.isAnimating(light),is(false));
+		assertThat(light.getBrightness(),is(closeTo(80.0, 1E-9)));
+		assertThat(light.frameCount,is(greaterThan(10)));
+	}
+
+	@Test
+	void testDimUpOnlyIncreases() throws InterruptedException {
+		LightAnimator animator = new LightAnimator(100);
+		TestLight     light    = new TestLight();
+
+		light.setBrightness(50.0);
+		animator.dimUp(light, 40.0, 0);
+
+		Thread.sleep(200);
+		assertThat(light.getBrightness(),is(50.0));
+		assertThat(light.frameCount,is(0));
+	}
+
+	@Test
+	void testCancel() throws InterruptedException {
+		LightAnimator animator = new LightAnimator(100);
+		TestLight     light    = new TestLight();
+
+		animator.dimUp(light, 100.0, 10);
+		Thread.sleep(200);
+		animator.cancel(light);
+
+		int frameCount = light.frameCount;
+		Thread.sleep(200);
+		assertThat(animator.isAnimating(light),is(false));
+		assertThat(light.frameCount,is(frameCount));
+		assertThat(light.getBrightness(),is(lessThan(10.0)));
+	}
+
+	@Test
+	void testNewTransitionReplacesRunning() throws InterruptedException {
+		LightAnimator animator = new LightAnimator(100);
+		TestLight     light    = new TestLight();
+
+		animator.dimUp(light, 100.0, 10);
+		Thread.sleep(100);
+		animator.crossfade(light, 0.0, 0, LightAnimator.Easing.LINEAR);
+
+		Thread.sleep(200);
+		assertThat(animator.isAnimating(light),is(false));
+		assertThat(light.getBrightness(),is(0.0));
+	}
+
+	// light implementation that just records the brightness
+	private static class TestLight extends LightControl {
+		TestLight() {
+			super(1, "test");
+		}
+
+		@Override
+		void setOff() {
+			brightness = 0.0;
+		}
+
+		@Override
+		void setBrightness(double percentage) {
+			brightness = percentage;
+		}
+
+		@Override
+		void applyFrame(double percentage) {
+			frameCount++;
+			brightness = percentage;
+		}
+
+		@Override
+		double getBrightness() {
+			return brightness;
+		}
+
+		@Override
+		void setPwm(int pwmValue) {
+		}
+
+		@Override
+		int getPwm() {
+			return 0;
+		}
+
+		@Override
+		void dimUp(double finalPercent, int seconds) {
+		}
+
+		volatile double brightness = 0.0;
+		volatile int    frameCount = 0;
+	}
+}
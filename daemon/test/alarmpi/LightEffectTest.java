@@ -0,0 +1,62 @@
+package alarmpi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.jupiter.api.Test;
+
+
+class LightEffectTest {
+
+	private static final double[] NEUTRAL = {1.0,1.0,1.0};
+
+	@Test
+	void testColourTemperatures() {
+		double warm[] = ColourTemperatureEffect.getRgb(2000);
+		double cold[] = ColourTemperatureEffect.getRgb(10000);
+
+		assertThat(warm[0],is(1.0));
+		assertThat(warm[2],is(lessThan(warm[1])));
+		assertThat(cold[2],is(1.0));
+		assertThat(cold[0],is(lessThan(1.0)));
+		assertThat(ColourTemperatureEffect.getRgb(500),is(ColourTemperatureEffect.getRgb(1000)));
+	}
+
+	@Test
+	void testColourTemperatureEffect() {
+		ColourTemperatureEffect effect = new ColourTemperatureEffect(2700, 6500, 0.0, 100.0, NEUTRAL);
+		byte frame[] = new byte[5*3];
+
+		effect.render(0.0, frame, 3, 3);
+		assertThat(frame,is(new byte[15]));
+
+		effect.render(1.0, frame, 3, 3);
+		for(int led=1 ; led<=3 ; led++) {
+			assertThat(frame[led*3+0]&0xFF,is(255));
+			assertThat(frame[led*3+1]&0xFF,is(greaterThan(240)));
+			assertThat(frame[led*3+2]&0xFF,is(greaterThan(240)));
+		}
+		assertThat(frame[0],is((byte)0));
+		assertThat(frame[14],is((byte)0));
+		assertThat(effect.getBrightness(0.5),is(50.0));
+	}
+
+	@Test
+	void testSunriseGradient() {
+		SunriseEffect effect = new SunriseEffect(100.0, NEUTRAL);
+		byte frame[] = new byte[10*3];
+
+		// near end of the strip is ahead of the far end
+		effect.render(0.3, frame, 0, 10);
+		assertThat(frame[0]&0xFF,is(greaterThan(frame[27]&0xFF)));
+		assertThat(frame[0]&0xFF,is(greaterThan(frame[2]&0xFF)));
+
+		// at the end all LEDs have the same colour
+		effect.render(1.0, frame, 0, 10);
+		for(int led=1 ; led<10 ; led++) {
+			assertThat(frame[led*3+0],is(frame[0]));
+			assertThat(frame[led*3+1],is(frame[1]));
+			assertThat(frame[led*3+2],is(frame[2]));
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package alarmpi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+
+class LightGroupTest {
+
+	@Test
+	@Timeout(value=10, unit=TimeUnit.SECONDS)
+	void testTimeout() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		LightControl   slow    = new TestLight(10, "slowLight", release);
+		LightControl   fast    = new TestLight(11, "fastLight", null);
+		LightGroup     group   = new LightGroup(List.of(slow, fast), TIMEOUT);
+
+		Metrics.Timer slowLatency = Metrics.timer("light.slowLight.latency");
+		Metrics.Timer fastLatency = Metrics.timer("light.fastLight.latency");
+
+		// the group future completes after the timeout, the slow light is still busy
+		group.setBrightness(50).get();
+		assertThat(Metrics.counter("light.slowLight.timeouts").sum(),is(1L));
+		assertThat(Metrics.counter("light.fastLight.timeouts").sum(),is(0L));
+		assertThat(fastLatency.getCount(),is(1L));
+		assertThat(slowLatency.getCount(),is(0L));
+
+		// the latency of the slow light gets recorded when it completes, not at the timeout
+		Thread.sleep(2*TIMEOUT);
+		release.countDown();
+		while(slowLatency.getCount()==0) {
+			Thread.sleep(10);
+		}
+		assertThat(slowLatency.getMax(),is(greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(3*TIMEOUT))));
+		assertThat(Metrics.counter("light.slowLight.timeouts").sum(),is(1L));
+
+		group.shutdown();
+	}
+
+	// light which blocks in setBrightness until it gets released
+	private static class TestLight extends LightControl {
+		TestLight(int id,String name,CountDownLatch release) {
+			super(id, name);
+			this.release = release;
+		}
+
+		@Override
+		void setOff() {
+			brightness = 0;
+		}
+
+		@Override
+		void setBrightness(double percentage) {
+			try {
+				if(release!=null) {
+					release.await();
+				}
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			brightness = percentage;
+		}
+
+		@Override
+		double getBrightness() {
+			return brightness;
+		}
+
+		@Override
+		void setPwm(int pwmValue) {
+			setBrightness(pwmValue);
+		}
+
+		@Override
+		int getPwm() {
+			return (int)brightness;
+		}
+
+		@Override
+		void dimUp(double finalPercent,int seconds) {
+			setBrightness(finalPercent);
+		}
+
+		private final    CountDownLatch release;        // released by the test, null for no delay
+		private volatile double         brightness = 0;
+	}
+
+	private static final int TIMEOUT = 100;   // timeout of a single light in milliseconds
+}
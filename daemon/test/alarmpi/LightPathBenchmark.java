@@ -0,0 +1,80 @@
+package alarmpi;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * measures one dim step of each light type, running against the simulated hardware.
+ * Allocation per step gets reported with the GC profiler:
+ * mvn -Pbenchmark test -Dbenchmark="LightPathBenchmark -prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LightPathBenchmark {
+
+	@Setup(Level.Trial)
+	public void setup() {
+		Configuration.read("conf/alarmpitest.cfg");
+
+		Configuration.LightControlSettings settings = new Configuration.LightControlSettings();
+		settings.type          = Configuration.LightControlSettings.Type.PCA9685;
+		settings.id            = 1;
+		settings.name          = "pca";
+		settings.deviceAddress = 65;
+		settings.pwmOffset     = 55;
+		settings.pwmFullScale  = 4095;
+		settings.ledId         = 0;
+
+		pca9685 = new LightControlPCA9685(settings, SimulatedHardware.getContext());
+		ws2801  = new LightControlWS2801(2, "strip", 0, 0, LED_COUNT, true, SimulatedHardware.getContext());
+		sunrise = new SunriseEffect(100.0, new double[] {1.0,0.6,0.6});
+	}
+
+	@Benchmark
+	public double pca9685Step() {
+		pca9685.applyFrame(nextPercentage());
+		return pca9685.getBrightness();
+	}
+
+	@Benchmark
+	public double ws2801Step() {
+		ws2801.applyFrame(nextPercentage());
+		return ws2801.getBrightness();
+	}
+
+	@Benchmark
+	public double ws2801SunriseStep() {
+		step = (step+1)%STEP_COUNT;
+		ws2801.renderEffect(sunrise, step/(double)STEP_COUNT);
+		return ws2801.getBrightness();
+	}
+
+	// brightness of the next step of a dim up from 1% to 100%
+	private double nextPercentage() {
+		step = (step+1)%STEP_COUNT;
+		return 1.0+step*99.0/STEP_COUNT;
+	}
+
+	private static final int STEP_COUNT = 1500;   // one minute at 25 frames per second
+	private static final int LED_COUNT  = 150;    // LEDs of a 5m strip
+
+	private LightControlPCA9685 pca9685;
+	private LightControlWS2801  ws2801;
+	private LightEffect         sunrise;
+	private int                 step = 0;
+}
@@ -0,0 +1,282 @@
+package alarmpi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.pi4j.context.Context;
+
+/**
+ * runs the light controls against the simulated hardware and checks what ends up on the bus.
+ * Frames per second, bus transactions per frame and allocation per dim step get logged
+ */
+class LightPathTest {
+
+	@BeforeAll
+	static void setUpBeforeClass() {
+		System.setProperty( "java.util.logging.config.file", "conf/alarmpitest.logging" );
+
+		try {
+			LogManager.getLogManager().readConfiguration();
+		}
+		catch ( Exception e ) {
+			// unable to read logging configuration file
+			e.printStackTrace();
+		}
+
+		// read configuration file
+		Configuration.read("conf/alarmpitest.cfg");
+
+		pi4j = SimulatedHardware.getContext();
+
+		// the SPI device can only be created once
+		strip = new LightControlWS2801(2, "strip", 2, 1, 5, false, pi4j);
+	}
+
+	@Test
+	void testPCA9685BurstWrite() throws InterruptedException {
+		LightControlPCA9685 light0 = new LightControlPCA9685(pca9685Settings(0), pi4j);
+		LightControlPCA9685 light1 = new LightControlPCA9685(pca9685Settings(1), pi4j);
+		SimulatedHardware.SimulatedI2C i2c = SimulatedHardware.getI2C(PCA9685_ADDRESS);
+		assertThat(i2c,is(notNullValue()));
+
+		// auto-increment got enabled during initialization
+		assertThat(i2c.peek(0x00) & 0x20,is(0x20));
+
+		// both channels get written in one burst. Holding the device lock keeps the burst from starting in between
+		PCA9685Device device = PCA9685Device.getDevice(pi4j, PCA9685_ADDRESS, false);
+		PCA9685Device.awaitFlush();
+		long transactions = i2c.getTransactionCount();
+		synchronized(device) {
+			light0.setBrightness(100.0);
+			light1.setBrightness(50.0);
+		}
+		PCA9685Device.awaitFlush();
+		assertThat(i2c.getTransactionCount()-transactions,is(1L));
+		assertThat(i2c.peek(0x08)|(i2c.peek(0x09)<<8),is(light0.getPwm()));
+		assertThat(i2c.peek(0x0C)|(i2c.peek(0x0D)<<8),is(light1.getPwm()));
+
+		light1.setOff();
+		PCA9685Device.awaitFlush();
+		assertThat(i2c.peek(0x0D) & 0x10,is(0x10));
+
+		// both lights fading in parallel share the frames of the animator
+		transactions = i2c.getTransactionCount();
+		long start = System.nanoTime();
+		LightAnimator.getAnimator().crossfade(light0, 10.0, 1, LightAnimator.Easing.LINEAR);
+		LightAnimator.getAnimator().crossfade(light1, 90.0, 1, LightAnimator.Easing.LINEAR);
+		while(LightAnimator.getAnimator().isAnimating(light0) || LightAnimator.getAnimator().isAnimating(light1)) {
+			Thread.sleep(10);
+		}
+		PCA9685Device.awaitFlush();
+		double seconds = (System.nanoTime()-start)/1E9;
+		long   frames  = i2c.getTransactionCount()-transactions;
+		double expectedFrames = seconds*Configuration.getConfiguration().getLightFrameRate();
+
+		assertThat(light0.getBrightness(),is(closeTo(10.0, 0.5)));
+		assertThat(light1.getBrightness(),is(closeTo(90.0, 0.5)));
+		assertThat((double)frames,is(lessThanOrEqualTo(expectedFrames*1.2+2)));
+
+		log.info(String.format("PCA9685: %.1f frames/s, %.2f transactions/frame, %d bytes allocated per dim step",
+				frames/seconds, frames/expectedFrames, allocationPerStep(light0)));
+
+		light0.setOff();
+		light1.setOff();
+	}
+
+	@Test
+	void testPCA9685DistantChannels() throws InterruptedException {
+		// channels more than 8 apart do not fit into one 32 byte block write
+		LightControlPCA9685 light0  = new LightControlPCA9685(pca9685Settings(PCA9685_ADDRESS_DISTANT, 0), pi4j);
+		LightControlPCA9685 light15 = new LightControlPCA9685(pca9685Settings(PCA9685_ADDRESS_DISTANT, 15), pi4j);
+		SimulatedHardware.SimulatedI2C i2c = SimulatedHardware.getI2C(PCA9685_ADDRESS_DISTANT);
+
+		light0.setBrightness(100.0);
+		light15.setBrightness(50.0);
+		PCA9685Device.awaitFlush();
+		assertThat(i2c.peek(0x08)|(i2c.peek(0x09)<<8),is(light0.getPwm()));
+		assertThat(i2c.peek(0x44)|(i2c.peek(0x45)<<8),is(light15.getPwm()));
+
+		light0.setOff();
+		light15.setOff();
+		PCA9685Device.awaitFlush();
+		assertThat(i2c.peek(0x09) & 0x10,is(0x10));
+		assertThat(i2c.peek(0x45) & 0x10,is(0x10));
+	}
+
+	@Test
+	void testWS2801Frame() {
+		LightControlWS2801 light = strip;
+		SimulatedHardware.SimulatedSpi spi = SimulatedHardware.getSpi("WS2801");
+		assertThat(spi,is(notNullValue()));
+
+		light.setBrightness(100.0);
+		byte[] frame = spi.getLastWrite();
+		assertThat(frame.length,is((1+2+5)*3));
+		for(int i=0 ; i<3 ; i++) {
+			assertThat(frame[i],is((byte)0));
+			assertThat(frame[frame.length-1-i],is((byte)0));
+			assertThat(frame[frame.length-4-i],is((byte)0));
+		}
+		assertThat(frame[3]&0xFF,is(greaterThan(0)));
+
+		// an unchanged value does not get written again
+		long transactions = spi.getTransactionCount();
+		light.setBrightness(100.0);
+		assertThat(spi.getTransactionCount(),is(transactions));
+
+		// one transaction per effect frame
+		LightEffect effect = new ColourTemperatureEffect(2700, 6500, 0.0, 100.0, new double[] {1.0,1.0,1.0});
+		transactions = spi.getTransactionCount();
+		long start = System.nanoTime();
+		for(int step=0 ; step<=STEP_COUNT ; step++) {
+			light.renderEffect(effect, step/(double)STEP_COUNT);
+		}
+		double seconds = (System.nanoTime()-start)/1E9;
+		long   frames  = spi.getTransactionCount()-transactions;
+		assertThat(frames,is((long)STEP_COUNT+1));
+
+		log.info(String.format("WS2801: %.0f frames/s, %d bytes/frame, %d bytes allocated per dim step",
+				frames/seconds, frame.length, allocationPerStep(light)));
+
+		light.setOff();
+	}
+
+	@Test
+	void testWS2801ColourTemperature() throws InterruptedException {
+		SimulatedHardware.SimulatedSpi spi = SimulatedHardware.getSpi("WS2801");
+
+		strip.setColourTemperature(2700, 40.0, 0);
+		awaitBrightness(strip, 40.0);
+		byte[] warm = spi.getLastWrite();
+		assertThat(strip.getColourTemperature(),is(2700));
+		assertThat(warm[5]&0xFF,is(lessThan((warm[3]&0xFF)/2)));
+
+		// a brightness change keeps the colour temperature
+		strip.setBrightness(60.0);
+		byte[] frame = spi.getLastWrite();
+		assertThat(strip.getColourTemperature(),is(2700));
+		assertThat(strip.getBrightness(),is(closeTo(60.0, 0.5)));
+		assertThat(frame[3]&0xFF,is(greaterThan(warm[3]&0xFF)));
+		assertThat(frame[5]&0xFF,is(lessThan((frame[3]&0xFF)/2)));
+
+		// and cancels a running fade, whose next frame would overwrite the brightness
+		strip.setColourTemperature(6000, 100.0, 10);
+		Thread.sleep(100);
+		strip.setBrightness(20.0);
+		Thread.sleep(300);
+		assertThat(strip.getColourTemperature(),is(6000));
+		assertThat(strip.getBrightness(),is(closeTo(20.0, 0.5)));
+
+		// switching off goes back to the neutral white pattern
+		strip.setOff();
+		assertThat(strip.getColourTemperature(),is(6500));
+	}
+
+	@Test
+	void testNRF24LO1CommandSupersedes() throws InterruptedException {
+		final int REPEAT_COUNT    = 10;
+		final int REPEAT_INTERVAL = 50;
+
+		LightControlNRF24LO1 light = new LightControlNRF24LO1(3, "remote", REPEAT_COUNT, REPEAT_INTERVAL, pi4j);
+		light.setBrightness(100.0);
+		Thread.sleep(3*REPEAT_INTERVAL);
+		light.setOff();
+		Thread.sleep((REPEAT_COUNT+4)*REPEAT_INTERVAL);
+
+		int onCount  = 0;
+		int offCount = 0;
+		byte last    = 0;
+		for(byte[] write:SimulatedHardware.getSpi("nRF24LO1").getWrites()) {
+			// payload: W_TX_PAYLOAD_NOACK, 4 header bytes, 3 sync bytes and the command
+			if((write[0]&0xFF)==0xB0 && write.length==9) {
+				last = write[8];
+				if(last==1) {
+					onCount++;
+				}
+				if(last==2) {
+					offCount++;
+				}
+			}
+		}
+		assertThat(onCount,is(both(greaterThan(0)).and(lessThan(REPEAT_COUNT))));
+		assertThat(offCount,is(REPEAT_COUNT));
+		assertThat(last,is((byte)2));
+
+		// CE pin pulses high for each transmission
+		List<long[]> changes = SimulatedHardware.getDigitalOutput(21).getChanges();
+		long pulses  = 0;
+		long highSum = 0;
+		for(int i=1 ; i<changes.size() ; i++) {
+			if(changes.get(i-1)[1]==1 && changes.get(i)[1]==0) {
+				pulses++;
+				highSum += changes.get(i)[0]-changes.get(i-1)[0];
+			}
+		}
+		assertThat(pulses,is(greaterThanOrEqualTo((long)onCount+offCount)));
+		log.info(String.format("nRF24LO1: %d transmissions, average CE pulse %.1fus", onCount+offCount, highSum/1E3/pulses));
+	}
+
+	/**
+	 * measures the bytes allocated by the calling thread for one applyFrame call
+	 * @param light light to measure
+	 * @return allocated bytes per step
+	 */
+	private static long allocationPerStep(LightControl light) {
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		// warm up first, so that class loading and table creation does not count
+		for(int step=0 ; step<STEP_COUNT ; step++) {
+			light.applyFrame(1.0+step*99.0/STEP_COUNT);
+		}
+		long allocated = threadBean.getThreadAllocatedBytes(threadId);
+		for(int step=0 ; step<STEP_COUNT ; step++) {
+			light.applyFrame(1.0+step*99.0/STEP_COUNT);
+		}
+		return (threadBean.getThreadAllocatedBytes(threadId)-allocated)/STEP_COUNT;
+	}
+
+	/**
+	 * waits until a light reached a brightness. Effects get rendered by the LightAnimator thread
+	 */
+	private static void awaitBrightness(LightControl light,double percentage) throws InterruptedException {
+		for(int wait=0 ; wait<100 && Math.abs(light.getBrightness()-percentage)>0.5 ; wait++) {
+			Thread.sleep(20);
+		}
+		assertThat(light.getBrightness(),is(closeTo(percentage, 0.5)));
+	}
+
+	private static Configuration.LightControlSettings pca9685Settings(int ledId) {
+		return pca9685Settings(PCA9685_ADDRESS, ledId);
+	}
+
+	private static Configuration.LightControlSettings pca9685Settings(int deviceAddress,int ledId) {
+		Configuration.LightControlSettings settings = new Configuration.LightControlSettings();
+		settings.type          = Configuration.LightControlSettings.Type.PCA9685;
+		settings.id            = ledId;
+		settings.name          = "pca"+ledId;
+		settings.deviceAddress = deviceAddress;
+		settings.pwmOffset     = 55;
+		settings.pwmFullScale  = 4095;
+		settings.ledId         = ledId;
+
+		return settings;
+	}
+
+	private static final Logger log = Logger.getLogger( LightPathTest.class.getName() );
+
+	private static final int PCA9685_ADDRESS         = 65;
+	private static final int PCA9685_ADDRESS_DISTANT = 66;
+	private static final int STEP_COUNT              = 1000;
+
+	private static Context            pi4j;
+	private static LightControlWS2801 strip;
+}
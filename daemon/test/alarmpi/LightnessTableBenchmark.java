@@ -0,0 +1,81 @@
+package alarmpi;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * compares the brightness/PWM conversion thru LightnessTable with the direct calculation
+ * run with: mvn -Pbenchmark test -Dbenchmark=LightnessTableBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LightnessTableBenchmark {
+	
+	// PCA9685 (12 bit) and WS2801 (10 bit) resolutions
+	@Param({"55/4095","0/1023"})
+	String resolution;
+	
+	@Setup
+	public void setup() {
+		String[] values = resolution.split("/");
+		pwmOffset    = Integer.parseInt(values[0]);
+		pwmFullScale = Integer.parseInt(values[1]);
+		table        = LightnessTable.getTable(pwmOffset, pwmFullScale);
+		
+		Random random = new Random(42);
+		for(int i=0 ; i<SAMPLE_COUNT ; i++) {
+			percentages[i] = random.nextDouble()*100.0;
+			pwmValues[i]   = random.nextInt(pwmFullScale+1);
+		}
+	}
+	
+	@Benchmark
+	public int pwmCalculated() {
+		index = (index+1)%SAMPLE_COUNT;
+		return LightnessTable.calculatePwm(percentages[index], pwmOffset, pwmFullScale);
+	}
+	
+	@Benchmark
+	public int pwmTable() {
+		index = (index+1)%SAMPLE_COUNT;
+		return table.getPwm(percentages[index]);
+	}
+	
+	@Benchmark
+	public double brightnessCalculated() {
+		index = (index+1)%SAMPLE_COUNT;
+		return LightnessTable.calculateBrightness(pwmValues[index], pwmOffset, pwmFullScale);
+	}
+	
+	@Benchmark
+	public double brightnessTable() {
+		index = (index+1)%SAMPLE_COUNT;
+		return table.getBrightness(pwmValues[index]);
+	}
+	
+	private static final int SAMPLE_COUNT = 1024;
+	
+	private final double[] percentages = new double[SAMPLE_COUNT];
+	private final int[]    pwmValues   = new int[SAMPLE_COUNT];
+	private int            index       = 0;
+	
+	private int            pwmOffset;
+	private int            pwmFullScale;
+	private LightnessTable table;
+}
@@ -0,0 +1,45 @@
+package alarmpi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.jupiter.api.Test;
+
+
+class LightnessTableTest {
+	
+	@Test
+	void testSameTableForSameResolution() {
+		assertThat(LightnessTable.getTable(55, 4095),is(sameInstance(LightnessTable.getTable(55, 4095))));
+		assertThat(LightnessTable.getTable(55, 4095),is(not(sameInstance(LightnessTable.getTable(0, 1023)))));
+	}
+	
+	@Test
+	void testPwmMatchesCalculation() {
+		LightnessTable table = LightnessTable.getTable(55, 4095);
+		
+		for(double percentage=0.0 ; percentage<=100.0 ; percentage+=0.01) {
+			int pwm = LightnessTable.calculatePwm(percentage, 55, 4095);
+			assertThat(table.getPwm(percentage),is(both(greaterThanOrEqualTo(pwm-2)).and(lessThanOrEqualTo(pwm))));
+		}
+	}
+	
+	@Test
+	void testBrightnessMatchesCalculation() {
+		LightnessTable table = LightnessTable.getTable(0, 1023);
+		
+		for(int pwm=0 ; pwm<=1023 ; pwm++) {
+			assertThat(table.getBrightness(pwm),is(LightnessTable.calculateBrightness(pwm, 0, 1023)));
+		}
+	}
+	
+	@Test
+	void testClipping() {
+		LightnessTable table = LightnessTable.getTable(55, 4095);
+		
+		assertThat(table.getPwm(-10.0),is(55));
+		assertThat(table.getPwm(150.0),is(4095));
+		assertThat(table.getBrightness(-1),is(0.0));
+		assertThat(table.getBrightness(5000),is(closeTo(100.0, 0.001)));
+	}
+}
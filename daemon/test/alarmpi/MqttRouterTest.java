@@ -0,0 +1,82 @@
+package alarmpi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.jupiter.api.Test;
+
+
+class MqttRouterTest {
+
+	@Test
+	void testUnknownTopic() {
+		MqttRouter router = new MqttRouter(2, 10, 1000);
+
+		assertThat(router.route("alarmpi/unknown", new MqttMessage()),is(false));
+		router.shutdown();
+	}
+
+	@Test
+	void testOrderPerTopic() throws InterruptedException {
+		MqttRouter     router   = new MqttRouter(4, 100, 1000);
+		List<String>   received = new CopyOnWriteArrayList<>();
+		CountDownLatch done     = new CountDownLatch(50);
+
+		router.addRoute("alarmpi/light", (topic,message) -> {
+			received.add(message.toString());
+			done.countDown();
+		});
+		for(int i=0 ; i<50 ; i++) {
+			assertThat(router.route("alarmpi/light", new MqttMessage(Integer.toString(i).getBytes())),is(true));
+		}
+
+		assertThat(done.await(5, TimeUnit.SECONDS),is(true));
+		for(int i=0 ; i<50 ; i++) {
+			assertThat(received.get(i),is(Integer.toString(i)));
+		}
+		router.shutdown();
+	}
+
+	@Test
+	void testSlowHandlerDoesNotBlockOtherTopics() throws InterruptedException {
+		MqttRouter     router  = new MqttRouter(2, 10, 100);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch fast    = new CountDownLatch(1);
+
+		router.addRoute("alarmpi/allOff", (topic,message) -> release.await());
+		router.addRoute("alarmpi/temperature", (topic,message) -> fast.countDown());
+
+		router.route("alarmpi/allOff", new MqttMessage());
+		router.route("alarmpi/temperature", new MqttMessage("21".getBytes()));
+		assertThat(fast.await(1, TimeUnit.SECONDS),is(true));
+
+		release.countDown();
+		router.shutdown();
+	}
+
+	@Test
+	void testOverload() {
+		MqttRouter     router  = new MqttRouter(1, 2, 1000);
+		CountDownLatch release = new CountDownLatch(1);
+
+		router.addRoute("alarmpi/radio", (topic,message) -> release.await());
+
+		// first message gets picked up by the worker (or waits), queue holds two messages
+		int accepted = 0;
+		for(int i=0 ; i<5 ; i++) {
+			if(router.route("alarmpi/radio", new MqttMessage())) {
+				accepted++;
+			}
+		}
+		assertThat(accepted,is(both(greaterThanOrEqualTo(2)).and(lessThanOrEqualTo(3))));
+
+		release.countDown();
+		router.shutdown();
+	}
+}
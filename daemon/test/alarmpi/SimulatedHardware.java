@@ -0,0 +1,389 @@
+package alarmpi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.pi4j.Pi4J;
+import com.pi4j.context.Context;
+import com.pi4j.exception.Pi4JException;
+import com.pi4j.io.gpio.digital.DigitalOutput;
+import com.pi4j.io.gpio.digital.DigitalOutputBase;
+import com.pi4j.io.gpio.digital.DigitalOutputConfig;
+import com.pi4j.io.gpio.digital.DigitalOutputProvider;
+import com.pi4j.io.gpio.digital.DigitalOutputProviderBase;
+import com.pi4j.io.gpio.digital.DigitalState;
+import com.pi4j.io.i2c.I2C;
+import com.pi4j.io.i2c.I2CBase;
+import com.pi4j.io.i2c.I2CConfig;
+import com.pi4j.io.i2c.I2CProvider;
+import com.pi4j.io.i2c.I2CProviderBase;
+import com.pi4j.io.spi.Spi;
+import com.pi4j.io.spi.SpiBase;
+import com.pi4j.io.spi.SpiConfig;
+import com.pi4j.io.spi.SpiProvider;
+import com.pi4j.io.spi.SpiProviderBase;
+
+/**
+ * In-memory stand-ins for the pigpio I2C, SPI and digital output providers.
+ * The providers are registered under the pigpio provider IDs, so the light and sound
+ * controls run unchanged against them:
+ * - I2C devices are register files (256 registers per device address) with auto-increment.
+ *   Like the pigpio block write, a write transfers at most 32 bytes
+ * - SPI devices capture the last written frame. Register writes/reads are answered like a nRF24
+ *   which finishes every transmission immediately
+ * - digital outputs record every state change together with its time
+ * All devices count their bus transactions. The context is shared by all tests of a JVM, since
+ * devices like the PCA9685 get initialized only once
+ */
+class SimulatedHardware {
+
+	/**
+	 * returns the pi4j context with the simulated providers, creating it if needed
+	 * @return pi4j context
+	 */
+	static synchronized Context getContext() {
+		if(context==null) {
+			context = Pi4J.newContextBuilder()
+					.noAutoDetectPlatforms()
+					.noAutoDetectProviders()
+					.noAutoDetect()
+					.add(new SimulatedI2CProvider(), new SimulatedSpiProvider(), new SimulatedDigitalOutputProvider())
+					.build();
+		}
+
+		return context;
+	}
+
+	/**
+	 * returns a simulated I2C device
+	 * @param address device address
+	 * @return device or null if no device with this address got created
+	 */
+	static SimulatedI2C getI2C(int address) {
+		synchronized(i2cMap) {
+			return i2cMap.get(address);
+		}
+	}
+
+	/**
+	 * returns a simulated SPI device
+	 * @param id pi4j ID of the device
+	 * @return device or null if no device with this ID got created
+	 */
+	static SimulatedSpi getSpi(String id) {
+		synchronized(spiMap) {
+			return spiMap.get(id);
+		}
+	}
+
+	/**
+	 * returns a simulated digital output
+	 * @param address GPIO number
+	 * @return digital output or null if no output with this GPIO number got created
+	 */
+	static SimulatedDigitalOutput getDigitalOutput(int address) {
+		synchronized(outputMap) {
+			return outputMap.get(address);
+		}
+	}
+
+	/**
+	 * simulated I2C device with a register file
+	 */
+	static class SimulatedI2C extends I2CBase {
+		SimulatedI2C(I2CProvider provider,I2CConfig config) {
+			super(provider, config);
+			isOpen = true;
+		}
+
+		/**
+		 * @return number of bus transactions since creation
+		 */
+		long getTransactionCount() {
+			return transactions.get();
+		}
+
+		/**
+		 * returns a register value without counting a transaction
+		 * @param register register address
+		 * @return register value
+		 */
+		synchronized int peek(int register) {
+			return registers[register & 0xFF] & 0xFF;
+		}
+
+		@Override
+		public synchronized int read() {
+			transactions.incrementAndGet();
+			return registers[pointer] & 0xFF;
+		}
+
+		@Override
+		public synchronized int read(byte[] buffer,int offset,int length) {
+			transactions.incrementAndGet();
+			for(int i=0 ; i<length ; i++) {
+				buffer[offset+i] = registers[(pointer+i) & 0xFF];
+			}
+			return length;
+		}
+
+		@Override
+		public synchronized int write(byte b) {
+			transactions.incrementAndGet();
+			pointer = b & 0xFF;
+			return 1;
+		}
+
+		@Override
+		public synchronized int write(byte[] data,int offset,int length) {
+			transactions.incrementAndGet();
+			if(length>0) {
+				pointer = data[offset] & 0xFF;
+				store(pointer, data, offset+1, length-1);
+			}
+			return length;
+		}
+
+		@Override
+		public synchronized int readRegister(int register) {
+			transactions.incrementAndGet();
+			return registers[register & 0xFF] & 0xFF;
+		}
+
+		@Override
+		public synchronized int readRegister(int register,byte[] buffer,int offset,int length) {
+			transactions.incrementAndGet();
+			for(int i=0 ; i<length ; i++) {
+				buffer[offset+i] = registers[(register+i) & 0xFF];
+			}
+			return length;
+		}
+
+		@Override
+		public synchronized int readRegister(byte[] register,byte[] buffer,int offset,int length) {
+			return readRegister(register[0], buffer, offset, length);
+		}
+
+		@Override
+		public synchronized int writeRegister(int register,byte b) {
+			transactions.incrementAndGet();
+			registers[register & 0xFF] = b;
+			return 1;
+		}
+
+		@Override
+		public synchronized int writeRegister(int register,byte[] data,int offset,int length) {
+			if(length>MAX_BLOCK_LENGTH) {
+				throw new Pi4JException("I2C block write of "+length+" bytes exceeds "+MAX_BLOCK_LENGTH+" bytes");
+			}
+			transactions.incrementAndGet();
+			store(register, data, offset, length);
+			return length;
+		}
+
+		@Override
+		public synchronized int writeRegister(byte[] register,byte[] data,int offset,int length) {
+			return writeRegister(register[0], data, offset, length);
+		}
+
+		private void store(int register,byte[] data,int offset,int length) {
+			for(int i=0 ; i<length ; i++) {
+				registers[(register+i) & 0xFF] = data[offset+i];
+			}
+		}
+
+		private static final int MAX_BLOCK_LENGTH = 32;   // maximum length of a block write
+
+		private final byte[]     registers    = new byte[256];      // register file
+		private final AtomicLong transactions = new AtomicLong();   // number of bus transactions
+		private int              pointer      = 0;                  // register pointer for plain reads
+	}
+
+	/**
+	 * simulated SPI device capturing the written data
+	 */
+	static class SimulatedSpi extends SpiBase {
+		SimulatedSpi(SpiProvider provider,SpiConfig config) {
+			super(provider, config);
+			isOpen = true;
+		}
+
+		/**
+		 * @return number of bus transactions since creation
+		 */
+		long getTransactionCount() {
+			return transactions.get();
+		}
+
+		/**
+		 * @return number of bytes written since creation
+		 */
+		long getByteCount() {
+			return bytes.get();
+		}
+
+		/**
+		 * @return copy of the data of the last write transaction
+		 */
+		synchronized byte[] getLastWrite() {
+			return lastWrite.clone();
+		}
+
+		/**
+		 * @return all multi-byte writes since creation
+		 */
+		synchronized List<byte[]> getWrites() {
+			return new ArrayList<>(writes);
+		}
+
+		@Override
+		public synchronized int read() {
+			transactions.incrementAndGet();
+			return 0;
+		}
+
+		@Override
+		public synchronized int read(byte[] buffer,int offset,int length) {
+			transactions.incrementAndGet();
+			return length;
+		}
+
+		@Override
+		public synchronized int write(byte b) {
+			transactions.incrementAndGet();
+			bytes.incrementAndGet();
+			lastWrite = new byte[] {b};
+
+			// single byte commands return the status: transmission done
+			return STATUS_TX_DS;
+		}
+
+		@Override
+		public synchronized int write(byte[] data,int offset,int length) {
+			transactions.incrementAndGet();
+			bytes.addAndGet(length);
+			if(lastWrite.length!=length) {
+				lastWrite = new byte[length];
+			}
+			System.arraycopy(data, offset, lastWrite, 0, length);
+
+			// register write: keep the value so that it can be read back
+			if(length==2 && (data[offset] & 0xE0)==COMMAND_W_REGISTER) {
+				registers[data[offset] & 0x1F] = data[offset+1];
+			}
+			if(length>1 && length<=MAX_RECORDED_LENGTH) {
+				writes.add(lastWrite.clone());
+			}
+			return length;
+		}
+
+		@Override
+		public synchronized int transfer(byte[] write,int writeOffset,byte[] read,int readOffset,int length) {
+			transactions.incrementAndGet();
+			bytes.addAndGet(length);
+
+			// register read: first byte returns status, second the register value
+			read[readOffset] = STATUS_TX_DS;
+			if(length>1 && (write[writeOffset] & 0xE0)==0) {
+				read[readOffset+1] = registers[write[writeOffset] & 0x1F];
+			}
+			return length;
+		}
+
+		private static final byte STATUS_TX_DS        = 0x20;   // nRF24 status: data sent
+		private static final int  COMMAND_W_REGISTER  = 0x20;   // nRF24 command: write register
+		private static final int  MAX_RECORDED_LENGTH = 64;     // only short writes (commands) get recorded
+
+		private final byte[]       registers    = new byte[32];        // nRF24 style register file
+		private final List<byte[]> writes       = new ArrayList<>();   // recorded writes
+		private final AtomicLong   transactions = new AtomicLong();    // number of bus transactions
+		private final AtomicLong   bytes        = new AtomicLong();    // number of written bytes
+		private byte[]             lastWrite    = new byte[0];         // data of last write
+	}
+
+	/**
+	 * simulated digital output recording all state changes
+	 */
+	static class SimulatedDigitalOutput extends DigitalOutputBase {
+		SimulatedDigitalOutput(DigitalOutputProvider provider,DigitalOutputConfig config) {
+			super(provider, config);
+		}
+
+		@Override
+		public DigitalOutput state(DigitalState state) {
+			synchronized(this) {
+				changes.add(new long[] {System.nanoTime(), state.value().longValue()});
+			}
+			return super.state(state);
+		}
+
+		/**
+		 * @return all state changes as pairs of time (System.nanoTime) and state value
+		 */
+		synchronized List<long[]> getChanges() {
+			return new ArrayList<>(changes);
+		}
+
+		private final List<long[]> changes = new ArrayList<>();   // recorded state changes
+	}
+
+	//
+	// private members
+	//
+	private static Context context = null;   // shared pi4j context
+
+	private static final Map<Integer,SimulatedI2C>           i2cMap    = new HashMap<>();   // I2C devices by address
+	private static final Map<String,SimulatedSpi>            spiMap    = new HashMap<>();   // SPI devices by pi4j ID
+	private static final Map<Integer,SimulatedDigitalOutput> outputMap = new HashMap<>();   // digital outputs by GPIO number
+
+	// provider creating simulated I2C devices
+	private static class SimulatedI2CProvider extends I2CProviderBase {
+		SimulatedI2CProvider() {
+			super("pigpio-i2c", "simulated I2C provider");
+		}
+
+		@Override
+		public I2C create(I2CConfig config) {
+			SimulatedI2C device = new SimulatedI2C(this, config);
+			synchronized(i2cMap) {
+				i2cMap.put(config.device(), device);
+			}
+			return device;
+		}
+	}
+
+	// provider creating simulated SPI devices
+	private static class SimulatedSpiProvider extends SpiProviderBase {
+		SimulatedSpiProvider() {
+			super("pigpio-spi", "simulated SPI provider");
+		}
+
+		@Override
+		public Spi create(SpiConfig config) {
+			SimulatedSpi device = new SimulatedSpi(this, config);
+			synchronized(spiMap) {
+				spiMap.put(config.id(), device);
+			}
+			return device;
+		}
+	}
+
+	// provider creating simulated digital outputs
+	private static class SimulatedDigitalOutputProvider extends DigitalOutputProviderBase {
+		SimulatedDigitalOutputProvider() {
+			super("pigpio-digital-output", "simulated digital output provider");
+		}
+
+		@Override
+		public DigitalOutput create(DigitalOutputConfig config) {
+			SimulatedDigitalOutput output = new SimulatedDigitalOutput(this, config);
+			synchronized(outputMap) {
+				outputMap.put(config.address(), output);
+			}
+			return output;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package alarmpi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * runs the sound control against a fake mpd and the simulated GPIO and checks the power pin
+ */
+class SoundControlTest {
+
+	@BeforeAll
+	static void setUpBeforeClass() throws IOException {
+		System.setProperty( "java.util.logging.config.file", "conf/alarmpitest.logging" );
+
+		try {
+			LogManager.getLogManager().readConfiguration();
+		}
+		catch ( Exception e ) {
+			// unable to read logging configuration file
+			e.printStackTrace();
+		}
+
+		// read configuration file
+		Configuration.read("conf/alarmpitest.cfg");
+
+		mpd = new FakeMpd(MPD_DELAY);
+	}
+
+	@Test
+	void testPowerPin() {
+		SoundControl soundControl = new SoundControl(SimulatedHardware.getContext(),
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), mpd.getPort()));
+		SimulatedHardware.SimulatedDigitalOutput output = SimulatedHardware.getDigitalOutput(GPIO_SOUND_POWER);
+		assertThat(output,is(notNullValue()));
+
+		// power is off after initialization
+		List<long[]> changes = output.getChanges();
+		assertThat(changes.get(changes.size()-1)[1],is(0L));
+
+		// power gets switched on right away
+		int  count = changes.size();
+		long start = System.nanoTime();
+		soundControl.on();
+		long end   = System.nanoTime();
+		changes = output.getChanges();
+		assertThat(changes.size(),is(count+1));
+		assertThat(changes.get(count)[1],is(1L));
+		assertThat(changes.get(count)[0],is(both(greaterThanOrEqualTo(start)).and(lessThanOrEqualTo(end))));
+
+		// power gets switched off only after mpd stopped playing (stop and clear command)
+		count = changes.size();
+		start = System.nanoTime();
+		soundControl.off();
+		changes = output.getChanges();
+		assertThat(changes.size(),is(count+1));
+		assertThat(changes.get(count)[1],is(0L));
+		assertThat(changes.get(count)[0]-start,is(greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(2*MPD_DELAY))));
+	}
+
+	private static final int GPIO_SOUND_POWER = 23;   // GPIO number for sound power control
+	private static final int MPD_DELAY        = 20;   // delay of the fake mpd in milliseconds
+
+	private static FakeMpd mpd;
+}
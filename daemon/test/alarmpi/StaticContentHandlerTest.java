@@ -0,0 +1,78 @@
+package alarmpi;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.ByteArrayInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+
+
+class StaticContentHandlerTest {
+
+	@Test
+	void testServeFiles(@TempDir Path directory) throws Exception {
+		String page = "<html><body>"+"AlarmPi ".repeat(200)+"</body></html>";
+		Files.writeString(directory.resolve("index.html"), page);
+		Files.createDirectory(directory.resolve("img"));
+		Files.write(directory.resolve("img/logo.png"), new byte[] {1, 2, 3});
+
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext(StaticContentHandler.CONTEXT, new StaticContentHandler(directory));
+		server.start();
+
+		try {
+			HttpClient client = HttpClient.newHttpClient();
+			String     base   = "http://127.0.0.1:"+server.getAddress().getPort()+StaticContentHandler.CONTEXT;
+
+			// directory returns index page, uncompressed
+			HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(base)).build(), BodyHandlers.ofString());
+			assertThat(response.statusCode(),is(200));
+			assertThat(response.body(),is(page));
+			assertThat(response.headers().firstValue("Content-Type").orElse(""),startsWith("text/html"));
+			assertThat(response.headers().firstValue("Cache-Control").orElse(""),is("no-cache"));
+			String entityTag = response.headers().firstValue("ETag").orElse("");
+
+			// compressed variant has its own entity tag
+			HttpResponse<byte[]> compressed = client.send(HttpRequest.newBuilder(URI.create(base+"index.html"))
+					.header("Accept-Encoding", "br, gzip").build(), BodyHandlers.ofByteArray());
+			assertThat(compressed.headers().firstValue("Content-Encoding").orElse(""),is("gzip"));
+			assertThat(compressed.headers().firstValue("ETag").orElse(""),is(not(entityTag)));
+			assertThat(compressed.body().length,is(lessThan(page.length())));
+			try(GZIPInputStream stream = new GZIPInputStream(new ByteArrayInputStream(compressed.body()))) {
+				assertThat(new String(stream.readAllBytes(), StandardCharsets.UTF_8),is(page));
+			}
+
+			// revalidation
+			HttpResponse<Void> notModified = client.send(HttpRequest.newBuilder(URI.create(base))
+					.header("If-None-Match", entityTag).build(), BodyHandlers.discarding());
+			assertThat(notModified.statusCode(),is(304));
+
+			// binary files in subdirectories are not compressed
+			HttpResponse<byte[]> image = client.send(HttpRequest.newBuilder(URI.create(base+"img/logo.png"))
+					.header("Accept-Encoding", "gzip").build(), BodyHandlers.ofByteArray());
+			assertThat(image.statusCode(),is(200));
+			assertThat(image.headers().firstValue("Content-Encoding").isPresent(),is(false));
+			assertThat(image.headers().firstValue("Cache-Control").orElse(""),containsString("max-age"));
+
+			assertThat(client.send(HttpRequest.newBuilder(URI.create(base+"missing.js")).build(), BodyHandlers.discarding()).statusCode(),is(404));
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+}
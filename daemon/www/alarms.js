@@ -1,4 +1,96 @@
 let alarmPiData = {};  // global object, holds all data from AlarmPi
+let dataLoaded  = false;  // true once data was loaded
+
+// base URL of the AlarmPi HTTP server. Empty if this page is served by AlarmPi itself, so all requests are
+// relative and same origin. Otherwise (opened as file or from another web server) port 3948 of this host
+function getServerUrl() {
+    'use strict';
+    
+    if(location.protocol.startsWith("http") && location.pathname.startsWith("/ui/")) {
+        return "";
+    }
+    if(location.hostname.length==0) {
+        return "http://127.0.0.1:3948";
+    }
+    return "http://"+location.hostname+":3948";
+}
+
+// subscribes to change events of AlarmPi. Data gets (re-)loaded whenever the connection is established,
+// so no change gets lost while not connected
+function connectEvents() {
+    'use strict';
+    
+    if(typeof EventSource === 'undefined') {
+        console.info("browser does not support server sent events");
+        loadData();
+        return;
+    }
+    
+    const events = new EventSource(getServerUrl()+"/events");
+    events.addEventListener('open', function () {
+        console.info("event connection established");
+        loadData();
+    });
+    events.addEventListener('error', function () {
+        console.info("event connection failed, browser retries");
+        if(!dataLoaded) {
+            loadData();
+        }
+    });
+    
+    events.addEventListener('alarm', function (event) {
+        const alarm = JSON.parse(event.data);
+        if(!dataLoaded || alarmsModified()) {
+            return;
+        }
+        const index = alarmPiData.alarms.findIndex(a => a.id === alarm.id);
+        if(index>=0) {
+            alarmPiData.alarms[index] = alarm;
+        }
+        else {
+            alarmPiData.alarms.push(alarm);
+        }
+        updateAlarms();
+    });
+    events.addEventListener('alarmRemoved', function (event) {
+        const id = JSON.parse(event.data).id;
+        if(!dataLoaded || alarmsModified()) {
+            return;
+        }
+        alarmPiData.alarms = alarmPiData.alarms.filter(a => a.id !== id);
+        updateAlarms();
+    });
+    events.addEventListener('light', function (event) {
+        const data = JSON.parse(event.data);
+        if(!dataLoaded) {
+            return;
+        }
+        const index = alarmPiData.lights.findIndex(l => l.id === data.id);
+        if(index>=0) {
+            alarmPiData.lights[index].brightness = data.brightness;
+            document.getElementById(`${index}_brightness`).value = data.brightness;
+            document.getElementById(`${index}_on`).checked  = data.brightness>0;
+            document.getElementById(`${index}_off`).checked = data.brightness===0;
+        }
+    });
+    events.addEventListener('sound', function (event) {
+        console.info("sound status: "+event.data);
+        alarmPiData.soundStatus = JSON.parse(event.data);
+    });
+    events.addEventListener('activeAlarm', function (event) {
+        console.info("active alarm: "+event.data);
+    });
+    events.addEventListener('timer', function (event) {
+        console.info("sound timer: "+event.data);
+    });
+}
+
+// returns true if alarms were modified locally and not submitted yet
+function alarmsModified() {
+    'use strict';
+    
+    return alarmPiData.alarms.some(alarm => alarm.modified);
+}
 
 function loadData() {
     'use strict';
@@ -7,16 +99,7 @@ function loadData() {
     var request = new XMLHttpRequest();
     
     // load all data from AlarmPi
-    var hostName;
-    if(location.hostname.length==0) {
-        hostName = "127.0.0.1";
-    }
-    else {
-        hostName = location.hostname;
-    }
-    console.info("hostname: "+hostName);
-    
-    request.open("GET", "http://"+hostName+":3948/");
+    request.open("GET", getServerUrl()+"/");
     
     request.addEventListener('load', function (event) {
         
@@ -33,6 +116,7 @@ function loadData() {
         $('#name').replaceWith(alarmPiData.name);
         updateAlarms();
         updateLights();
+        dataLoaded = true;
     });
     
     request.addEventListener('error', function (event) {
@@ -170,14 +254,7 @@ function submitAlarms() {
     console.info(JSON.stringify(submissionData));
     
     var request = new XMLHttpRequest();
-	var hostName;
-    if(location.hostname.length==0) {
-        hostName = "127.0.0.1";
-    }
-    else {
-        hostName = location.hostname;
-    }
-    request.open("POST", "http://"+hostName+":3948/ "+JSON.stringify(submissionData));
+    request.open("POST", getServerUrl()+"/");
     
     request.addEventListener('load', function (event) {
         
@@ -194,7 +271,7 @@ function submitAlarms() {
         alert("Verbindung zu AlarmPi gescheitert. Fehlercode: " + request.statusText);
     });
     
-    request.send();
+    request.send(JSON.stringify(submissionData));
     
     $('#alarmsSubmit').attr('disabled',true);
 }
@@ -204,14 +281,7 @@ function submitData(submissionData) {
     console.info(JSON.stringify(submissionData));
     
     var request = new XMLHttpRequest();
-	var hostName;
-    if(location.hostname.length==0) {
-        hostName = "127.0.0.1";
-    }
-    else {
-        hostName = location.hostname;
-    }
-    request.open("POST", "http://"+hostName+":3948/ "+JSON.stringify(submissionData));
+    request.open("POST", getServerUrl()+"/");
     
     request.addEventListener('load', function (event) {
         
@@ -228,7 +298,7 @@ function submitData(submissionData) {
         alert("Verbindung zu AlarmPi gescheitert. Fehlercode: " + request.statusText);
     });
     
-    request.send();
+    request.send(JSON.stringify(submissionData));
 }	
 
 function stopActiveAlarm() {